@@ -19,4 +19,13 @@ public interface ApiErrorCode {
     String getEnMessage();
 
     String getFaMessage();
+
+    /**
+     * Returns true if the {@link ApiException}s of this error code should capture their stack traces even when the
+     * stackless exceptions are enabled by {@link EnableApiErrorMapping#stacklessExceptions()}. It is useful for the
+     * codes of unexpected errors whose stack traces are needed to find their causes.
+     */
+    default boolean isStackTraceRequired() {
+        return false;
+    }
 }
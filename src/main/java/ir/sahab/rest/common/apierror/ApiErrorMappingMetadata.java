@@ -0,0 +1,126 @@
+package ir.sahab.rest.common.apierror;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.annotation.MergedAnnotation;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Data holder class for metadata of {@link EnableApiErrorMapping} annotation.
+ */
+public class ApiErrorMappingMetadata {
+
+    private static final String LIBRARY_PACKAGE = "ir.sahab.rest.common";
+
+    private static final ApiErrorMappingMetadata instance = new ApiErrorMappingMetadata();
+
+    private boolean stacklessExceptions;
+    // It is used even if the API error mapping is not enabled (e.g., for the exceptions thrown in unit tests).
+    private TrackingIdGenerator trackingIdGenerator = new UlidTrackingIdGenerator();
+    private String[] errorCodePackages = {};
+    private boolean negotiateLanguage;
+    private String defaultLanguage = MessageTemplateRegistry.EN;
+    private List<String> languages = Collections.emptyList();
+    private String messageBundle;
+    private boolean preserializedProblems;
+    private boolean errorMetrics;
+    private int topErrors;
+    private ErrorRecords errorRecords;
+    private long logCoalescingSeconds;
+    private int maxViolations;
+    private int maxRejectionsPerMinute;
+
+    public static ApiErrorMappingMetadata getInstance() {
+        return instance;
+    }
+
+    public void fillFrom(AnnotationMetadata apiErrorMappingAttributes) {
+        Map<String, Object> attributes =
+                apiErrorMappingAttributes.getAnnotationAttributes(EnableApiErrorMapping.class.getName());
+        stacklessExceptions = (Boolean) attributes.get("stacklessExceptions");
+        Class<?> generatorClass = (Class<?>) attributes.get("trackingIdGenerator");
+        trackingIdGenerator = (TrackingIdGenerator) BeanUtils.instantiateClass(generatorClass);
+        errorCodePackages = (String[]) attributes.get("errorCodePackages");
+        if (errorCodePackages.length == 0) {
+            // The library's own error codes (e.g., the security ones) are scanned too.
+            errorCodePackages = new String[]{ClassUtils.getPackageName(apiErrorMappingAttributes.getClassName()),
+                    LIBRARY_PACKAGE};
+        }
+        negotiateLanguage = (Boolean) attributes.get("negotiateLanguage");
+        defaultLanguage = (String) attributes.get("defaultLanguage");
+        languages = Arrays.asList((String[]) attributes.get("languages"));
+        messageBundle = (String) attributes.get("messageBundle");
+        preserializedProblems = (Boolean) attributes.get("preserializedProblems");
+        errorMetrics = (Boolean) attributes.get("errorMetrics");
+        topErrors = (Integer) attributes.get("topErrors");
+        MergedAnnotation<EnableApiErrorMapping> annotation =
+                apiErrorMappingAttributes.getAnnotations().get(EnableApiErrorMapping.class);
+        errorRecords = annotation.getAnnotation("errorRecords", ErrorRecords.class).synthesize();
+        logCoalescingSeconds = (Long) attributes.get("logCoalescingSeconds");
+        maxViolations = (Integer) attributes.get("maxViolations");
+        maxRejectionsPerMinute = (Integer) attributes.get("maxRejectionsPerMinute");
+        if (!languages.isEmpty() && messageBundle.isEmpty()) {
+            throw new IllegalArgumentException("Message bundle of the languages " + languages + " is not set!");
+        }
+    }
+
+    public boolean isStacklessExceptions() {
+        return stacklessExceptions;
+    }
+
+    public TrackingIdGenerator getTrackingIdGenerator() {
+        return trackingIdGenerator;
+    }
+
+    public String[] getErrorCodePackages() {
+        return errorCodePackages;
+    }
+
+    public boolean isNegotiateLanguage() {
+        return negotiateLanguage;
+    }
+
+    public String getDefaultLanguage() {
+        return defaultLanguage;
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    public String getMessageBundle() {
+        return messageBundle;
+    }
+
+    public boolean isPreserializedProblems() {
+        return preserializedProblems;
+    }
+
+    public boolean isErrorMetrics() {
+        return errorMetrics;
+    }
+
+    public int getTopErrors() {
+        return topErrors;
+    }
+
+    public ErrorRecords getErrorRecords() {
+        return errorRecords;
+    }
+
+    public long getLogCoalescingSeconds() {
+        return logCoalescingSeconds;
+    }
+
+    public int getMaxViolations() {
+        return maxViolations;
+    }
+
+    public int getMaxRejectionsPerMinute() {
+        return maxRejectionsPerMinute;
+    }
+}
@@ -1,7 +1,5 @@
 package ir.sahab.rest.common.apierror;
 
-import java.util.UUID;
-
 /**
  * This is the only one exception which is used for throwing business exception through any REST API.
  *
@@ -11,7 +9,7 @@ public class ApiException extends Exception {
 
     private static final long serialVersionUID = 1L;
 
-    private final String trackingId = UUID.randomUUID().toString();
+    private String trackingId;
     private final ApiErrorCode error;
     private final Object extraData;
 
@@ -26,19 +24,29 @@ public class ApiException extends Exception {
     }
 
     public ApiException(ApiErrorCode error, Object extraData, Throwable throwable) {
-        super(error.getEnMessage(), throwable);
+        super(error.getEnMessage(), throwable, true, isStackTraceWritable(error));
         this.error = error;
         this.extraData = extraData;
         this.parameters = new Object[0];
     }
 
+    private static boolean isStackTraceWritable(ApiErrorCode error) {
+        return !ApiErrorMappingMetadata.getInstance().isStacklessExceptions() || error.isStackTraceRequired();
+    }
+
     /**
      * Tracking ID is the unique ID generated for each API exception and it is useful to track an error and find more
      * about it. Note that some part of the system such as UI front-end modules, does not access to full description of
      * an error (mostly for security reasons) but they get the track ID anyway. Then this track ID can be used to get
      * further information about the error from different sources like logs in ELK or error records in Sentry.
+     *
+     * <p>The tracking id is generated by the {@link TrackingIdGenerator} on the first call, so the exceptions which are
+     * caught and never rendered do not pay for it.
      */
-    String getTrackingId() {
+    synchronized String getTrackingId() {
+        if (trackingId == null) {
+            trackingId = ApiErrorMappingMetadata.getInstance().getTrackingIdGenerator().generate();
+        }
         return trackingId;
     }
 
@@ -1,13 +1,33 @@
 package ir.sahab.rest.common.apierror;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.validation.BindException;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.ObjectError;
+import org.springframework.web.HttpRequestMethodNotSupportedException;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -17,9 +37,15 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.context.request.NativeWebRequest;
-import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.NoHandlerFoundException;
 import org.zalando.problem.Problem;
 import org.zalando.problem.ProblemBuilder;
+import org.zalando.problem.Status;
+import org.zalando.problem.StatusType;
 import org.zalando.problem.ThrowableProblem;
 import org.zalando.problem.spring.common.MediaTypes;
 import org.zalando.problem.spring.web.advice.ProblemHandling;
@@ -32,25 +58,465 @@ import org.zalando.problem.spring.web.advice.security.SecurityAdviceTrait;
  * DeleteMapping DeleteMapping}, {@link PatchMapping PatchMapping} ). Handlers for most type of general exceptions are
  * implemented in {@link ProblemHandling} and {@link SecurityAdviceTrait}. Here we have added a custom handler for
  * {@link ApiException}.
+ *
+ * <p>The fields which are added to all problems (see {@link ApiProblemField}) are added when the problems are built,
+ * i.e., in {@link #handleApiException} and {@link #prepare}, so each problem is built once. The problems which are
+ * built elsewhere (e.g., the constraint violations or the problems thrown by the application) are copied with the
+ * added fields in {@link #process}.
+ *
+ * <p>If an {@link ObjectMapper} is given, the problems of the {@link ApiException}s without parameters and extra data
+ * (i.e., most of the business errors) are serialized once for each error code, and their responses are written from
+ * the serialized bytes by just putting the fields of their requests in (see {@link ProblemTemplate}).
+ *
+ * <p>The 404 (Not Found) and 405 (Method Not Allowed) errors of the requests which match no route (e.g., the probes
+ * of the vulnerability scanners) are written from pre-serialized templates too, with the content negotiation skipped
+ * for the common Accept headers. If a {@link RejectedRequestCounter} is given, they are counted by their source, so
+ * the sources with too many of them are blocked.
+ *
+ * <p>The problems of the validation errors are built without collecting all of their violations: the violations are
+ * grouped and capped while the problems are serialized (see {@link ViolationGroups}), and the problems have the total
+ * number of the violations in the {@code violation_count} field.
+ *
+ * <p>If a {@link MessageLanguageNegotiator} is given, the problems just have the message in the language which is
+ * picked from the Accept-Language header of the request (e.g., {@code fa_message}), and the response has the
+ * Content-Language header.
  */
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @ControllerAdvice
 public class ApiExceptionHandler implements ProblemHandling, SecurityAdviceTrait {
 
+    private static final Logger logger = LoggerFactory.getLogger(ApiExceptionHandler.class);
+
+    private static final String MESSAGE_FIELD_SUFFIX = "_message";
+    private static final String DEFAULT_FA_MESSAGE = "درخواست مربوطه با خطا مواجه شد.";
+    // The request attribute of the tracking id which is generated for the record of a problem which has none yet, so
+    // the same tracking id is added to the problem.
+    private static final String TRACKING_ID_ATTRIBUTE = ApiExceptionHandler.class.getName() + ".TRACKING_ID";
+    private static final String CONSTRAINT_VIOLATION_TITLE = "Constraint Violation";
+    private static final String VIOLATIONS_FIELD = "violations";
+    private static final String VIOLATION_COUNT_FIELD = "violation_count";
+    private static final int DEFAULT_MAX_VIOLATIONS = 100;
+    private static final MediaType PROBLEM_JSON_UTF8 =
+            new MediaType(MediaType.APPLICATION_PROBLEM_JSON, StandardCharsets.UTF_8);
+
+    private final MessageTemplateRegistry messageTemplateRegistry;
+    private final MessageLanguageNegotiator languageNegotiator;
+    private final ObjectMapper objectMapper;
+    // Templates of the problems of parameterless error codes by their error code and language. The empty templates
+    // mark the error codes which cannot have a template.
+    private final Map<TemplateKey, Optional<ProblemTemplate>> problemTemplates = new ConcurrentHashMap<>();
+    // Templates of the problems of the requests which match no route, by the language of their message (or an empty
+    // string if they have both the English and Persian messages).
+    private final Map<String, Optional<ProblemTemplate>> notFoundTemplates = new ConcurrentHashMap<>();
+    private final Map<String, Optional<ProblemTemplate>> methodNotAllowedTemplates = new ConcurrentHashMap<>();
+    private ErrorMetrics errorMetrics;
+    private ErrorRecordStore errorRecordStore;
+    private ErrorLogCoalescer errorLogCoalescer;
+    private RejectedRequestCounter rejectedRequestCounter;
+    private int maxViolations = DEFAULT_MAX_VIOLATIONS;
+
+    public ApiExceptionHandler() {
+        this(new MessageTemplateRegistry());
+    }
+
+    public ApiExceptionHandler(MessageTemplateRegistry messageTemplateRegistry) {
+        this(messageTemplateRegistry, null);
+    }
+
+    /**
+     * @param languageNegotiator negotiator of the language of the messages, or null to have both the English and
+     *     Persian messages in the problems.
+     */
+    public ApiExceptionHandler(MessageTemplateRegistry messageTemplateRegistry,
+            MessageLanguageNegotiator languageNegotiator) {
+        this(messageTemplateRegistry, languageNegotiator, null);
+    }
+
+    /**
+     * @param languageNegotiator negotiator of the language of the messages, or null to have both the English and
+     *     Persian messages in the problems.
+     * @param objectMapper the object mapper which serializes the problem responses, to pre-serialize the problems of
+     *     the error codes without parameters and extra data. If it is null, all problems are serialized on each error.
+     */
+    public ApiExceptionHandler(MessageTemplateRegistry messageTemplateRegistry,
+            MessageLanguageNegotiator languageNegotiator, ObjectMapper objectMapper) {
+        this.messageTemplateRegistry = messageTemplateRegistry;
+        this.languageNegotiator = languageNegotiator;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Sets the metrics which count the handled {@link ApiException}s. If it is not set, they are not counted.
+     */
+    public void setErrorMetrics(ErrorMetrics errorMetrics) {
+        this.errorMetrics = errorMetrics;
+    }
+
+    /**
+     * Sets the store which the handled errors are recorded in. If it is not set, they are not recorded.
+     */
+    public void setErrorRecordStore(ErrorRecordStore errorRecordStore) {
+        this.errorRecordStore = errorRecordStore;
+    }
+
+    /**
+     * Sets the coalescer of the logs of the identical errors. If it is not set, every error is logged.
+     */
+    public void setErrorLogCoalescer(ErrorLogCoalescer errorLogCoalescer) {
+        this.errorLogCoalescer = errorLogCoalescer;
+    }
+
+    /**
+     * Sets the counter of the requests which match no route by their source. If it is not set, they are not counted.
+     */
+    public void setRejectedRequestCounter(RejectedRequestCounter rejectedRequestCounter) {
+        this.rejectedRequestCounter = rejectedRequestCounter;
+    }
+
+    /**
+     * Sets the maximum number of the (grouped) violations which are rendered in the problems of the validation errors.
+     * It is 100 by default.
+     */
+    public void setMaxViolations(int maxViolations) {
+        if (maxViolations <= 0) {
+            throw new IllegalArgumentException("Maximum number of the violations must be positive!");
+        }
+        this.maxViolations = maxViolations;
+    }
+
     @ExceptionHandler({ApiException.class})
     public ResponseEntity<Problem> handleApiException(final ApiException ex, final NativeWebRequest request) {
-        ThrowableProblem problem = Problem.builder()
-                .with(ApiProblemField.TRACKING_ID.name().toLowerCase(), ex.getTrackingId())
-                .with(ApiProblemField.EN_MESSAGE.name().toLowerCase(),
-                        String.format(ex.getApiErrorCode().getEnMessage(), ex.getParameters()))
-                .with(ApiProblemField.FA_MESSAGE.name().toLowerCase(),
-                        String.format(ex.getApiErrorCode().getFaMessage(), ex.getParameters()))
-                .with(ApiProblemField.ERROR_CODE.name().toLowerCase(), ex.getApiErrorCode().getName())
-                .withDetail(String.valueOf(ex.getExtraData()))
-                .withStatus(ex.getApiErrorCode().getHttpStatusCode())
-                .withTitle(ex.getApiErrorCode().getHttpStatusCode().getReasonPhrase())
-                .build();
-        return create(ex, problem, request);
+        ApiErrorCode errorCode = ex.getApiErrorCode();
+        if (errorMetrics != null) {
+            errorMetrics.record(errorCode, (String) request.getAttribute(
+                    HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST));
+        }
+        String language = languageNegotiator == null ? null : negotiateLanguage(errorCode, request);
+        HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+        if (objectMapper != null && (ex.getParameters() == null || ex.getParameters().length == 0)
+                && ex.getExtraData() == null
+                && writeProblemTemplate(ex, language, request, servletRequest)) {
+            // The response is written, so there is nothing to return.
+            return null;
+        }
+        ProblemBuilder problemBuilder = buildApiProblem(errorCode, ex.getParameters(), ex.getExtraData(),
+                ex.getTrackingId(), language);
+        addRequestFields(problemBuilder, getCurrentUser(), servletRequest.getRequestURI(), servletRequest.getMethod(),
+                System.currentTimeMillis());
+        return create(ex, problemBuilder.build(), request);
+    }
+
+    /**
+     * Returns the builder of the problem of an {@link ApiException} with the given fields, without the fields of its
+     * request.
+     *
+     * @param language the negotiated language of the message or null to have both the English and Persian messages.
+     */
+    private ProblemBuilder buildApiProblem(ApiErrorCode errorCode, Object[] parameters, Object extraData,
+            String trackingId, String language) {
+        ProblemBuilder problemBuilder = Problem.builder()
+                .with(ApiProblemField.TRACKING_ID.name().toLowerCase(), trackingId);
+        if (language == null) {
+            problemBuilder
+                    .with(ApiProblemField.EN_MESSAGE.name().toLowerCase(),
+                            messageTemplateRegistry.getEnMessage(errorCode, parameters))
+                    .with(ApiProblemField.FA_MESSAGE.name().toLowerCase(),
+                            messageTemplateRegistry.getFaMessage(errorCode, parameters));
+        } else {
+            problemBuilder.with(language + MESSAGE_FIELD_SUFFIX,
+                    messageTemplateRegistry.getMessage(errorCode, language, parameters));
+        }
+        return problemBuilder
+                .with(ApiProblemField.ERROR_CODE.name().toLowerCase(), errorCode.getName())
+                .withDetail(String.valueOf(extraData))
+                .withStatus(errorCode.getHttpStatusCode())
+                .withTitle(errorCode.getHttpStatusCode().getReasonPhrase());
+    }
+
+    /**
+     * Returns the negotiated language of the request which the given error code has a message in. If the error code
+     * has no message in that language (i.e., in its message bundle), the default language or else English is
+     * returned.
+     */
+    private String negotiateLanguage(ApiErrorCode errorCode, NativeWebRequest request) {
+        String language = languageNegotiator.negotiate(request.getHeader(HttpHeaders.ACCEPT_LANGUAGE));
+        if (!messageTemplateRegistry.hasMessage(errorCode, language)) {
+            language = languageNegotiator.getDefaultLanguage();
+        }
+        if (!messageTemplateRegistry.hasMessage(errorCode, language)) {
+            language = MessageTemplateRegistry.EN;
+        }
+        return language;
+    }
+
+    /**
+     * Writes the problem of the given exception, which has no parameters and extra data, by its pre-serialized
+     * template straight to the response.
+     *
+     * @return false if the problem has no template or the negotiated media type of the response is not JSON, so the
+     *     response is not written.
+     */
+    private boolean writeProblemTemplate(ApiException ex, String language, NativeWebRequest request,
+            HttpServletRequest servletRequest) {
+        HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+        Optional<MediaType> mediaType = negotiate(request);
+        if (response == null || !mediaType.isPresent() || !isUtf8Json(mediaType.get())) {
+            return false;
+        }
+        Optional<ProblemTemplate> template = problemTemplates.computeIfAbsent(
+                new TemplateKey(ex.getApiErrorCode(), language), this::compileProblemTemplate);
+        if (!template.isPresent()) {
+            return false;
+        }
+        StatusType status = ex.getApiErrorCode().getHttpStatusCode();
+        log(ex, template.get().getProblem(), request, HttpStatus.valueOf(status.getStatusCode()));
+        response.setStatus(status.getStatusCode());
+        response.setContentType(mediaType.get().toString());
+        if (language != null) {
+            response.setHeader(HttpHeaders.CONTENT_LANGUAGE, language);
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE);
+        }
+        try {
+            template.get().write(response.getOutputStream(), ex.getTrackingId(), getCurrentUser(),
+                    servletRequest.getRequestURI(), servletRequest.getMethod(), System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write the problem response", e);
+        }
+        return true;
+    }
+
+    private Optional<ProblemTemplate> compileProblemTemplate(TemplateKey key) {
+        ProblemBuilder sampleBuilder = buildApiProblem(key.errorCode, new Object[0], null,
+                ProblemTemplate.TRACKING_ID_PLACEHOLDER, key.language);
+        addRequestFields(sampleBuilder, ProblemTemplate.USER_PLACEHOLDER, ProblemTemplate.API_PATH_PLACEHOLDER,
+                ProblemTemplate.HTTP_METHOD_PLACEHOLDER, ProblemTemplate.TIMESTAMP_PLACEHOLDER);
+        // The problem without the fields of the requests, which is logged on the errors.
+        Problem problem = buildApiProblem(key.errorCode, new Object[0], null, "", key.language).build();
+        try {
+            return Optional.ofNullable(ProblemTemplate.compile(objectMapper, sampleBuilder.build(), problem));
+        } catch (JsonProcessingException e) {
+            logger.warn("Unable to pre-serialize the problem of error code {}.", key.errorCode.getName(), e);
+            return Optional.empty();
+        }
+    }
+
+    private static boolean isUtf8Json(MediaType mediaType) {
+        return (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)
+                || MediaType.APPLICATION_PROBLEM_JSON.isCompatibleWith(mediaType))
+                && !mediaType.isWildcardSubtype()
+                && (mediaType.getCharset() == null || StandardCharsets.UTF_8.equals(mediaType.getCharset()));
+    }
+
+    @Override
+    public ResponseEntity<Problem> handleNoHandlerFound(NoHandlerFoundException exception, NativeWebRequest request) {
+        HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+        countRejection(servletRequest);
+        // The template renders the message of the exception by the method and path of the request.
+        if (exception.getClass() == NoHandlerFoundException.class && servletRequest != null
+                && exception.getHttpMethod().equals(servletRequest.getMethod())
+                && exception.getRequestURL().equals(servletRequest.getRequestURI())
+                && writeRejectionTemplate(exception, Status.NOT_FOUND, notFoundTemplates, null, request,
+                servletRequest)) {
+            // The response is written, so there is nothing to return.
+            return null;
+        }
+        return ProblemHandling.super.handleNoHandlerFound(exception, request);
+    }
+
+    @Override
+    public ResponseEntity<Problem> handleRequestMethodNotSupportedException(
+            HttpRequestMethodNotSupportedException exception, NativeWebRequest request) {
+        HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+        countRejection(servletRequest);
+        String[] supportedMethods = exception.getSupportedMethods();
+        if (exception.getClass() == HttpRequestMethodNotSupportedException.class && servletRequest != null
+                && exception.getMethod().equals(servletRequest.getMethod())
+                && writeRejectionTemplate(exception, Status.METHOD_NOT_ALLOWED, methodNotAllowedTemplates,
+                supportedMethods == null || supportedMethods.length == 0 ? null : String.join(", ", supportedMethods),
+                request, servletRequest)) {
+            return null;
+        }
+        return ProblemHandling.super.handleRequestMethodNotSupportedException(exception, request);
+    }
+
+    private void countRejection(HttpServletRequest servletRequest) {
+        if (rejectedRequestCounter != null && servletRequest != null) {
+            rejectedRequestCounter.record(servletRequest.getRemoteAddr());
+        }
+    }
+
+    /**
+     * Writes the problem of a request which matches no route by its pre-serialized template straight to the response.
+     * The problem is the same as the one which is built by the handler of {@link ProblemHandling} and copied with the
+     * fields of {@link ApiProblemField}, and its template is made from a sample exception with the placeholders of the
+     * method and path of the request.
+     *
+     * @param allow the value of the Allow header of the response or null if it has none.
+     * @return false if the problem has no template or the negotiated media type of the response is not JSON, so the
+     *     response is not written.
+     */
+    private boolean writeRejectionTemplate(Throwable exception, Status status,
+            Map<String, Optional<ProblemTemplate>> templates, String allow, NativeWebRequest request,
+            HttpServletRequest servletRequest) {
+        HttpServletResponse response = request.getNativeResponse(HttpServletResponse.class);
+        if (objectMapper == null || response == null) {
+            return false;
+        }
+        MediaType mediaType = negotiateRejection(request);
+        if (mediaType == null) {
+            return false;
+        }
+        String language = getDefaultMessageLanguage(servletRequest);
+        Optional<ProblemTemplate> template = templates.computeIfAbsent(language == null ? "" : language,
+                key -> compileRejectionTemplate(status, language));
+        if (!template.isPresent()) {
+            return false;
+        }
+        log(exception, template.get().getProblem(), request, HttpStatus.valueOf(status.getStatusCode()));
+        Object trackingId = servletRequest.getAttribute(TRACKING_ID_ATTRIBUTE);
+        response.setStatus(status.getStatusCode());
+        response.setContentType(mediaType.toString());
+        if (allow != null) {
+            response.setHeader(HttpHeaders.ALLOW, allow);
+        }
+        if (language != null) {
+            response.setHeader(HttpHeaders.CONTENT_LANGUAGE, language);
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE);
+        }
+        try {
+            template.get().write(response.getOutputStream(), trackingId != null ? trackingId.toString()
+                            : ApiErrorMappingMetadata.getInstance().getTrackingIdGenerator().generate(),
+                    getCurrentUser(), servletRequest.getRequestURI(), servletRequest.getMethod(),
+                    System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write the problem response", e);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the media type of the problem of a request which matches no route, without parsing the Accept header if
+     * it is missing or one of the common values which are negotiated to {@code application/problem+json}.
+     *
+     * @return the media type or null if it is not UTF-8 JSON.
+     */
+    private MediaType negotiateRejection(NativeWebRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        if (accept == null || accept.equals(MediaType.ALL_VALUE) || accept.equals(MediaType.APPLICATION_JSON_VALUE)
+                || accept.equals(MediaType.APPLICATION_PROBLEM_JSON_VALUE)) {
+            return PROBLEM_JSON_UTF8;
+        }
+        Optional<MediaType> mediaType = negotiate(request);
+        return mediaType.isPresent() && isUtf8Json(mediaType.get()) ? mediaType.get() : null;
+    }
+
+    private Optional<ProblemTemplate> compileRejectionTemplate(Status status, String language) {
+        Throwable sampleException = status == Status.NOT_FOUND
+                ? new NoHandlerFoundException(ProblemTemplate.HTTP_METHOD_PLACEHOLDER,
+                        ProblemTemplate.API_PATH_PLACEHOLDER, new HttpHeaders())
+                : new HttpRequestMethodNotSupportedException(ProblemTemplate.HTTP_METHOD_PLACEHOLDER);
+        ProblemBuilder sampleBuilder = ProblemHandling.super.prepare(sampleException, status, Problem.DEFAULT_TYPE);
+        addRequestFields(sampleBuilder, ProblemTemplate.USER_PLACEHOLDER, ProblemTemplate.API_PATH_PLACEHOLDER,
+                ProblemTemplate.HTTP_METHOD_PLACEHOLDER, ProblemTemplate.TIMESTAMP_PLACEHOLDER);
+        sampleBuilder.with(ApiProblemField.TRACKING_ID.name().toLowerCase(), ProblemTemplate.TRACKING_ID_PLACEHOLDER);
+        addDefaultMessages(sampleBuilder, Collections.emptyMap(),
+                status.getReasonPhrase() + ": " + sampleException.getMessage(), language);
+        try {
+            return Optional.ofNullable(ProblemTemplate.compile(objectMapper, sampleBuilder.build(),
+                    Problem.valueOf(status), true));
+        } catch (JsonProcessingException e) {
+            logger.warn("Unable to pre-serialize the problem of status {}.", status.getStatusCode(), e);
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public ResponseEntity<Problem> handleMethodArgumentNotValid(MethodArgumentNotValidException exception,
+            NativeWebRequest request) {
+        return handleBindingResult(exception, request);
+    }
+
+    @Override
+    public ResponseEntity<Problem> handleBindingResult(BindException exception, NativeWebRequest request) {
+        return createViolationsProblem(exception, new ViolationGroups<>(exception.getAllErrors(),
+                error -> error instanceof FieldError ? createViolation((FieldError) error) : createViolation(error),
+                maxViolations), exception.getErrorCount(), request);
+    }
+
+    @Override
+    public ResponseEntity<Problem> handleConstraintViolation(ConstraintViolationException exception,
+            NativeWebRequest request) {
+        return createViolationsProblem(exception, new ViolationGroups<>(exception.getConstraintViolations(),
+                this::createViolation, maxViolations), exception.getConstraintViolations().size(), request);
+    }
+
+    /**
+     * Creates the problem of a validation error with the given violations, which are rendered when the problem is
+     * serialized.
+     */
+    private ResponseEntity<Problem> createViolationsProblem(Throwable throwable, ViolationGroups<?> violations,
+            int violationCount, NativeWebRequest request) {
+        ProblemBuilder problemBuilder = Problem.builder()
+                .withType(defaultConstraintViolationType())
+                .withTitle(CONSTRAINT_VIOLATION_TITLE)
+                .withStatus(defaultConstraintViolationStatus());
+        HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+        addRequestFields(problemBuilder, getCurrentUser(), servletRequest.getRequestURI(), servletRequest.getMethod(),
+                System.currentTimeMillis());
+        problemBuilder.with(ApiProblemField.TRACKING_ID.name().toLowerCase(),
+                ApiErrorMappingMetadata.getInstance().getTrackingIdGenerator().generate());
+        addDefaultMessages(problemBuilder, Collections.emptyMap(), CONSTRAINT_VIOLATION_TITLE, servletRequest);
+        problemBuilder.with(VIOLATIONS_FIELD, violations)
+                .with(VIOLATION_COUNT_FIELD, violationCount);
+        return create(throwable, problemBuilder.build(), request);
+    }
+
+    /**
+     * Adds the fields of {@link ApiProblemField} to the problems which are created by the handlers of general
+     * exceptions (i.e., the ones of {@link ProblemHandling} and {@link SecurityAdviceTrait}), while they are built.
+     */
+    @Override
+    public ProblemBuilder prepare(Throwable throwable, StatusType status, URI type) {
+        ProblemBuilder problemBuilder = ProblemHandling.super.prepare(throwable, status, type);
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes instanceof ServletRequestAttributes) {
+            HttpServletRequest request = ((ServletRequestAttributes) requestAttributes).getRequest();
+            addRequestFields(problemBuilder, getCurrentUser(), request.getRequestURI(), request.getMethod(),
+                    System.currentTimeMillis());
+            problemBuilder.with(ApiProblemField.TRACKING_ID.name().toLowerCase(),
+                    ApiErrorMappingMetadata.getInstance().getTrackingIdGenerator().generate());
+            // The same as the message of the problem which is built by the super method.
+            String message = throwable.getMessage() == null ? status.getReasonPhrase()
+                    : status.getReasonPhrase() + ": " + throwable.getMessage();
+            addDefaultMessages(problemBuilder, Collections.emptyMap(), message, request);
+        }
+        return problemBuilder;
+    }
+
+    /**
+     * Logs the given error, unless it is coalesced by the {@link ErrorLogCoalescer}, and records it in the
+     * {@link ErrorRecordStore} by the tracking id of its problem.
+     */
+    @Override
+    public void log(Throwable throwable, Problem problem, NativeWebRequest request, HttpStatus status) {
+        // The other statuses are not logged by the super method, so they are not coalesced either.
+        boolean loggable = status.is4xxClientError() || status.is5xxServerError();
+        if (loggable && (errorLogCoalescer == null || errorLogCoalescer.shouldLog(throwable, status))) {
+            ProblemHandling.super.log(throwable, problem, request, status);
+        }
+        HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+        if (errorRecordStore == null || servletRequest == null) {
+            return;
+        }
+        Object trackingId = throwable instanceof ApiException ? ((ApiException) throwable).getTrackingId()
+                : problem.getParameters().get(ApiProblemField.TRACKING_ID.name().toLowerCase());
+        if (trackingId == null) {
+            // The problem is not built by this class, so its tracking id is added in process.
+            trackingId = ApiErrorMappingMetadata.getInstance().getTrackingIdGenerator().generate();
+            servletRequest.setAttribute(TRACKING_ID_ATTRIBUTE, trackingId);
+        }
+        errorRecordStore.record(String.valueOf(trackingId), throwable, status.value(), servletRequest,
+                getCurrentUser());
     }
 
     /**
@@ -69,17 +535,22 @@ public class ApiExceptionHandler implements ProblemHandling, SecurityAdviceTrait
         final Optional<MediaType> mediaType = ProblemHandling.super.negotiate(request);
         return mediaType
                 .filter(MediaTypes.PROBLEM::equals)
-                .map(type -> Optional.of(MediaType.APPLICATION_PROBLEM_JSON_UTF8))
+                .map(type -> Optional.of(PROBLEM_JSON_UTF8))
                 .orElse(mediaType);
     }
 
     @Override
     public ResponseEntity<Problem> process(ResponseEntity<Problem> entity, NativeWebRequest request) {
-        return createResponseProblem((ServletWebRequest) request, entity);
+        ResponseEntity<Problem> response = entity;
+        if (!entity.getBody().getParameters().containsKey(ApiProblemField.API_PATH.name().toLowerCase())) {
+            // The problem is not built by this class, so it does not have the fields yet.
+            response = createResponseProblem(request.getNativeRequest(HttpServletRequest.class), entity);
+        }
+        return languageNegotiator == null ? response : addContentLanguage(response);
     }
 
     /**
-     * Adds following details to returned problem for all exceptions.
+     * Copies the given problem and adds following details to it.
      * <ul>
      *     <li>User</li>
      *     <li>Api path</li>
@@ -90,7 +561,7 @@ public class ApiExceptionHandler implements ProblemHandling, SecurityAdviceTrait
      *     <li>Persian message</li>
      * </ul>
      */
-    private ResponseEntity<Problem> createResponseProblem(ServletWebRequest request, ResponseEntity<Problem> entity) {
+    private ResponseEntity<Problem> createResponseProblem(HttpServletRequest request, ResponseEntity<Problem> entity) {
         ThrowableProblem problem = (ThrowableProblem) entity.getBody();
 
         // Add the fields from original problem.
@@ -103,24 +574,99 @@ public class ApiExceptionHandler implements ProblemHandling, SecurityAdviceTrait
         problem.getParameters().forEach(problemBuilder::with);
 
         // Add the extra fields that we can define their exact values
-        problemBuilder.with(ApiProblemField.USER.name().toLowerCase(), getCurrentUser())
-                .with(ApiProblemField.API_PATH.name().toLowerCase(), request.getRequest().getRequestURI())
-                .with(ApiProblemField.HTTP_METHOD.name().toLowerCase(), request.getRequest().getMethod())
-                .with(ApiProblemField.TIMESTAMP.name().toLowerCase(), System.currentTimeMillis());
+        addRequestFields(problemBuilder, getCurrentUser(), request.getRequestURI(), request.getMethod(),
+                System.currentTimeMillis());
 
         // Add the extra fields that we want to set their default values if they are not already set in the original
         // problem.
         if (!problem.getParameters().containsKey(ApiProblemField.TRACKING_ID.name().toLowerCase())) {
-            problemBuilder.with(ApiProblemField.TRACKING_ID.name().toLowerCase(), UUID.randomUUID().toString());
+            Object trackingId = request.getAttribute(TRACKING_ID_ATTRIBUTE);
+            problemBuilder.with(ApiProblemField.TRACKING_ID.name().toLowerCase(), trackingId != null ? trackingId
+                    : ApiErrorMappingMetadata.getInstance().getTrackingIdGenerator().generate());
         }
-        if (!problem.getParameters().containsKey(ApiProblemField.EN_MESSAGE.name().toLowerCase())) {
-            problemBuilder.with(ApiProblemField.EN_MESSAGE.name().toLowerCase(), problem.getMessage());
+        addDefaultMessages(problemBuilder, problem.getParameters(), problem.getMessage(), request);
+
+        return new ResponseEntity<>(problemBuilder.build(), entity.getHeaders(), entity.getStatusCode());
+    }
+
+    private static void addRequestFields(ProblemBuilder problemBuilder, String user, String apiPath,
+            String httpMethod, long timestamp) {
+        problemBuilder.with(ApiProblemField.USER.name().toLowerCase(), user)
+                .with(ApiProblemField.API_PATH.name().toLowerCase(), apiPath)
+                .with(ApiProblemField.HTTP_METHOD.name().toLowerCase(), httpMethod)
+                .with(ApiProblemField.TIMESTAMP.name().toLowerCase(), timestamp);
+    }
+
+    /**
+     * Adds the default messages of a problem which are not among its given parameters. If the language is negotiated,
+     * just the message in the negotiated language is added (if the problem has no message yet). The problems in
+     * languages other than English and Persian get the English message, because only the {@link ApiErrorCode}s have
+     * messages in the message bundles.
+     */
+    private void addDefaultMessages(ProblemBuilder problemBuilder, Map<String, Object> parameters, String enMessage,
+            HttpServletRequest request) {
+        if (languageNegotiator == null || getMessageLanguage(parameters) == null) {
+            addDefaultMessages(problemBuilder, parameters, enMessage, getDefaultMessageLanguage(request));
         }
-        if (!problem.getParameters().containsKey(ApiProblemField.FA_MESSAGE.name().toLowerCase())) {
-            problemBuilder.with(ApiProblemField.FA_MESSAGE.name().toLowerCase(), "درخواست مربوطه با خطا مواجه شد.");
+    }
+
+    /**
+     * Adds the default messages of a problem in the given language (see {@link #getDefaultMessageLanguage}) which are
+     * not among its given parameters.
+     */
+    private static void addDefaultMessages(ProblemBuilder problemBuilder, Map<String, Object> parameters,
+            String enMessage, String language) {
+        if (language == null) {
+            if (!parameters.containsKey(ApiProblemField.EN_MESSAGE.name().toLowerCase())) {
+                problemBuilder.with(ApiProblemField.EN_MESSAGE.name().toLowerCase(), enMessage);
+            }
+            if (!parameters.containsKey(ApiProblemField.FA_MESSAGE.name().toLowerCase())) {
+                problemBuilder.with(ApiProblemField.FA_MESSAGE.name().toLowerCase(), DEFAULT_FA_MESSAGE);
+            }
+        } else if (MessageTemplateRegistry.FA.equals(language)) {
+            problemBuilder.with(ApiProblemField.FA_MESSAGE.name().toLowerCase(), DEFAULT_FA_MESSAGE);
+        } else {
+            problemBuilder.with(ApiProblemField.EN_MESSAGE.name().toLowerCase(), enMessage);
         }
+    }
 
-        return new ResponseEntity<>(problemBuilder.build(), entity.getHeaders(), entity.getStatusCode());
+    /**
+     * Returns the language of the default messages of the problems of the given request: Persian or English, or null
+     * if the language is not negotiated (i.e., the problems have both messages).
+     */
+    private String getDefaultMessageLanguage(HttpServletRequest request) {
+        if (languageNegotiator == null) {
+            return null;
+        }
+        String language = languageNegotiator.negotiate(request.getHeader(HttpHeaders.ACCEPT_LANGUAGE));
+        return MessageTemplateRegistry.FA.equals(language) ? MessageTemplateRegistry.FA : MessageTemplateRegistry.EN;
+    }
+
+    /**
+     * Sets the Content-Language header of the given response according to the language of its message.
+     */
+    private ResponseEntity<Problem> addContentLanguage(ResponseEntity<Problem> entity) {
+        String language = getMessageLanguage(entity.getBody().getParameters());
+        if (language == null) {
+            return entity;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(entity.getHeaders());
+        headers.set(HttpHeaders.CONTENT_LANGUAGE, language);
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE);
+        return new ResponseEntity<>(entity.getBody(), headers, entity.getStatusCode());
+    }
+
+    /**
+     * Returns the language of the message among the given problem parameters, or null if they have no message.
+     */
+    private String getMessageLanguage(Map<String, Object> parameters) {
+        for (String language : languageNegotiator.getLanguages()) {
+            if (parameters.containsKey(language + MESSAGE_FIELD_SUFFIX)) {
+                return language;
+            }
+        }
+        return null;
     }
 
     private String getCurrentUser() {
@@ -131,4 +677,33 @@ public class ApiExceptionHandler implements ProblemHandling, SecurityAdviceTrait
         }
         return currentUser;
     }
+
+    /**
+     * The key of the template of a problem: its error code and the language of its message.
+     */
+    private static class TemplateKey {
+
+        final ApiErrorCode errorCode;
+        final String language;
+
+        TemplateKey(ApiErrorCode errorCode, String language) {
+            this.errorCode = errorCode;
+            this.language = language;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof TemplateKey)) {
+                return false;
+            }
+            TemplateKey that = (TemplateKey) other;
+            return errorCode.equals(that.errorCode)
+                    && (language == null ? that.language == null : language.equals(that.language));
+        }
+
+        @Override
+        public int hashCode() {
+            return errorCode.hashCode() * 31 + (language == null ? 0 : language.hashCode());
+        }
+    }
 }
@@ -1,10 +1,14 @@
 package ir.sahab.rest.common.apierror;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import ir.sahab.rest.common.apierror.EnableApiErrorMapping.ApiErrorMappingImporter;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.ImportSelector;
@@ -21,6 +25,100 @@ import org.zalando.problem.violations.ConstraintViolationProblemModule;
 @Import(ApiErrorMappingImporter.class)
 public @interface EnableApiErrorMapping {
 
+    /**
+     * If true, {@link ApiException}s do not capture their stack traces, except the ones whose error code requires it
+     * (see {@link ApiErrorCode#isStackTraceRequired()}). Capturing the stack trace is the most expensive part of
+     * throwing an exception, and the stack traces of most business errors are never looked at.
+     */
+    boolean stacklessExceptions() default false;
+
+    /**
+     * Generator of the tracking ids of the API errors. The default one generates ULID-style ids which are sortable by
+     * time.
+     */
+    Class<? extends TrackingIdGenerator> trackingIdGenerator() default UlidTrackingIdGenerator.class;
+
+    /**
+     * Packages (and their sub-packages) which are scanned on startup for the enum implementations of
+     * {@link ApiErrorCode}, to compile their message templates. So a malformed message template fails the startup
+     * instead of its first error response. The error codes which are not found are compiled on their first use. If it
+     * is empty, the package of the annotated class and the packages of this library are scanned.
+     */
+    String[] errorCodePackages() default {};
+
+    /**
+     * If true, the problem responses just have the message in the language which is picked from the Accept-Language
+     * header of the request (e.g., only {@code fa_message}), instead of both the English and Persian messages.
+     */
+    boolean negotiateLanguage() default false;
+
+    /**
+     * Language of the messages of the requests which accept none of the supported languages, if
+     * {@link #negotiateLanguage()} is enabled.
+     */
+    String defaultLanguage() default MessageTemplateRegistry.EN;
+
+    /**
+     * Additional languages of the messages (other than English and Persian) which are supported if
+     * {@link #negotiateLanguage()} is enabled. Their messages are loaded from {@link #messageBundle()}.
+     */
+    String[] languages() default {};
+
+    /**
+     * Base name of the message bundles of the {@link #languages()} in the classpath. For example, for base name
+     * {@code "errors/messages"} the German messages are loaded from {@code errors/messages_de.properties}. The bundles
+     * are UTF-8 properties files whose keys are the names of the error codes.
+     */
+    String messageBundle() default "";
+
+    /**
+     * If true, the problems of the {@link ApiException}s without parameters and extra data are serialized once for
+     * each error code (by the {@link ObjectMapper} of the application), and their responses are written from the
+     * serialized bytes by just putting the tracking id, user, API path, HTTP method and timestamp in.
+     */
+    boolean preserializedProblems() default true;
+
+    /**
+     * If true, the {@link ApiException}s are counted by their error code and route, and the counts are published as
+     * Micrometer metrics and by the {@code apierrors} actuator endpoint (see {@link ErrorMetrics}).
+     */
+    boolean errorMetrics() default true;
+
+    /**
+     * Number of the errors which are reported for each window by the {@code apierrors} actuator endpoint.
+     */
+    int topErrors() default 10;
+
+    /**
+     * Keeping the records of the recent errors, so they can be looked up by their tracking ids by the
+     * {@code errorrecords} actuator endpoint (see {@link ErrorRecordStore}). It is disabled by default.
+     */
+    ErrorRecords errorRecords() default @ErrorRecords;
+
+    /**
+     * Interval of coalescing the logs of the identical errors (see {@link ErrorLogCoalescer}), in seconds. The first
+     * occurrence of an error is logged in full, and the next ones in the interval are just reported by a summary at its
+     * end, so the messages of the coalesced occurrences are not logged. It is disabled (i.e., every error is logged) by
+     * default.
+     */
+    long logCoalescingSeconds() default 0;
+
+    /**
+     * Maximum number of the violations which are rendered in the problems of the validation errors. The violations with
+     * the same message on the same field of different elements (e.g., of a bulk request) are rendered as one, with
+     * their count. The total number of the violations is rendered anyway.
+     */
+    int maxViolations() default 100;
+
+    /**
+     * Maximum number of the 404 (Not Found) and 405 (Method Not Allowed) errors of a client IP per minute. The clients
+     * which exceed it (e.g., vulnerability scanners probing the paths) are blocked: all of their requests are rejected
+     * with the 429 (Too Many Requests) status code until their rate drops (see {@link RejectedRequestCounter}). If it
+     * is zero, the errors are not counted. Note that if the application is behind a proxy, the proxy should be trusted
+     * to resolve the client IPs (e.g., by the {@code server.forward-headers-strategy} property of Spring Boot).
+     */
+    int maxRejectionsPerMinute() default 0;
+
     /**
      * It selects {@link ApiErrorMappingConfigurer} configuration to apply.
      */
@@ -28,7 +126,22 @@ public @interface EnableApiErrorMapping {
 
         @Override
         public String[] selectImports(AnnotationMetadata classMetadata) {
-            return new String[]{ApiErrorMappingConfigurer.class.getName()};
+            ApiErrorMappingMetadata.getInstance().fillFrom(classMetadata);
+            List<String> imports = new ArrayList<>();
+            imports.add(ApiErrorMappingConfigurer.class.getName());
+            if (ApiErrorMappingMetadata.getInstance().isErrorMetrics()) {
+                imports.add(ErrorMetricsConfigurer.class.getName());
+            }
+            if (ApiErrorMappingMetadata.getInstance().getErrorRecords().capacity() > 0) {
+                imports.add(ErrorRecordsConfigurer.class.getName());
+            }
+            if (ApiErrorMappingMetadata.getInstance().getLogCoalescingSeconds() > 0) {
+                imports.add(ErrorLogCoalescingConfigurer.class.getName());
+            }
+            if (ApiErrorMappingMetadata.getInstance().getMaxRejectionsPerMinute() > 0) {
+                imports.add(RejectedRequestsConfigurer.class.getName());
+            }
+            return imports.toArray(new String[0]);
         }
     }
 
@@ -54,8 +167,35 @@ public @interface EnableApiErrorMapping {
         }
 
         @Bean
-        public ApiExceptionHandler globalApiExceptionHandler() {
-            return new ApiExceptionHandler();
+        public MessageTemplateRegistry messageTemplateRegistry() {
+            ApiErrorMappingMetadata metadata = ApiErrorMappingMetadata.getInstance();
+            return new MessageTemplateRegistry(metadata.getMessageBundle(), metadata.getLanguages(),
+                    metadata.getErrorCodePackages());
+        }
+
+        @Bean
+        public ApiExceptionHandler globalApiExceptionHandler(MessageTemplateRegistry messageTemplateRegistry,
+                ObjectProvider<ObjectMapper> objectMapper, ObjectProvider<ErrorMetrics> errorMetrics,
+                ObjectProvider<ErrorRecordStore> errorRecordStore,
+                ObjectProvider<ErrorLogCoalescer> errorLogCoalescer,
+                ObjectProvider<RejectedRequestCounter> rejectedRequestCounter) {
+            ApiErrorMappingMetadata metadata = ApiErrorMappingMetadata.getInstance();
+            MessageLanguageNegotiator languageNegotiator = null;
+            if (metadata.isNegotiateLanguage()) {
+                List<String> languages = new ArrayList<>();
+                languages.add(MessageTemplateRegistry.EN);
+                languages.add(MessageTemplateRegistry.FA);
+                languages.addAll(metadata.getLanguages());
+                languageNegotiator = new MessageLanguageNegotiator(languages, metadata.getDefaultLanguage());
+            }
+            ApiExceptionHandler handler = new ApiExceptionHandler(messageTemplateRegistry, languageNegotiator,
+                    metadata.isPreserializedProblems() ? objectMapper.getIfAvailable() : null);
+            handler.setErrorMetrics(errorMetrics.getIfAvailable());
+            handler.setErrorRecordStore(errorRecordStore.getIfAvailable());
+            handler.setErrorLogCoalescer(errorLogCoalescer.getIfAvailable());
+            handler.setMaxViolations(metadata.getMaxViolations());
+            handler.setRejectedRequestCounter(rejectedRequestCounter.getIfAvailable());
+            return handler;
         }
     }
 }
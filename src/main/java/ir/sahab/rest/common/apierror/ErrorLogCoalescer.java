@@ -0,0 +1,181 @@
+package ir.sahab.rest.common.apierror;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Coalesces the logs of the identical errors, so an error storm (e.g., thousands of failures per second while a
+ * downstream dependency is down) does not flood the logs and make the outage worse. The errors are identified by a
+ * fingerprint of their exception type, error code (for {@link ApiException}s) and, for the 5xx errors, top stack
+ * frames. The stack traces of the 4xx errors are not logged, so they are not materialized for the fingerprints either
+ * (e.g., for the 404 errors of the scanners). So the 4xx errors of the same type and error code are coalesced even if
+ * they have different messages (e.g., the paths of the 404 errors or the parameters of the error codes). The first
+ * occurrence of a fingerprint is logged in full, and the next ones are just counted until the end of the interval,
+ * when a "N more occurrences" summary is logged. A fingerprint which did not occur in an interval is forgotten, so its
+ * next occurrence is logged in full again.
+ *
+ * <p>Coalescing an occurrence costs a lookup and an increment of its counter. The summaries are logged by a background
+ * thread, so the counts of a storm are reported even if it stops.
+ */
+public class ErrorLogCoalescer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ErrorLogCoalescer.class);
+
+    // Number of the top stack frames which are in the fingerprints of the 5xx errors.
+    static final int FINGERPRINT_FRAMES = 3;
+    // The fingerprints come from the thrown exceptions, so they are bounded to not exhaust the memory. The errors of
+    // the other fingerprints are logged without coalescing.
+    private static final int MAX_FINGERPRINTS = 10_000;
+
+    private final long intervalSeconds;
+    private final Map<Fingerprint, Occurrences> occurrences = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService summarizer;
+
+    /**
+     * @param intervalSeconds the interval of the summaries of the coalesced errors.
+     */
+    public ErrorLogCoalescer(long intervalSeconds) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("Log coalescing interval must be positive!");
+        }
+        this.intervalSeconds = intervalSeconds;
+        this.summarizer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "error-log-summarizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        summarizer.scheduleAtFixedRate(this::summarize, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns true if the given error with the given response status should be logged, i.e., it is the first
+     * occurrence of its fingerprint in the current interval. Otherwise, it is counted for the next summary.
+     */
+    public boolean shouldLog(Throwable throwable, HttpStatus status) {
+        Fingerprint fingerprint = new Fingerprint(throwable, status);
+        Occurrences fingerprintOccurrences = occurrences.get(fingerprint);
+        if (fingerprintOccurrences != null) {
+            fingerprintOccurrences.suppressed.increment();
+            return false;
+        }
+        if (occurrences.size() < MAX_FINGERPRINTS) {
+            fingerprintOccurrences = occurrences.putIfAbsent(fingerprint, new Occurrences(status));
+            if (fingerprintOccurrences != null) {
+                // Another thread logs the first occurrence.
+                fingerprintOccurrences.suppressed.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        summarizer.shutdownNow();
+        summarize();
+    }
+
+    /**
+     * Logs the summaries of the fingerprints which occurred since the last summary, and forgets the ones which did not
+     * occur. An occurrence which is counted while its fingerprint is being forgotten is not reported.
+     */
+    void summarize() {
+        for (Map.Entry<Fingerprint, Occurrences> entry : occurrences.entrySet()) {
+            long suppressed = entry.getValue().suppressed.sumThenReset();
+            if (suppressed == 0) {
+                occurrences.remove(entry.getKey(), entry.getValue());
+            } else if (entry.getValue().status.is5xxServerError()) {
+                logger.error("{} more occurrences of {} in the last {} seconds.", suppressed, entry.getKey(),
+                        intervalSeconds);
+            } else {
+                logger.warn("{} more occurrences of {} in the last {} seconds.", suppressed, entry.getKey(),
+                        intervalSeconds);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the fingerprints which are being coalesced.
+     */
+    int getFingerprints() {
+        return occurrences.size();
+    }
+
+    /**
+     * The identity of the occurrences of an error: its exception type, error code and top stack frames (just for the
+     * 5xx errors).
+     */
+    private static final class Fingerprint {
+
+        private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
+
+        private final Class<?> type;
+        private final ApiErrorCode errorCode;
+        private final StackTraceElement[] frames;
+        private final int hashCode;
+
+        Fingerprint(Throwable throwable, HttpStatus status) {
+            this.type = throwable.getClass();
+            this.errorCode = throwable instanceof ApiException ? ((ApiException) throwable).getApiErrorCode() : null;
+            if (status.is5xxServerError()) {
+                // Getting the stack trace builds and copies all of its frames, but it is logged for 5xx errors anyway.
+                StackTraceElement[] stackTrace = throwable.getStackTrace();
+                this.frames = Arrays.copyOf(stackTrace, Math.min(FINGERPRINT_FRAMES, stackTrace.length));
+            } else {
+                this.frames = NO_FRAMES;
+            }
+            int hash = type.hashCode();
+            hash = 31 * hash + (errorCode == null ? 0 : errorCode.hashCode());
+            this.hashCode = 31 * hash + Arrays.hashCode(frames);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Fingerprint)) {
+                return false;
+            }
+            Fingerprint that = (Fingerprint) other;
+            return hashCode == that.hashCode && type == that.type
+                    && (errorCode == null ? that.errorCode == null : errorCode.equals(that.errorCode))
+                    && Arrays.equals(frames, that.frames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder description = new StringBuilder(type.getName());
+            if (errorCode != null) {
+                description.append(" (").append(errorCode.getName()).append(')');
+            }
+            if (frames.length > 0) {
+                description.append(" at ").append(frames[0]);
+            }
+            return description.toString();
+        }
+    }
+
+    /**
+     * The occurrences of a fingerprint which are not logged since the last summary.
+     */
+    private static final class Occurrences {
+
+        private final HttpStatus status;
+        private final LongAdder suppressed = new LongAdder();
+
+        Occurrences(HttpStatus status) {
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ir.sahab.rest.common.apierror;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the beans of the log coalescing. It is only imported if it is enabled by
+ * {@link EnableApiErrorMapping#logCoalescingSeconds()}.
+ */
+@Configuration
+public class ErrorLogCoalescingConfigurer {
+
+    /**
+     * Returns the coalescer which is called by {@link ApiExceptionHandler} before logging the errors. It is closed on
+     * shutdown, so its last summaries are logged.
+     */
+    @Bean
+    ErrorLogCoalescer errorLogCoalescer() {
+        return new ErrorLogCoalescer(ApiErrorMappingMetadata.getInstance().getLogCoalescingSeconds());
+    }
+}
@@ -0,0 +1,198 @@
+package ir.sahab.rest.common.apierror;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the {@link ApiException}s by their error code and the route (i.e., the path pattern of the handler method)
+ * of their requests. The total count of each error code and route is published as the {@code api.errors} Micrometer
+ * counter, and the error codes which occurred the most in the last 1, 5 and 15 minutes are reported by
+ * {@link #getTopErrors()} (e.g., by the {@code apierrors} actuator endpoint).
+ *
+ * <p>Recording an error takes no locks and allocates nothing, except on the first occurrence of an error code and
+ * route: the counters are {@link LongAdder}s, and the recent counts are kept in a ring of per-minute counters which are
+ * reused when their minute passes. Reusing a counter races with the recordings of its new minute, so the recent counts
+ * are approximate (i.e., a concurrent recording may rarely be lost), but the totals are exact.
+ */
+public class ErrorMetrics implements MeterBinder {
+
+    /**
+     * The route of the errors whose requests are not handled by a handler method (e.g., the errors of the filters).
+     */
+    public static final String UNKNOWN_ROUTE = "UNKNOWN";
+
+    static final int[] WINDOW_MINUTES = {1, 5, 15};
+    private static final int SLOTS = 15;
+
+    private final int topErrors;
+    private final Map<ApiErrorCode, Map<String, Cell>> cells = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    /**
+     * @param topErrors the number of the errors which are reported for each window by {@link #getTopErrors()}.
+     */
+    public ErrorMetrics(int topErrors) {
+        if (topErrors <= 0) {
+            throw new IllegalArgumentException("Number of the top errors must be positive!");
+        }
+        this.topErrors = topErrors;
+    }
+
+    /**
+     * Records an occurrence of the given error code on the given route.
+     *
+     * @param route the path pattern of the handler of the request or null if it is unknown.
+     */
+    public void record(ApiErrorCode errorCode, String route) {
+        record(errorCode, route, System.currentTimeMillis());
+    }
+
+    void record(ApiErrorCode errorCode, String route, long nowMillis) {
+        String errorRoute = route == null ? UNKNOWN_ROUTE : route;
+        Map<String, Cell> routeCells = cells.get(errorCode);
+        if (routeCells == null) {
+            routeCells = cells.computeIfAbsent(errorCode, code -> new ConcurrentHashMap<>());
+        }
+        Cell cell = routeCells.get(errorRoute);
+        if (cell == null) {
+            cell = routeCells.computeIfAbsent(errorRoute, r -> register(new Cell(errorCode, r)));
+        }
+        cell.record(TimeUnit.MILLISECONDS.toMinutes(nowMillis));
+    }
+
+    /**
+     * Returns the errors which occurred the most in each window (i.e., the last 1, 5 and 15 minutes, by the keys
+     * {@code 1m}, {@code 5m} and {@code 15m}), in descending order of their counts.
+     */
+    public Map<String, List<ErrorCount>> getTopErrors() {
+        return getTopErrors(System.currentTimeMillis());
+    }
+
+    Map<String, List<ErrorCount>> getTopErrors(long nowMillis) {
+        long minute = TimeUnit.MILLISECONDS.toMinutes(nowMillis);
+        Map<String, List<ErrorCount>> topErrorsByWindow = new LinkedHashMap<>();
+        for (int windowMinutes : WINDOW_MINUTES) {
+            List<ErrorCount> errorCounts = new ArrayList<>();
+            for (Map<String, Cell> routeCells : cells.values()) {
+                for (Cell cell : routeCells.values()) {
+                    long count = cell.count(minute, windowMinutes);
+                    if (count > 0) {
+                        errorCounts.add(new ErrorCount(cell.errorCode, cell.route, count));
+                    }
+                }
+            }
+            errorCounts.sort(Comparator.comparingLong(ErrorCount::getCount).reversed());
+            topErrorsByWindow.put(windowMinutes + "m",
+                    errorCounts.subList(0, Math.min(topErrors, errorCounts.size())));
+        }
+        return topErrorsByWindow;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.registry = registry;
+        for (Map<String, Cell> routeCells : cells.values()) {
+            routeCells.values().forEach(this::register);
+        }
+    }
+
+    private Cell register(Cell cell) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry != null) {
+            // Registering a meter twice (e.g., by a concurrent bindTo) just returns the registered one.
+            FunctionCounter.builder("api.errors", cell.total, LongAdder::sum)
+                    .description("Number of the API errors")
+                    .tag("error_code", cell.errorCode.getName())
+                    .tag("status", String.valueOf(cell.errorCode.getHttpStatusCode().getStatusCode()))
+                    .tag("route", cell.route)
+                    .register(meterRegistry);
+        }
+        return cell;
+    }
+
+    /**
+     * The number of the occurrences of an error code on a route in a window.
+     */
+    public static final class ErrorCount {
+
+        private final String errorCode;
+        private final int status;
+        private final String route;
+        private final long count;
+
+        ErrorCount(ApiErrorCode errorCode, String route, long count) {
+            this.errorCode = errorCode.getName();
+            this.status = errorCode.getHttpStatusCode().getStatusCode();
+            this.route = route;
+            this.count = count;
+        }
+
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getRoute() {
+            return route;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * The counters of an error code on a route.
+     */
+    private static final class Cell {
+
+        private final ApiErrorCode errorCode;
+        private final String route;
+        private final LongAdder total = new LongAdder();
+        // The minute of each slot of the ring and its count.
+        private final AtomicLongArray minutes = new AtomicLongArray(SLOTS);
+        private final LongAdder[] counts = new LongAdder[SLOTS];
+
+        Cell(ApiErrorCode errorCode, String route) {
+            this.errorCode = errorCode;
+            this.route = route;
+            for (int i = 0; i < SLOTS; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long minute) {
+            total.increment();
+            int slot = (int) (minute % SLOTS);
+            long slotMinute = minutes.get(slot);
+            if (slotMinute != minute && minutes.compareAndSet(slot, slotMinute, minute)) {
+                counts[slot].reset();
+            }
+            counts[slot].increment();
+        }
+
+        long count(long minute, int windowMinutes) {
+            long count = 0;
+            for (long m = minute - windowMinutes + 1; m <= minute; m++) {
+                int slot = (int) (m % SLOTS);
+                if (minutes.get(slot) == m) {
+                    count += counts[slot].sum();
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package ir.sahab.rest.common.apierror;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the beans of {@link ErrorMetrics}. It is only imported if the metrics are enabled by
+ * {@link EnableApiErrorMapping#errorMetrics()}.
+ */
+@Configuration
+public class ErrorMetricsConfigurer {
+
+    /**
+     * Returns the metrics which are recorded by {@link ApiExceptionHandler}. It is also a Micrometer meter binder, so
+     * its counters are registered in the meter registry of the application.
+     */
+    @Bean
+    ErrorMetrics errorMetrics() {
+        return new ErrorMetrics(ApiErrorMappingMetadata.getInstance().getTopErrors());
+    }
+
+    @Bean
+    ErrorMetricsEndpoint errorMetricsEndpoint(ErrorMetrics errorMetrics) {
+        return new ErrorMetricsEndpoint(errorMetrics);
+    }
+}
@@ -0,0 +1,27 @@
+package ir.sahab.rest.common.apierror;
+
+import ir.sahab.rest.common.apierror.ErrorMetrics.ErrorCount;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint which reports the API errors which occurred the most in the last 1, 5 and 15 minutes, by their
+ * error code and route (see {@link ErrorMetrics}). Like the other actuator endpoints, it should be exposed explicitly
+ * (e.g., by the {@code management.endpoints.web.exposure.include} property).
+ */
+@Endpoint(id = "apierrors")
+public class ErrorMetricsEndpoint {
+
+    private final ErrorMetrics errorMetrics;
+
+    public ErrorMetricsEndpoint(ErrorMetrics errorMetrics) {
+        this.errorMetrics = errorMetrics;
+    }
+
+    @ReadOperation
+    public Map<String, List<ErrorCount>> topErrors() {
+        return errorMetrics.getTopErrors();
+    }
+}
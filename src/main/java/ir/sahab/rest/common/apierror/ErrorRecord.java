@@ -0,0 +1,86 @@
+package ir.sahab.rest.common.apierror;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The record of an error which is kept by {@link ErrorRecordStore}: its tracking id, exception chain, request and
+ * principal.
+ */
+public final class ErrorRecord {
+
+    private final String trackingId;
+    private final long timestamp;
+    private final int status;
+    private final String errorCode;
+    private final String httpMethod;
+    private final String apiPath;
+    private final String queryString;
+    private final String remoteAddress;
+    private final String user;
+    private final String exception;
+
+    @JsonCreator
+    ErrorRecord(@JsonProperty("trackingId") String trackingId, @JsonProperty("timestamp") long timestamp,
+            @JsonProperty("status") int status, @JsonProperty("errorCode") String errorCode,
+            @JsonProperty("httpMethod") String httpMethod, @JsonProperty("apiPath") String apiPath,
+            @JsonProperty("queryString") String queryString, @JsonProperty("remoteAddress") String remoteAddress,
+            @JsonProperty("user") String user, @JsonProperty("exception") String exception) {
+        this.trackingId = trackingId;
+        this.timestamp = timestamp;
+        this.status = status;
+        this.errorCode = errorCode;
+        this.httpMethod = httpMethod;
+        this.apiPath = apiPath;
+        this.queryString = queryString;
+        this.remoteAddress = remoteAddress;
+        this.user = user;
+        this.exception = exception;
+    }
+
+    public String getTrackingId() {
+        return trackingId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the name of the {@link ApiErrorCode} of the error or null if it is not an {@link ApiException}.
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getHttpMethod() {
+        return httpMethod;
+    }
+
+    public String getApiPath() {
+        return apiPath;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * Returns the stack trace of the exception of the error, including its causes.
+     */
+    public String getException() {
+        return exception;
+    }
+}
@@ -0,0 +1,393 @@
+package ir.sahab.rest.common.apierror;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the records of the recent errors (see {@link ErrorRecord}), so an error which is reported by a client can be
+ * looked up by its tracking id, e.g., by the {@code errorrecords} actuator endpoint.
+ *
+ * <p>The records are kept in a bounded in-memory ring indexed by their tracking ids. If a directory is given, the
+ * records which are evicted from the ring are appended to segment files in it as JSON lines, and the oldest segment is
+ * deleted when there are too many of them. So the older records are still found, by scanning the segments.
+ *
+ * <p>Recording an error just captures the fields of its request and puts it in a bounded queue. Formatting the stack
+ * trace, indexing the record and writing the segments are done by a background thread, so they do not slow the error
+ * responses down. The errors which occur while the queue is full are not recorded (see {@link #getDroppedRecords()}).
+ *
+ * <p>The values of the secret query parameters (e.g., the API keys) are masked before the records are kept, like in
+ * the request logs, so they are neither written to the segments nor returned by the actuator endpoint.
+ */
+public class ErrorRecordStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ErrorRecordStore.class);
+
+    private static final String SEGMENT_PREFIX = "errors-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    private static final String MASKED_VALUE = "XXX";
+
+    private final int capacity;
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final String requiredAuthority;
+    // Names of the masked query parameters in lower case.
+    private final Set<String> obfuscateParameters;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ThreadPoolExecutor writer;
+    private final LongAdder droppedRecords = new LongAdder();
+    // The recent records by their tracking ids, in the order of their recording. Guarded by itself.
+    private final LinkedHashMap<String, ErrorRecord> records = new LinkedHashMap<>();
+
+    // The fields below are only accessed by the writer thread (and by close, after the writer is terminated).
+    private final List<Path> segments = new ArrayList<>();
+    private OutputStream segment;
+    private long segmentSize;
+
+    /**
+     * Creates the store which is configured by the given annotation.
+     */
+    public ErrorRecordStore(ErrorRecords config) {
+        this(config.capacity(), config.directory().isEmpty() ? null : Paths.get(config.directory()),
+                config.segmentBytes(), config.maxSegments(), config.queueCapacity(), config.authority(),
+                Arrays.asList(config.obfuscateParameters().split(",")));
+    }
+
+    /**
+     * Creates the store which masks the default secret query parameters (i.e., {@code X-API-KEY}).
+     *
+     * @see #ErrorRecordStore(int, Path, long, int, int, String, Collection)
+     */
+    public ErrorRecordStore(int capacity, Path directory, long segmentBytes, int maxSegments, int queueCapacity,
+            String requiredAuthority) {
+        this(capacity, directory, segmentBytes, maxSegments, queueCapacity, requiredAuthority,
+                Arrays.asList(ErrorRecords.DEFAULT_OBFUSCATE_PARAMETERS.split(",")));
+    }
+
+    /**
+     * @param capacity maximum number of the records which are kept in memory.
+     * @param directory directory of the segment files or null to discard the records which are evicted from memory.
+     * @param segmentBytes size of each segment file.
+     * @param maxSegments maximum number of the segment files.
+     * @param queueCapacity maximum number of the errors which wait to be recorded.
+     * @param requiredAuthority the authority which is required to fetch the records.
+     * @param obfuscateParameters names of the query parameters whose values are masked (case-insensitive).
+     * @throws IllegalArgumentException if the segment directory cannot be created.
+     */
+    public ErrorRecordStore(int capacity, Path directory, long segmentBytes, int maxSegments, int queueCapacity,
+            String requiredAuthority, Collection<String> obfuscateParameters) {
+        if (capacity <= 0 || segmentBytes <= 0 || maxSegments <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity, segment size, number of segments and queue capacity of the "
+                    + "error records must be positive!");
+        }
+        this.capacity = capacity;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.requiredAuthority = requiredAuthority;
+        this.obfuscateParameters = obfuscateParameters.stream()
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .map(name -> name.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                segments.addAll(listSegments());
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to open the directory of the error records: " + directory,
+                        e);
+            }
+        }
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "error-record-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Records the given error of the given request asynchronously.
+     *
+     * @param status the HTTP status code of the response.
+     * @param user the name of the principal of the request or an empty string if it is not authenticated.
+     */
+    public void record(String trackingId, Throwable throwable, int status, HttpServletRequest request,
+            String user) {
+        String errorCode = throwable instanceof ApiException
+                ? ((ApiException) throwable).getApiErrorCode().getName() : null;
+        long timestamp = System.currentTimeMillis();
+        // The fields of the request are captured here, because the request is recycled after the response.
+        String httpMethod = request.getMethod();
+        String apiPath = request.getRequestURI();
+        String queryString = request.getQueryString();
+        String remoteAddress = request.getRemoteAddr();
+        try {
+            writer.execute(() -> add(new ErrorRecord(trackingId, timestamp, status, errorCode,
+                    httpMethod, apiPath, maskQueryString(queryString), remoteAddress, user,
+                    formatStackTrace(throwable))));
+        } catch (RejectedExecutionException e) {
+            droppedRecords.increment();
+        }
+    }
+
+    /**
+     * Returns the record of the error with the given tracking id, or null if it is not found (e.g., it is not recorded
+     * yet or it is too old).
+     */
+    public ErrorRecord find(String trackingId) {
+        synchronized (records) {
+            ErrorRecord record = records.get(trackingId);
+            if (record != null) {
+                return record;
+            }
+        }
+        return directory == null ? null : findInSegments(trackingId);
+    }
+
+    /**
+     * Returns the authority which is required to fetch the records.
+     */
+    public String getRequiredAuthority() {
+        return requiredAuthority;
+    }
+
+    /**
+     * Returns the number of the errors which are not recorded, because the queue of the errors was full.
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.sum();
+    }
+
+    /**
+     * Records the queued errors and writes the records in memory to the segments, so they are found after a restart.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Timed out while recording the queued errors.");
+                writer.shutdownNow();
+                return;
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        List<ErrorRecord> remaining;
+        synchronized (records) {
+            remaining = new ArrayList<>(records.values());
+            records.clear();
+        }
+        if (directory != null) {
+            spill(remaining);
+            closeSegment();
+        }
+    }
+
+    /**
+     * Adds the given record to the ring and spills the evicted one. It is only called by the writer thread.
+     */
+    private void add(ErrorRecord record) {
+        List<ErrorRecord> evicted = new ArrayList<>(1);
+        synchronized (records) {
+            records.put(record.getTrackingId(), record);
+            Iterator<ErrorRecord> iterator = records.values().iterator();
+            for (int i = records.size(); i > capacity; i--) {
+                evicted.add(iterator.next());
+            }
+        }
+        if (directory != null) {
+            spill(evicted);
+        }
+        // The evicted records are removed after they are spilled, so they are always found in memory or a segment.
+        synchronized (records) {
+            for (ErrorRecord evictedRecord : evicted) {
+                records.remove(evictedRecord.getTrackingId());
+            }
+        }
+    }
+
+    private void spill(List<ErrorRecord> evicted) {
+        for (ErrorRecord record : evicted) {
+            try {
+                byte[] line = objectMapper.writeValueAsBytes(record);
+                if (segment == null || segmentSize + line.length + 1 > segmentBytes) {
+                    rotateSegment();
+                }
+                segment.write(line);
+                segment.write('\n');
+                segment.flush();
+                segmentSize += line.length + 1;
+            } catch (IOException e) {
+                logger.warn("Unable to write the record of error {}.", record.getTrackingId(), e);
+                closeSegment();
+            }
+        }
+    }
+
+    private void rotateSegment() throws IOException {
+        closeSegment();
+        long millis = System.currentTimeMillis();
+        if (!segments.isEmpty()) {
+            // The names of the segments are kept in the order of their creation.
+            millis = Math.max(millis, segmentMillis(segments.get(segments.size() - 1)) + 1);
+        }
+        Path path = directory.resolve(SEGMENT_PREFIX + millis + SEGMENT_SUFFIX);
+        segment = Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        segmentSize = 0;
+        segments.add(path);
+        while (segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.remove(0));
+        }
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close the segment of the error records.", e);
+            }
+            segment = null;
+        }
+    }
+
+    private ErrorRecord findInSegments(String trackingId) {
+        String quotedTrackingId = '"' + trackingId + '"';
+        List<Path> paths;
+        try {
+            paths = listSegments();
+        } catch (IOException e) {
+            logger.warn("Unable to list the segments of the error records.", e);
+            return null;
+        }
+        for (int i = paths.size() - 1; i >= 0; i--) {
+            try (BufferedReader reader = Files.newBufferedReader(paths.get(i), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains(quotedTrackingId)) {
+                        ErrorRecord record = parse(line);
+                        if (record != null && trackingId.equals(record.getTrackingId())) {
+                            return record;
+                        }
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // The segment is deleted by the writer in the meantime.
+            } catch (IOException e) {
+                logger.warn("Unable to read the segment {} of the error records.", paths.get(i), e);
+            }
+        }
+        return null;
+    }
+
+    private ErrorRecord parse(String line) {
+        try {
+            return objectMapper.readValue(line, ErrorRecord.class);
+        } catch (IOException e) {
+            // The line is being written by the writer or it is corrupted.
+            return null;
+        }
+    }
+
+    /**
+     * Returns the segment files in the directory, from the oldest to the newest.
+     */
+    private List<Path> listSegments() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                if (segmentMillis(path) >= 0) {
+                    paths.add(path);
+                }
+            }
+        }
+        paths.sort(Comparator.comparingLong(ErrorRecordStore::segmentMillis));
+        return paths;
+    }
+
+    private static long segmentMillis(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the given query string with the values of the obfuscated parameters masked. The parameter names are
+     * decoded before they are compared, so an encoded name (e.g., {@code X%2DAPI-KEY}) is masked too.
+     */
+    private String maskQueryString(String queryString) {
+        if (queryString == null || obfuscateParameters.isEmpty()) {
+            return queryString;
+        }
+        StringBuilder masked = new StringBuilder(queryString.length());
+        for (String parameter : queryString.split("&", -1)) {
+            if (masked.length() > 0) {
+                masked.append('&');
+            }
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            if (equals >= 0 && obfuscateParameters.contains(decode(name).toLowerCase(Locale.ROOT))) {
+                masked.append(name).append('=').append(MASKED_VALUE);
+            } else {
+                masked.append(parameter);
+            }
+        }
+        return masked.toString();
+    }
+
+    private static String decode(String name) {
+        try {
+            return URLDecoder.decode(name, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            // A malformed name is compared as it is.
+            return name;
+        }
+    }
+
+    private static String formatStackTrace(Throwable throwable) {
+        StringWriter stackTrace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(stackTrace));
+        return stackTrace.toString();
+    }
+}
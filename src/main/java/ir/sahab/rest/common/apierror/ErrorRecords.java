@@ -0,0 +1,60 @@
+package ir.sahab.rest.common.apierror;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures keeping the records of the recent errors, so an error can be looked up by its tracking id. It is used as
+ * an argument of {@link EnableApiErrorMapping}. By default (i.e., with zero capacity), it is disabled.
+ *
+ * @see ErrorRecordStore
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface ErrorRecords {
+
+    /**
+     * The query parameters which are masked by default, the same as the default of the request logging.
+     */
+    String DEFAULT_OBFUSCATE_PARAMETERS = "X-API-KEY";
+
+    /**
+     * Maximum number of the recent error records which are kept in memory.
+     */
+    int capacity() default 0;
+
+    /**
+     * Directory of the segment files which the records evicted from memory are appended to. If it is empty, the
+     * evicted records are discarded.
+     */
+    String directory() default "";
+
+    /**
+     * Size of each segment file, after which the next records are appended to a new segment.
+     */
+    long segmentBytes() default 16 * 1024 * 1024;
+
+    /**
+     * Maximum number of the segment files. The oldest segment is deleted when a new one exceeds this number.
+     */
+    int maxSegments() default 8;
+
+    /**
+     * Maximum number of the errors which wait to be recorded. The errors which occur while it is full are not
+     * recorded, so the error responses are never slowed down by recording.
+     */
+    int queueCapacity() default 1024;
+
+    /**
+     * The authority which is required to fetch the records by the {@code errorrecords} actuator endpoint, if the
+     * security is enabled by {@code EnableCustomSecurity}.
+     */
+    String authority() default "error.records";
+
+    /**
+     * Comma separated list of the query parameters whose values are masked in the records (case-insensitive), so the
+     * secrets sent as query parameters are neither kept on the disk nor returned by the actuator endpoint.
+     */
+    String obfuscateParameters() default DEFAULT_OBFUSCATE_PARAMETERS;
+}
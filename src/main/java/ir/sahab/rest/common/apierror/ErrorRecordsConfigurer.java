@@ -0,0 +1,26 @@
+package ir.sahab.rest.common.apierror;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the beans of {@link ErrorRecords}. It is only imported if the records are enabled by
+ * {@link EnableApiErrorMapping#errorRecords()}.
+ */
+@Configuration
+public class ErrorRecordsConfigurer {
+
+    /**
+     * Returns the store which the errors are recorded in by {@link ApiExceptionHandler}. It is closed on shutdown, so
+     * its records in memory are written to its segments.
+     */
+    @Bean
+    ErrorRecordStore errorRecordStore() {
+        return new ErrorRecordStore(ApiErrorMappingMetadata.getInstance().getErrorRecords());
+    }
+
+    @Bean
+    ErrorRecordsEndpoint errorRecordsEndpoint(ErrorRecordStore errorRecordStore) {
+        return new ErrorRecordsEndpoint(errorRecordStore);
+    }
+}
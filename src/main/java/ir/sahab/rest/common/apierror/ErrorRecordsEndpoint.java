@@ -0,0 +1,28 @@
+package ir.sahab.rest.common.apierror;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+/**
+ * Actuator endpoint which returns the record of a recent error by its tracking id (see {@link ErrorRecordStore}), e.g.,
+ * {@code GET /actuator/errorrecords/<tracking id>}. It responds 404 (Not Found) if the error is not found. Like the
+ * other actuator endpoints, it should be exposed explicitly (e.g., by the
+ * {@code management.endpoints.web.exposure.include} property). The records have the stack traces and the requests of
+ * the errors, so if the security is enabled by {@code EnableCustomSecurity}, the endpoint requires the authority of
+ * {@link ErrorRecords#authority()}. Otherwise, the application should protect it itself.
+ */
+@Endpoint(id = "errorrecords")
+public class ErrorRecordsEndpoint {
+
+    private final ErrorRecordStore errorRecordStore;
+
+    public ErrorRecordsEndpoint(ErrorRecordStore errorRecordStore) {
+        this.errorRecordStore = errorRecordStore;
+    }
+
+    @ReadOperation
+    public ErrorRecord record(@Selector String trackingId) {
+        return errorRecordStore.find(trackingId);
+    }
+}
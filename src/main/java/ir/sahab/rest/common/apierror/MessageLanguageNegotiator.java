@@ -0,0 +1,73 @@
+package ir.sahab.rest.common.apierror;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks the language of the messages of a problem response from the Accept-Language header of its request. The
+ * result is cached for each distinct header value, because the clients of a service send just a handful of them and
+ * parsing the language ranges and matching them against the supported languages is relatively expensive.
+ */
+public class MessageLanguageNegotiator {
+
+    // The header values come from the requests, so the cache is bounded to not be filled by made-up values.
+    private static final int MAX_CACHED_HEADERS = 1000;
+
+    private final List<String> languages;
+    private final String defaultLanguage;
+    private final LoadingCache<String, String> negotiatedLanguages;
+
+    /**
+     * @param languages the supported language tags (e.g., "en" and "fa").
+     * @param defaultLanguage the language of the requests which accept none of the supported languages.
+     */
+    public MessageLanguageNegotiator(List<String> languages, String defaultLanguage) {
+        if (!languages.contains(defaultLanguage)) {
+            throw new IllegalArgumentException("Default language " + defaultLanguage + " is not supported: "
+                    + languages);
+        }
+        this.languages = Collections.unmodifiableList(new ArrayList<>(languages));
+        this.defaultLanguage = defaultLanguage;
+        this.negotiatedLanguages = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_HEADERS)
+                .build(new CacheLoader<String, String>() {
+                    @Override
+                    public String load(String acceptLanguage) {
+                        return lookup(acceptLanguage);
+                    }
+                });
+    }
+
+    /**
+     * Returns the supported language which matches the given Accept-Language header best, or the default language if
+     * the header is missing, malformed or matches none of them.
+     */
+    public String negotiate(String acceptLanguage) {
+        if (acceptLanguage == null || acceptLanguage.isEmpty()) {
+            return defaultLanguage;
+        }
+        return negotiatedLanguages.getUnchecked(acceptLanguage);
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+
+    public String getDefaultLanguage() {
+        return defaultLanguage;
+    }
+
+    private String lookup(String acceptLanguage) {
+        try {
+            String language = Locale.lookupTag(Locale.LanguageRange.parse(acceptLanguage), languages);
+            return language == null ? defaultLanguage : language;
+        } catch (IllegalArgumentException e) {
+            return defaultLanguage;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ir.sahab.rest.common.apierror;
+
+import ir.sahab.rest.common.virtualthread.VirtualThreads;
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Locale;
+import java.util.MissingFormatArgumentException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A message template of an {@link ApiErrorCode} (i.e., a {@link String#format(String, Object...)} format string) which
+ * is parsed once into literal segments and parameter indexes. Rendering just appends the segments and the parameters
+ * to a builder which is reused by each (platform) thread, instead of parsing the format string on each call.
+ *
+ * <p>Only the plain {@code %s} (also in the positional form, e.g., {@code %2$s}), {@code %%} and {@code %n} specifiers
+ * are rendered this way. The templates with other specifiers (e.g., {@code %d} or {@code %.2f}) are still rendered by
+ * {@link String#format(String, Object...)} to keep their exact behavior, but they are validated on compile too.
+ */
+final class MessageTemplate {
+
+    // The same syntax as java.util.Formatter: %[argument_index$][flags][width][.precision][t]conversion
+    private static final Pattern SPECIFIER =
+            Pattern.compile("%(\\d+\\$)?([-#+ 0,(<]*)(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // Builders which grow larger than this (by a very long message) are not kept by the threads.
+    private static final int MAX_POOLED_CAPACITY = 1024;
+    private static final ThreadLocal<StringBuilder> threadBuilder = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final String template;
+    // Literal segments and parameter indexes in order. The literals are Strings and the indexes are Integers.
+    private final Object[] segments;
+    // Number of the parameters which are referred by the template.
+    private final int parameterCount;
+    private final boolean simple;
+
+    private MessageTemplate(String template, Object[] segments, int parameterCount, boolean simple) {
+        this.template = template;
+        this.segments = segments;
+        this.parameterCount = parameterCount;
+        this.simple = simple;
+    }
+
+    /**
+     * Parses the given template.
+     *
+     * @throws IllegalArgumentException if the template is not a valid format string.
+     */
+    static MessageTemplate compile(String template) {
+        if (template == null) {
+            throw new IllegalArgumentException("Message template is null!");
+        }
+        List<Object> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean simple = true;
+        int parameterCount = 0;
+        int nextIndex = 0;
+        int position = 0;
+        Matcher matcher = SPECIFIER.matcher(template);
+        while (position < template.length()) {
+            int percent = template.indexOf('%', position);
+            if (percent < 0) {
+                literal.append(template, position, template.length());
+                break;
+            }
+            literal.append(template, position, percent);
+            if (!matcher.find(percent) || matcher.start() != percent) {
+                throw invalidTemplate(template, null);
+            }
+            position = matcher.end();
+            String conversion = matcher.group(6);
+            boolean plain = matcher.group(2).isEmpty() && matcher.group(3) == null && matcher.group(4) == null
+                    && matcher.group(5) == null;
+            if (plain && conversion.equals("%")) {
+                literal.append('%');
+            } else if (plain && conversion.equals("n")) {
+                literal.append(LINE_SEPARATOR);
+            } else {
+                int index = matcher.group(1) == null ? nextIndex++
+                        : Integer.parseInt(matcher.group(1).substring(0, matcher.group(1).length() - 1)) - 1;
+                parameterCount = Math.max(parameterCount, index + 1);
+                simple &= plain && conversion.equals("s") && index >= 0;
+                if (literal.length() > 0) {
+                    segments.add(literal.toString());
+                    literal.setLength(0);
+                }
+                segments.add(index);
+            }
+        }
+        if (literal.length() > 0) {
+            segments.add(literal.toString());
+        }
+        // Formats with null parameters to check the specifiers (e.g., the conversions and flags) like String.format.
+        try {
+            String.format(Locale.ROOT, template, new Object[parameterCount]);
+        } catch (IllegalFormatException e) {
+            throw invalidTemplate(template, e);
+        }
+        return new MessageTemplate(template, segments.toArray(), parameterCount, simple);
+    }
+
+    /**
+     * Renders the template with the given parameters like {@link String#format(String, Object...)}.
+     */
+    String render(Object... parameters) {
+        if (!simple || hasFormattable(parameters)) {
+            return String.format(template, parameters);
+        }
+        if (parameterCount > (parameters == null ? 0 : parameters.length)) {
+            throw new MissingFormatArgumentException("%s");
+        }
+        if (segments.length == 1 && segments[0] instanceof String) {
+            return (String) segments[0];
+        }
+        boolean pooled = !VirtualThreads.isVirtual(Thread.currentThread());
+        StringBuilder builder = pooled ? threadBuilder.get() : new StringBuilder();
+        if (builder.length() > 0) {
+            // The builder of the thread is in use by an outer rendering (e.g., from the toString of a parameter).
+            pooled = false;
+            builder = new StringBuilder();
+        }
+        try {
+            for (Object segment : segments) {
+                if (segment instanceof String) {
+                    builder.append((String) segment);
+                } else {
+                    builder.append(parameters[(Integer) segment]);
+                }
+            }
+            return builder.toString();
+        } finally {
+            if (pooled) {
+                if (builder.capacity() > MAX_POOLED_CAPACITY) {
+                    threadBuilder.remove();
+                } else {
+                    builder.setLength(0);
+                }
+            }
+        }
+    }
+
+    private boolean hasFormattable(Object[] parameters) {
+        if (parameters != null) {
+            for (Object parameter : parameters) {
+                if (parameter instanceof Formattable) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static IllegalArgumentException invalidTemplate(String template, Exception cause) {
+        return new IllegalArgumentException("Invalid message template: " + template, cause);
+    }
+}
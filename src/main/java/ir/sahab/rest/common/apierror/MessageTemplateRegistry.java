@@ -0,0 +1,198 @@
+package ir.sahab.rest.common.apierror;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PropertiesLoaderUtils;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Keeps the compiled {@link MessageTemplate}s of the {@link ApiErrorCode}s, so the messages of the API errors are
+ * rendered without parsing their format strings each time. The enum error codes in the given packages are found and
+ * compiled when the registry is created (i.e., on startup of the application), so an invalid message template fails
+ * the startup instead of the first request which encounters its error. The other enum error codes (e.g., the ones
+ * outside of the packages) are compiled on their first use.
+ *
+ * <p>The error codes which are not enum constants may be created for each error (e.g., with the messages of the
+ * error), so their templates are kept by their messages rather than by the error codes, and at most
+ * {@value #MAX_OTHER_MESSAGES} of them are kept. The messages of the other ones are compiled on each use.
+ *
+ * <p>Besides the English and Persian messages of the error codes, the messages of other languages can be given by
+ * message bundles: UTF-8 properties files named {@code <base name>_<language>.properties} in the classpath, whose keys
+ * are the names of the error codes (see {@link ApiErrorCode#getName()}). They are loaded and compiled on creation.
+ */
+public class MessageTemplateRegistry {
+
+    public static final String EN = "en";
+    public static final String FA = "fa";
+
+    static final int MAX_OTHER_MESSAGES = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageTemplateRegistry.class);
+
+    private final Map<ApiErrorCode, Messages> messages = new ConcurrentHashMap<>();
+    // Templates of the error codes which are not enum constants, by their English and Persian messages.
+    private final Map<List<String>, Messages> otherMessages = new ConcurrentHashMap<>();
+    // Templates of the message bundles by their language and then by the name of their error code.
+    private final Map<String, Map<String, MessageTemplate>> bundles = new HashMap<>();
+
+    /**
+     * @param basePackages the packages (and their sub-packages) whose enum error codes are compiled on creation.
+     * @throws IllegalArgumentException if a message template of the error codes is not valid.
+     */
+    public MessageTemplateRegistry(String... basePackages) {
+        this(null, Collections.emptyList(), basePackages);
+    }
+
+    /**
+     * @param bundleBaseName base name of the message bundles of the given languages in the classpath.
+     * @param languages the languages (other than English and Persian) whose message bundles are loaded.
+     * @param basePackages the packages (and their sub-packages) whose enum error codes are compiled on creation.
+     * @throws IllegalArgumentException if a message bundle is missing or a message template is not valid.
+     */
+    public MessageTemplateRegistry(String bundleBaseName, List<String> languages, String... basePackages) {
+        for (String language : languages) {
+            bundles.put(language, loadBundle(bundleBaseName, language));
+        }
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                // Enums with constant-specific bodies are abstract, so the default check is not applicable.
+                return true;
+            }
+        };
+        scanner.addIncludeFilter(new AssignableTypeFilter(ApiErrorCode.class));
+        ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+        for (String basePackage : basePackages) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+                Class<?> type = ClassUtils.resolveClassName(candidate.getBeanClassName(), classLoader);
+                if (type.isEnum()) {
+                    for (Object errorCode : type.getEnumConstants()) {
+                        getMessages((ApiErrorCode) errorCode);
+                    }
+                }
+            }
+        }
+        logger.info("Message templates of {} error codes and message bundles of {} are compiled.", messages.size(),
+                languages);
+    }
+
+    /**
+     * Returns the English message of the given error code with the given parameters.
+     */
+    public String getEnMessage(ApiErrorCode errorCode, Object... parameters) {
+        return getMessages(errorCode).en.render(parameters);
+    }
+
+    /**
+     * Returns the Persian message of the given error code with the given parameters.
+     */
+    public String getFaMessage(ApiErrorCode errorCode, Object... parameters) {
+        return getMessages(errorCode).fa.render(parameters);
+    }
+
+    /**
+     * Returns the message of the given error code in the given language with the given parameters.
+     *
+     * @return the message or null if the language is not supported or has no message for the error code.
+     */
+    public String getMessage(ApiErrorCode errorCode, String language, Object... parameters) {
+        if (EN.equals(language)) {
+            return getEnMessage(errorCode, parameters);
+        }
+        if (FA.equals(language)) {
+            return getFaMessage(errorCode, parameters);
+        }
+        Map<String, MessageTemplate> bundle = bundles.get(language);
+        MessageTemplate template = bundle == null ? null : bundle.get(errorCode.getName());
+        return template == null ? null : template.render(parameters);
+    }
+
+    /**
+     * Returns true if the given error code has a message in the given language.
+     */
+    public boolean hasMessage(ApiErrorCode errorCode, String language) {
+        if (EN.equals(language) || FA.equals(language)) {
+            return true;
+        }
+        Map<String, MessageTemplate> bundle = bundles.get(language);
+        return bundle != null && bundle.containsKey(errorCode.getName());
+    }
+
+    private static Map<String, MessageTemplate> loadBundle(String baseName, String language) {
+        String path = baseName + "_" + language + ".properties";
+        Properties properties;
+        try {
+            properties = PropertiesLoaderUtils.loadProperties(
+                    new EncodedResource(new ClassPathResource(path), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to load message bundle " + path, e);
+        }
+        Map<String, MessageTemplate> templates = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            try {
+                templates.put(name, MessageTemplate.compile(properties.getProperty(name)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid message of error code " + name + " in " + path + ": "
+                        + e.getMessage(), e);
+            }
+        }
+        return templates;
+    }
+
+    private Messages getMessages(ApiErrorCode errorCode) {
+        if (!(errorCode instanceof Enum)) {
+            return getOtherMessages(errorCode);
+        }
+        Messages errorMessages = messages.get(errorCode);
+        if (errorMessages == null) {
+            errorMessages = messages.computeIfAbsent(errorCode, Messages::new);
+        }
+        return errorMessages;
+    }
+
+    private Messages getOtherMessages(ApiErrorCode errorCode) {
+        List<String> key = Arrays.asList(errorCode.getEnMessage(), errorCode.getFaMessage());
+        Messages errorMessages = otherMessages.get(key);
+        if (errorMessages == null) {
+            if (otherMessages.size() >= MAX_OTHER_MESSAGES) {
+                return new Messages(errorCode);
+            }
+            errorMessages = otherMessages.computeIfAbsent(key, k -> new Messages(errorCode));
+        }
+        return errorMessages;
+    }
+
+    /**
+     * The compiled message templates of an error code.
+     */
+    private static class Messages {
+
+        private final MessageTemplate en;
+        private final MessageTemplate fa;
+
+        Messages(ApiErrorCode errorCode) {
+            try {
+                en = MessageTemplate.compile(errorCode.getEnMessage());
+                fa = MessageTemplate.compile(errorCode.getFaMessage());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid message of error code " + errorCode.getName() + ": "
+                        + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ir.sahab.rest.common.apierror;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.zalando.problem.Problem;
+
+/**
+ * The serialized JSON of a problem whose fields are all static (i.e., the problem of an {@link ApiErrorCode} without
+ * parameters and extra data), except the fields of {@link ApiProblemField} which differ in each occurrence: tracking
+ * id, user, API path, HTTP method and timestamp. The template is made by serializing a sample problem with
+ * placeholders in the dynamic fields, and splitting the serialized bytes around the placeholders. So writing a problem
+ * just writes the static parts and the (escaped) dynamic values, without serializing the whole problem each time. The
+ * dynamic values may also be repeated in the other fields, e.g., the HTTP method and the API path in the detail and
+ * the messages of a 404 (Not Found) problem.
+ */
+final class ProblemTemplate {
+
+    static final String TRACKING_ID_PLACEHOLDER = "@@tracking_id@@";
+    static final String USER_PLACEHOLDER = "@@user@@";
+    static final String API_PATH_PLACEHOLDER = "@@api_path@@";
+    static final String HTTP_METHOD_PLACEHOLDER = "@@http_method@@";
+    // A timestamp which does not appear anywhere else in a serialized problem.
+    static final long TIMESTAMP_PLACEHOLDER = 1234567890123456789L;
+
+    // The placeholders in the order of the arguments of write method.
+    private static final byte[][] PLACEHOLDERS = {
+            TRACKING_ID_PLACEHOLDER.getBytes(StandardCharsets.UTF_8),
+            USER_PLACEHOLDER.getBytes(StandardCharsets.UTF_8),
+            API_PATH_PLACEHOLDER.getBytes(StandardCharsets.UTF_8),
+            HTTP_METHOD_PLACEHOLDER.getBytes(StandardCharsets.UTF_8),
+            String.valueOf(TIMESTAMP_PLACEHOLDER).getBytes(StandardCharsets.UTF_8)};
+    private static final int TIMESTAMP = PLACEHOLDERS.length - 1;
+
+    // The static parts between the occurrences of the dynamic fields, which are one more than the occurrences.
+    private final byte[][] parts;
+    // Index of the dynamic field (in the order of PLACEHOLDERS) after each static part.
+    private final int[] fields;
+    private final Problem problem;
+
+    private ProblemTemplate(byte[][] parts, int[] fields, Problem problem) {
+        this.parts = parts;
+        this.fields = fields;
+        this.problem = problem;
+    }
+
+    /**
+     * Makes the template of the given sample problem, whose dynamic fields are the placeholders of this class.
+     *
+     * @param problem the problem without the dynamic fields, which is returned by {@link #getProblem()}.
+     * @return the template or null if the serialized problem does not have each placeholder exactly once (e.g., a
+     *     message of the problem has a placeholder too).
+     */
+    static ProblemTemplate compile(ObjectMapper objectMapper, Problem sampleProblem, Problem problem)
+            throws JsonProcessingException {
+        return compile(objectMapper, sampleProblem, problem, false);
+    }
+
+    /**
+     * Makes the template of the given sample problem, whose dynamic fields are the placeholders of this class.
+     *
+     * @param problem the problem without the dynamic fields, which is returned by {@link #getProblem()}.
+     * @param repeatedFields if true, the placeholders may appear more than once (e.g., the API path in the detail of
+     *     the problem too), and the values of the dynamic fields are written at each of them.
+     * @return the template or null if the serialized problem does not have each placeholder (exactly once, if the
+     *     fields are not repeated).
+     */
+    static ProblemTemplate compile(ObjectMapper objectMapper, Problem sampleProblem, Problem problem,
+            boolean repeatedFields) throws JsonProcessingException {
+        byte[] json = objectMapper.writeValueAsBytes(sampleProblem);
+        List<int[]> occurrences = new ArrayList<>();
+        for (int field = 0; field < PLACEHOLDERS.length; field++) {
+            int position = indexOf(json, PLACEHOLDERS[field], 0);
+            if (position < 0) {
+                return null;
+            }
+            for (int count = 0; position >= 0; count++) {
+                if (count > 0 && !repeatedFields) {
+                    return null;
+                }
+                occurrences.add(new int[] {position, field});
+                position = indexOf(json, PLACEHOLDERS[field], position + PLACEHOLDERS[field].length);
+            }
+        }
+        occurrences.sort(Comparator.comparingInt(occurrence -> occurrence[0]));
+
+        byte[][] parts = new byte[occurrences.size() + 1][];
+        int[] fields = new int[occurrences.size()];
+        int start = 0;
+        for (int i = 0; i < occurrences.size(); i++) {
+            int position = occurrences.get(i)[0];
+            fields[i] = occurrences.get(i)[1];
+            parts[i] = Arrays.copyOfRange(json, start, position);
+            start = position + PLACEHOLDERS[fields[i]].length;
+        }
+        parts[fields.length] = Arrays.copyOfRange(json, start, json.length);
+        return new ProblemTemplate(parts, fields, problem);
+    }
+
+    /**
+     * Returns the problem of this template without the dynamic fields (e.g., to be logged).
+     */
+    Problem getProblem() {
+        return problem;
+    }
+
+    /**
+     * Writes the problem with the given values of the dynamic fields to the given stream.
+     */
+    void write(OutputStream out, String trackingId, String user, String apiPath, String httpMethod, long timestamp)
+            throws IOException {
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        byte[][] values = {encoder.quoteAsUTF8(trackingId), encoder.quoteAsUTF8(user), encoder.quoteAsUTF8(apiPath),
+                encoder.quoteAsUTF8(httpMethod), null};
+        for (int i = 0; i < fields.length; i++) {
+            out.write(parts[i]);
+            if (fields[i] == TIMESTAMP) {
+                out.write(String.valueOf(timestamp).getBytes(StandardCharsets.US_ASCII));
+            } else {
+                out.write(values[fields[i]]);
+            }
+        }
+        out.write(parts[fields.length]);
+    }
+
+    private static int indexOf(byte[] array, byte[] target, int fromIndex) {
+        outer:
+        for (int i = fromIndex; i <= array.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (array[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
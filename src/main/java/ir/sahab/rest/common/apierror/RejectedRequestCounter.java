@@ -0,0 +1,194 @@
+package ir.sahab.rest.common.apierror;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the requests of each source (i.e., client IP) which are rejected because they match no route: the 404 (Not
+ * Found) and 405 (Method Not Allowed) errors. Most of them are sent by vulnerability scanners which probe thousands of
+ * paths per minute, so the sources whose rejections exceed a maximum per minute are reported as blocked, and all of
+ * their requests are rejected by {@link RejectedSourceFilter} until their rate drops.
+ *
+ * <p>The rate of a source is estimated by the counts of the current and the previous minute, the latter weighted by
+ * the part of it which is still in the last 60 seconds. So recording a rejection just increments a {@link LongAdder},
+ * and the counts of a minute are dropped as a whole when it passes. The number of the sources which are counted in a
+ * minute is bounded, so a scanner with many addresses cannot fill the memory; the rejections of the other sources are
+ * just counted in total.
+ */
+public class RejectedRequestCounter implements MeterBinder {
+
+    static final int MAX_SOURCES = 10_000;
+    static final int TOP_SOURCES = 10;
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final int maxRejectionsPerMinute;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private volatile Window window = new Window(0, new ConcurrentHashMap<>());
+
+    /**
+     * @param maxRejectionsPerMinute the number of the rejections per minute which blocks a source.
+     */
+    public RejectedRequestCounter(int maxRejectionsPerMinute) {
+        if (maxRejectionsPerMinute <= 0) {
+            throw new IllegalArgumentException("Maximum rejections per minute must be positive!");
+        }
+        this.maxRejectionsPerMinute = maxRejectionsPerMinute;
+    }
+
+    /**
+     * Records a rejected request of the given source.
+     *
+     * @return true if the source is blocked by this rejection or before it.
+     */
+    public boolean record(String source) {
+        return record(source, System.currentTimeMillis());
+    }
+
+    boolean record(String source, long nowMillis) {
+        rejected.increment();
+        Window current = getWindow(nowMillis);
+        LongAdder count = current.counts.get(source);
+        if (count == null) {
+            if (current.counts.size() >= MAX_SOURCES) {
+                return false;
+            }
+            count = current.counts.computeIfAbsent(source, s -> new LongAdder());
+        }
+        count.increment();
+        return current.estimate(source, nowMillis) >= maxRejectionsPerMinute;
+    }
+
+    /**
+     * Returns true if the rejections of the given source in the last minute have reached the maximum.
+     */
+    public boolean isBlocked(String source) {
+        return isBlocked(source, System.currentTimeMillis());
+    }
+
+    boolean isBlocked(String source, long nowMillis) {
+        return getWindow(nowMillis).estimate(source, nowMillis) >= maxRejectionsPerMinute;
+    }
+
+    /**
+     * Records a request of a blocked source which is rejected without being handled.
+     */
+    void recordBlocked() {
+        blocked.increment();
+    }
+
+    /**
+     * Returns the sources with the most rejections in the last minute, in descending order of their rejections.
+     */
+    public List<RejectedSource> getTopSources() {
+        return getTopSources(System.currentTimeMillis());
+    }
+
+    List<RejectedSource> getTopSources(long nowMillis) {
+        Window current = getWindow(nowMillis);
+        List<RejectedSource> sources = new ArrayList<>();
+        for (String source : current.counts.keySet()) {
+            sources.add(newRejectedSource(current, source, nowMillis));
+        }
+        for (String source : current.previousCounts.keySet()) {
+            if (!current.counts.containsKey(source)) {
+                sources.add(newRejectedSource(current, source, nowMillis));
+            }
+        }
+        sources.sort(Comparator.comparingLong(RejectedSource::getRejections).reversed());
+        return sources.subList(0, Math.min(TOP_SOURCES, sources.size()));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("api.rejections", rejected, LongAdder::sum)
+                .description("Number of the requests which are rejected because they match no route")
+                .register(registry);
+        FunctionCounter.builder("api.rejections.blocked", blocked, LongAdder::sum)
+                .description("Number of the requests of the sources which are blocked because of too many rejections")
+                .register(registry);
+    }
+
+    private RejectedSource newRejectedSource(Window current, String source, long nowMillis) {
+        long rejections = current.estimate(source, nowMillis);
+        return new RejectedSource(source, rejections, rejections >= maxRejectionsPerMinute);
+    }
+
+    private Window getWindow(long nowMillis) {
+        long minute = nowMillis / WINDOW_MILLIS;
+        Window current = window;
+        if (current.minute < minute) {
+            synchronized (this) {
+                current = window;
+                if (current.minute < minute) {
+                    current = new Window(minute,
+                            current.minute == minute - 1 ? current.counts : new ConcurrentHashMap<>());
+                    window = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * A source and its (estimated) rejections in the last minute.
+     */
+    public static final class RejectedSource {
+
+        private final String source;
+        private final long rejections;
+        private final boolean blocked;
+
+        RejectedSource(String source, long rejections, boolean blocked) {
+            this.source = source;
+            this.rejections = rejections;
+            this.blocked = blocked;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getRejections() {
+            return rejections;
+        }
+
+        public boolean isBlocked() {
+            return blocked;
+        }
+    }
+
+    /**
+     * The counts of the sources in a minute and in the minute before it.
+     */
+    private static final class Window {
+
+        private final long minute;
+        private final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> previousCounts;
+
+        Window(long minute, Map<String, LongAdder> previousCounts) {
+            this.minute = minute;
+            this.previousCounts = previousCounts;
+        }
+
+        long estimate(String source, long nowMillis) {
+            LongAdder count = counts.get(source);
+            LongAdder previousCount = previousCounts.get(source);
+            long estimate = count == null ? 0 : count.sum();
+            if (previousCount != null) {
+                // The part of the previous minute which is still in the last 60 seconds.
+                estimate += previousCount.sum() * (WINDOW_MILLIS - nowMillis % WINDOW_MILLIS) / WINDOW_MILLIS;
+            }
+            return estimate;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ir.sahab.rest.common.apierror;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Registers the beans of {@link RejectedRequestCounter}. It is only imported if the rejected requests are counted by
+ * {@link EnableApiErrorMapping#maxRejectionsPerMinute()}.
+ */
+@Configuration
+public class RejectedRequestsConfigurer {
+
+    /**
+     * Returns the counter which is recorded by {@link ApiExceptionHandler}. It is also a Micrometer meter binder, so
+     * its counters are registered in the meter registry of the application.
+     */
+    @Bean
+    RejectedRequestCounter rejectedRequestCounter() {
+        return new RejectedRequestCounter(ApiErrorMappingMetadata.getInstance().getMaxRejectionsPerMinute());
+    }
+
+    @Bean
+    RejectedRequestsEndpoint rejectedRequestsEndpoint(RejectedRequestCounter rejectedRequestCounter) {
+        return new RejectedRequestsEndpoint(rejectedRequestCounter);
+    }
+
+    /**
+     * Registers the filter before all other filters (including the Spring security and request logging filters), so
+     * the requests of the blocked sources are rejected without any other work. Just the forwarded headers filter of
+     * Spring Boot (which is registered by {@code server.forward-headers-strategy=framework} with the highest
+     * precedence) runs before it, so the sources are the client IPs rather than the proxy.
+     */
+    @Bean
+    FilterRegistrationBean<RejectedSourceFilter> rejectedSourceFilter(RejectedRequestCounter rejectedRequestCounter) {
+        FilterRegistrationBean<RejectedSourceFilter> registration =
+                new FilterRegistrationBean<>(new RejectedSourceFilter(rejectedRequestCounter));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
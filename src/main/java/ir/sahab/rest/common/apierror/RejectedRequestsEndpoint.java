@@ -0,0 +1,26 @@
+package ir.sahab.rest.common.apierror;
+
+import ir.sahab.rest.common.apierror.RejectedRequestCounter.RejectedSource;
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint which reports the sources with the most 404 and 405 errors in the last minute, and whether they
+ * are blocked (see {@link RejectedRequestCounter}). Like the other actuator endpoints, it should be exposed explicitly
+ * (e.g., by the {@code management.endpoints.web.exposure.include} property).
+ */
+@Endpoint(id = "rejectedrequests")
+public class RejectedRequestsEndpoint {
+
+    private final RejectedRequestCounter counter;
+
+    public RejectedRequestsEndpoint(RejectedRequestCounter counter) {
+        this.counter = counter;
+    }
+
+    @ReadOperation
+    public List<RejectedSource> topSources() {
+        return counter.getTopSources();
+    }
+}
@@ -0,0 +1,44 @@
+package ir.sahab.rest.common.apierror;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Web filter which rejects all requests of the sources which are blocked by the {@link RejectedRequestCounter} (e.g.,
+ * the vulnerability scanners), with the 429 (Too Many Requests) status code and a Retry-After header. The responses
+ * have no body, and the requests are neither authenticated, logged nor dispatched, so a scanner costs almost nothing
+ * once it is blocked.
+ *
+ * <p>The source of a request is its remote address. So if the application is behind a reverse proxy, the forwarded
+ * headers of the proxy must be applied (e.g., by the {@code server.forward-headers-strategy} property of Spring Boot),
+ * otherwise the proxy itself is blocked.
+ */
+public final class RejectedSourceFilter extends OncePerRequestFilter {
+
+    private static final String RETRY_AFTER_SECONDS = String.valueOf(TimeUnit.MINUTES.toSeconds(1));
+
+    private final RejectedRequestCounter counter;
+
+    public RejectedSourceFilter(RejectedRequestCounter counter) {
+        this.counter = counter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (counter.isBlocked(request.getRemoteAddr())) {
+            counter.recordBlocked();
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,16 @@
+package ir.sahab.rest.common.apierror;
+
+/**
+ * Generates the tracking ids of the API errors (see {@link ApiException#getTrackingId()}). The implementations should
+ * be thread-safe and have a public no-arg constructor, so they can be set by
+ * {@link EnableApiErrorMapping#trackingIdGenerator()}.
+ *
+ * @see UlidTrackingIdGenerator
+ */
+public interface TrackingIdGenerator {
+
+    /**
+     * Returns a new unique id.
+     */
+    String generate();
+}
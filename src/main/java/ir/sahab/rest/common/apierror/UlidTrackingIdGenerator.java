@@ -0,0 +1,49 @@
+package ir.sahab.rest.common.apierror;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The default {@link TrackingIdGenerator} which generates ULID-style ids: 26 characters of Crockford's base32 which
+ * encode a 48-bit timestamp (milliseconds since the epoch) followed by 80 random bits, e.g.,
+ * {@code 01HF3Z8K4QX2M9T6VB7CRD5NWE}. Since the timestamp comes first, the ids sort by their creation time (to the
+ * millisecond), which makes them easy to find in a log search by time range.
+ *
+ * <p>The random bits come from {@link ThreadLocalRandom}, so unlike {@code UUID.randomUUID()}, the threads do not
+ * contend on a shared {@code SecureRandom}. The ids are unique enough to track errors, but they are not unpredictable,
+ * so they should not be used as secrets.
+ */
+public class UlidTrackingIdGenerator implements TrackingIdGenerator {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int LENGTH = 26;
+
+    @Override
+    public String generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return format(System.currentTimeMillis(), random.nextLong(), random.nextInt());
+    }
+
+    /**
+     * Formats the given timestamp and 80 random bits (i.e., the 64 bits of {@code randomHigh} and the low 16 bits of
+     * {@code randomLow}) as a ULID.
+     */
+    static String format(long timestampMillis, long randomHigh, int randomLow) {
+        char[] chars = new char[LENGTH];
+        // 10 characters of the 48-bit timestamp (the first character has just 3 bits).
+        encode(timestampMillis, chars, 0, 10);
+        // 16 characters of the 80 random bits, as two 40-bit halves of 8 characters.
+        encode(randomHigh >>> 24, chars, 10, 8);
+        encode(((randomHigh & 0xFFFFFF) << 16) | (randomLow & 0xFFFF), chars, 18, 8);
+        return new String(chars);
+    }
+
+    /**
+     * Writes the low {@code 5 * count} bits of the given value as the given number of characters at the given offset.
+     */
+    private static void encode(long value, char[] chars, int offset, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            chars[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ir.sahab.rest.common.apierror;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import org.zalando.problem.violations.Violation;
+
+/**
+ * The {@code violations} field of a constraint violation problem, which is rendered from the validation errors while
+ * the problem is serialized, instead of collecting all of them in the problem. The violations with the same message on
+ * the same field of different elements (e.g., {@code items[3].count} and {@code items[8].count}) are rendered as one
+ * group with their count (e.g., {@code items[].count}), and at most the given number of groups are rendered. So a bulk
+ * request with thousands of invalid elements gets a small response.
+ *
+ * <p>The groups are rendered in the order of their field and message, like the violations of the default
+ * problem-spring-web handlers. If there are more groups than the maximum, the first ones in this order are rendered, so
+ * the response does not depend on the order of the validation errors (e.g., of the constraint violations, which are in
+ * a hash set).
+ *
+ * @param <T> type of the validation errors, e.g., {@code FieldError} or {@code ConstraintViolation}.
+ */
+final class ViolationGroups<T> extends JsonSerializable.Base {
+
+    private final Iterable<T> errors;
+    private final Function<T, Violation> violationFactory;
+    private final int maxGroups;
+
+    /**
+     * @param violationFactory creates the violation of a validation error, which is just used while it is rendered.
+     * @param maxGroups maximum number of the rendered groups. The violations of the other groups are not rendered.
+     */
+    ViolationGroups(Iterable<T> errors, Function<T, Violation> violationFactory, int maxGroups) {
+        this.errors = errors;
+        this.violationFactory = violationFactory;
+        this.maxGroups = maxGroups;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider serializers) throws IOException {
+        generator.writeStartArray();
+        for (Group group : group().values()) {
+            generator.writeStartObject();
+            generator.writeStringField("field", group.count == 1 ? group.field : group.key.field);
+            generator.writeStringField("message", group.key.message);
+            if (group.count > 1) {
+                generator.writeNumberField("count", group.count);
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider serializers,
+            TypeSerializer typeSerializer) throws IOException {
+        serialize(generator, serializers);
+    }
+
+    /**
+     * Groups the violations in one pass over the validation errors. Only the groups are kept, so the memory is bounded
+     * by the maximum number of the groups. Once the maximum is reached, a new group replaces the last one if it comes
+     * before it; so the last group only moves backward, a dropped group never comes back, and the counts of the kept
+     * groups are complete.
+     */
+    SortedMap<GroupKey, Group> group() {
+        SortedMap<GroupKey, Group> groups = new TreeMap<>();
+        for (T error : errors) {
+            Violation violation = violationFactory.apply(error);
+            GroupKey key = new GroupKey(removeIndexes(violation.getField()), violation.getMessage());
+            Group group = groups.get(key);
+            if (group != null) {
+                group.count++;
+            } else if (groups.size() < maxGroups) {
+                groups.put(key, new Group(key, violation.getField()));
+            } else if (key.compareTo(groups.lastKey()) < 0) {
+                groups.remove(groups.lastKey());
+                groups.put(key, new Group(key, violation.getField()));
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Returns the given field path without the indexes (and map keys) of its elements, e.g., {@code items[].count} for
+     * {@code items[3].count}.
+     */
+    static String removeIndexes(String field) {
+        if (field == null || field.indexOf('[') < 0) {
+            return field;
+        }
+        StringBuilder builder = new StringBuilder(field.length());
+        boolean inIndex = false;
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '[') {
+                inIndex = true;
+                builder.append(c);
+            } else if (c == ']') {
+                inIndex = false;
+                builder.append(c);
+            } else if (!inIndex) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The field (without indexes) and message of a group of violations.
+     */
+    static final class GroupKey implements Comparable<GroupKey> {
+
+        private static final Comparator<String> NULLS_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+
+        private final String field;
+        private final String message;
+
+        GroupKey(String field, String message) {
+            this.field = field;
+            this.message = message;
+        }
+
+        @Override
+        public int compareTo(GroupKey other) {
+            int result = NULLS_FIRST.compare(field, other.field);
+            return result != 0 ? result : NULLS_FIRST.compare(message, other.message);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof GroupKey)) {
+                return false;
+            }
+            GroupKey that = (GroupKey) other;
+            return (field == null ? that.field == null : field.equals(that.field))
+                    && (message == null ? that.message == null : message.equals(that.message));
+        }
+
+        @Override
+        public int hashCode() {
+            return (field == null ? 0 : field.hashCode()) * 31 + (message == null ? 0 : message.hashCode());
+        }
+    }
+
+    /**
+     * A group of violations: its key, the field of its first violation and its count.
+     */
+    static final class Group {
+
+        private final GroupKey key;
+        private final String field;
+        private long count = 1;
+
+        Group(GroupKey key, String field) {
+            this.key = key;
+            this.field = field;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package ir.sahab.rest.common.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * Authenticator for machine clients which send static API keys in the X-API-KEY header. The keys are loaded from a file
+ * with a line per key in this format (empty lines and lines starting with # are ignored):
+ * <pre>
+ * api-key=principal-name[,authority...]
+ * sha256:hex-of-sha256-of-api-key=principal-name[,authority...]
+ * </pre>
+ * The keys of the first format are stored in the file as plain text, so the file must be readable by the service only.
+ * The second format has just the SHA-256 hash of the key (e.g., the output of {@code printf %s "$KEY" | sha256sum}),
+ * so the keys cannot be read from the file. The authorities are prefixed by the
+ * {@link EnableCustomSecurity#authorityPrefix() authorityPrefix}.
+ *
+ * <p>The keys are not kept in memory. They are indexed by the HMAC of their SHA-256 hash with a random salt, so looking
+ * up a key is a single hash lookup regardless of the number of keys, and the found entry is confirmed by a constant
+ * time comparison of the whole HMAC. The digest and the HMAC instances are cached per thread, so a lookup does not look
+ * up the security providers. The file is checked for changes periodically in a background thread. On each change, a
+ * new index is built and swapped with the current one, so the requests are never blocked by reloads and always see a
+ * complete index.
+ */
+public class ApiKeyAuthenticator implements Authenticator, AutoCloseable {
+
+    public static final String API_KEY_HEADER = "X-API-KEY";
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyAuthenticator.class);
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String HASHED_KEY_PREFIX = "sha256:";
+    private static final int SALT_LENGTH = 32;
+    private static final long DEFAULT_RELOAD_INTERVAL_SECONDS = 5;
+
+    private final Path keyFile;
+    private final ScheduledExecutorService reloader;
+
+    private volatile KeyIndex index;
+    private long loadedLastModified;
+
+    /**
+     * Creates an authenticator which checks the key file for changes every 5 seconds.
+     */
+    public ApiKeyAuthenticator(String keyFile) {
+        this(keyFile, DEFAULT_RELOAD_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param keyFile path of the file containing the keys.
+     * @param reloadInterval the interval of checking the key file for changes.
+     * @throws IllegalStateException if the initial load of the keys fails.
+     */
+    public ApiKeyAuthenticator(String keyFile, long reloadInterval, TimeUnit unit) {
+        this.keyFile = Paths.get(keyFile);
+        try {
+            this.loadedLastModified = Files.getLastModifiedTime(this.keyFile).toMillis();
+            this.index = KeyIndex.load(this.keyFile);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to load API keys from " + keyFile, e);
+        }
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "api-key-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reloader.scheduleWithFixedDelay(this::reloadIfChanged, reloadInterval, reloadInterval, unit);
+    }
+
+    @Override
+    public Authentication authenticate(HttpServletRequest request) {
+        String apiKey = request.getHeader(API_KEY_HEADER);
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw SecurityExceptions.badCredentials("No API key is provided!");
+        }
+        Authentication authentication = index.find(apiKey);
+        if (authentication == null) {
+            throw SecurityExceptions.badCredentials("Invalid API key!");
+        }
+        return authentication;
+    }
+
+    @Override
+    public void close() {
+        reloader.shutdownNow();
+    }
+
+    /**
+     * Reloads the key file if it is modified since the last load. It is only called by the reloader thread.
+     */
+    private void reloadIfChanged() {
+        try {
+            long lastModified = Files.getLastModifiedTime(keyFile).toMillis();
+            if (lastModified != loadedLastModified) {
+                index = KeyIndex.load(keyFile);
+                loadedLastModified = lastModified;
+                logger.info("API keys are reloaded from {}.", keyFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to reload API keys from {}. The previous keys are kept.", keyFile, e);
+        }
+    }
+
+    /**
+     * An immutable index of API keys by the first 8 bytes of their salted HMACs.
+     */
+    private static class KeyIndex {
+
+        private static final SecureRandom random = new SecureRandom();
+        private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new AssertionError("SHA-256 is not available.", e);
+            }
+        });
+
+        private final ThreadLocal<Mac> macs;
+        private final Map<Long, Entry> entries;
+
+        private KeyIndex(SecretKeySpec salt, Map<Long, Entry> entries) {
+            this.macs = ThreadLocal.withInitial(() -> newMac(salt));
+            this.entries = entries;
+        }
+
+        static KeyIndex load(Path keyFile) throws IOException {
+            List<String[]> keys = new ArrayList<>();
+            for (String line : Files.readAllLines(keyFile, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int separator = line.indexOf('=');
+                if (separator <= 0 || separator == line.length() - 1) {
+                    throw new IllegalArgumentException("Invalid API key line in " + keyFile + ": expected "
+                            + "key=principal[,authority...]");
+                }
+                String key = line.substring(0, separator).trim();
+                if (key.startsWith(HASHED_KEY_PREFIX) && key.length() != HASHED_KEY_PREFIX.length() + 64) {
+                    throw new IllegalArgumentException("Invalid hashed API key in " + keyFile + ": expected "
+                            + HASHED_KEY_PREFIX + " and 64 hexadecimal digits");
+                }
+                keys.add(new String[] {key, line.substring(separator + 1).trim()});
+            }
+            while (true) {
+                KeyIndex index = build(keys);
+                if (index != null) {
+                    return index;
+                }
+                // Two keys share the first 8 bytes of their HMACs, which is very unlikely. A new salt separates them.
+            }
+        }
+
+        /**
+         * Builds an index of the given keys with a new random salt or returns null if two keys collide in the index.
+         *
+         * @throws IllegalArgumentException if a key is repeated.
+         */
+        private static KeyIndex build(List<String[]> keys) {
+            byte[] saltBytes = new byte[SALT_LENGTH];
+            random.nextBytes(saltBytes);
+            SecretKeySpec salt = new SecretKeySpec(saltBytes, HMAC_ALGORITHM);
+            Mac mac = newMac(salt);
+            Map<Long, Entry> entries = new HashMap<>(keys.size() * 2);
+            for (String[] key : keys) {
+                byte[] hmac = mac.doFinal(key[0].startsWith(HASHED_KEY_PREFIX)
+                        ? decodeHex(key[0].substring(HASHED_KEY_PREFIX.length())) : digest(key[0]));
+                String[] principal = key[1].split(",");
+                List<GrantedAuthority> authorities = new ArrayList<>();
+                for (int i = 1; i < principal.length; i++) {
+                    if (!principal[i].trim().isEmpty()) {
+                        authorities.add(TokenClaims.toAuthority(principal[i].trim()));
+                    }
+                }
+                Authentication authentication = new AuthenticationToken(
+                        new UsernamePasswordAuthenticationToken(principal[0].trim(), null, authorities));
+                Entry previous = entries.put(ByteBuffer.wrap(hmac).getLong(), new Entry(hmac, authentication));
+                if (previous != null) {
+                    if (MessageDigest.isEqual(previous.hmac, hmac)) {
+                        throw new IllegalArgumentException("Duplicate API key for principal: " + principal[0]);
+                    }
+                    return null;
+                }
+            }
+            return new KeyIndex(salt, Collections.unmodifiableMap(entries));
+        }
+
+        Authentication find(String apiKey) {
+            byte[] hmac = macs.get().doFinal(digest(apiKey));
+            Entry entry = entries.get(ByteBuffer.wrap(hmac).getLong());
+            return entry != null && MessageDigest.isEqual(entry.hmac, hmac) ? entry.authentication : null;
+        }
+
+        private static byte[] digest(String apiKey) {
+            return digests.get().digest(apiKey.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Mac newMac(SecretKeySpec salt) {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(salt);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new AssertionError("HMAC-SHA256 is not available.", e);
+            }
+        }
+
+        private static byte[] decodeHex(String hex) {
+            byte[] bytes = new byte[hex.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                int high = Character.digit(hex.charAt(2 * i), 16);
+                int low = Character.digit(hex.charAt(2 * i + 1), 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Invalid hexadecimal digits in hashed API key: " + hex);
+                }
+                bytes[i] = (byte) (high << 4 | low);
+            }
+            return bytes;
+        }
+    }
+
+    private static class Entry {
+
+        private final byte[] hmac;
+        private final Authentication authentication;
+
+        Entry(byte[] hmac, Authentication authentication) {
+            this.hmac = hmac;
+            this.authentication = authentication;
+        }
+    }
+}
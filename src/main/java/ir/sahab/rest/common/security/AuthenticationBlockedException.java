@@ -0,0 +1,39 @@
+package ir.sahab.rest.common.security;
+
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * Thrown when a request is rejected without verifying its credentials, because its source (i.e., its client IP or
+ * username) has had too many authentication failures recently. Such requests are rejected with the 429 (Too Many
+ * Requests) status code.
+ *
+ * @see BruteForceDetector
+ * @see SecurityErrorCode#TOO_MANY_AUTHENTICATION_FAILURES
+ */
+public class AuthenticationBlockedException extends AuthenticationException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public AuthenticationBlockedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Returns the seconds after which the source may be unblocked.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Does not capture the stack trace if stackless exceptions are enabled, because this exception is thrown for each
+     * request of an attacker.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return SecurityExceptions.isStackless() ? this : super.fillInStackTrace();
+    }
+}
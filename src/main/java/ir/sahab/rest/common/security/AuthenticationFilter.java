@@ -8,27 +8,65 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.authentication.AbstractAuthenticationProcessingFilter;
 import org.springframework.security.web.util.matcher.RequestMatcher;
 
 /**
  * Web filter for authenticating requests. If the requested URL matches with protected URLs (based on SecurityConfigurer
  * config) then it attempts to create the {@link Authentication} from HTTP request using an {@link Authenticator}
- * object.
+ * object. If a {@link BruteForceDetector} is set, the requests of the sources with too many failures are rejected
+ * before calling the {@link Authenticator}, and the failures of the other requests are recorded by the detector. If a
+ * {@link SessionTokenService} is set, the requests with a valid session token are authenticated by the token, and the
+ * others get a new token when they are authenticated by the {@link Authenticator}.
  */
 public final class AuthenticationFilter extends AbstractAuthenticationProcessingFilter {
 
-    private final ApplicationContext applicationContext;
-    private Authenticator authenticator;
+    private final Authenticator authenticator;
+    private BruteForceDetector bruteForceDetector;
+    private SessionTokenService sessionTokenService;
 
-    public AuthenticationFilter(ApplicationContext applicationContext, RequestMatcher protectedUrls) {
+    public AuthenticationFilter(Authenticator authenticator, RequestMatcher protectedUrls) {
         super(protectedUrls);
-        this.applicationContext = applicationContext;
+        this.authenticator = authenticator;
+    }
+
+    /**
+     * Creates a filter which looks up the {@link Authenticator} bean of the given context on its first request (or uses
+     * a {@link BasicAuthenticator} if there is no such bean).
+     *
+     * @deprecated use {@link #AuthenticationFilter(Authenticator, RequestMatcher)} with the resolved authenticator.
+     */
+    @Deprecated
+    public AuthenticationFilter(ApplicationContext applicationContext, RequestMatcher protectedUrls) {
+        this(new ContextAuthenticator(applicationContext), protectedUrls);
+    }
+
+    public void setBruteForceDetector(BruteForceDetector bruteForceDetector) {
+        this.bruteForceDetector = bruteForceDetector;
+    }
+
+    public void setSessionTokenService(SessionTokenService sessionTokenService) {
+        this.sessionTokenService = sessionTokenService;
     }
 
     @Override
     public Authentication attemptAuthentication(final HttpServletRequest request, final HttpServletResponse response) {
-        return getAuthenticationManager().authenticate(getAuthenticator().authenticate(request));
+        if (sessionTokenService != null) {
+            Authentication tokenAuthentication =
+                    sessionTokenService.verify(request.getHeader(SessionTokenService.HEADER));
+            if (tokenAuthentication != null) {
+                return getAuthenticationManager().authenticate(tokenAuthentication);
+            }
+        }
+        if (bruteForceDetector != null) {
+            bruteForceDetector.checkAllowed(request);
+        }
+        Authentication authentication = getAuthenticationManager().authenticate(authenticator.authenticate(request));
+        if (sessionTokenService != null) {
+            response.setHeader(SessionTokenService.HEADER, sessionTokenService.issue(authentication));
+        }
+        return authentication;
     }
 
     @Override
@@ -42,13 +80,42 @@ public final class AuthenticationFilter extends AbstractAuthenticationProcessing
         chain.doFilter(request, response);
     }
 
-    private Authenticator getAuthenticator() {
-        if (authenticator == null) {
-            authenticator = applicationContext.getBeanProvider(Authenticator.class).getIfAvailable();
+    @Override
+    protected void unsuccessfulAuthentication(
+            final HttpServletRequest request,
+            final HttpServletResponse response,
+            final AuthenticationException failed) throws IOException, ServletException {
+        // Blocked requests are not counted, so the sources are unblocked when their failures leave the window. The
+        // credentials of overloaded requests are not checked at all.
+        if (bruteForceDetector != null && !(failed instanceof AuthenticationBlockedException)
+                && !(failed instanceof AuthenticationOverloadException)) {
+            bruteForceDetector.recordFailure(request);
+        }
+        super.unsuccessfulAuthentication(request, response, failed);
+    }
+
+    /**
+     * Authenticator which delegates to the {@link Authenticator} bean of a context. The bean is looked up on the first
+     * request, since it may not be created yet when the filter is created.
+     */
+    private static class ContextAuthenticator implements Authenticator {
+
+        private final ApplicationContext applicationContext;
+        private volatile Authenticator delegate;
+
+        ContextAuthenticator(ApplicationContext applicationContext) {
+            this.applicationContext = applicationContext;
+        }
+
+        @Override
+        public Authentication authenticate(HttpServletRequest request) {
+            Authenticator authenticator = delegate;
             if (authenticator == null) {
-                authenticator = new BasicAuthenticator();
+                authenticator = applicationContext.getBeanProvider(Authenticator.class)
+                        .getIfAvailable(BasicAuthenticator::new);
+                delegate = authenticator;
             }
+            return authenticator.authenticate(request);
         }
-        return authenticator;
     }
 }
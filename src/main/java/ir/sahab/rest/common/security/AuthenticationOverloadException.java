@@ -0,0 +1,28 @@
+package ir.sahab.rest.common.security;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * Thrown by an {@link Authenticator} when it has no capacity to verify the credentials of a request at the moment. Such
+ * requests are rejected with the 503 (Service Unavailable) status code instead of 401, because their credentials may
+ * be valid.
+ *
+ * @see SecurityErrorCode#AUTHENTICATION_OVERLOADED
+ */
+public class AuthenticationOverloadException extends AuthenticationServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public AuthenticationOverloadException(String message) {
+        super(message);
+    }
+
+    /**
+     * Does not capture the stack trace if stackless exceptions are enabled, because this exception is thrown for lots
+     * of requests exactly when the server has no CPU to spare.
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return SecurityExceptions.isStackless() ? this : super.fillInStackTrace();
+    }
+}
@@ -12,10 +12,12 @@ public class AuthenticationToken extends AbstractAuthenticationToken {
     private static final long serialVersionUID = 0L;
 
     private final String principal;
+    private final AuthorityIndex authorityIndex;
 
     public AuthenticationToken(Authentication authentication) {
         super(authentication.getAuthorities());
         this.principal = (String) authentication.getPrincipal();
+        this.authorityIndex = AuthorityIndex.of(getAuthorities());
         super.setAuthenticated(this.principal != null);
         setDetails(authentication);
     }
@@ -30,6 +32,13 @@ public class AuthenticationToken extends AbstractAuthenticationToken {
         return principal;
     }
 
+    /**
+     * Returns the index of granted authorities which is built once when this token is created.
+     */
+    public AuthorityIndex getAuthorityIndex() {
+        return authorityIndex;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
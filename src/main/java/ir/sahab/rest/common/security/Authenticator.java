@@ -1,11 +1,6 @@
 package ir.sahab.rest.common.security;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
-import java.util.Collections;
 import javax.servlet.http.HttpServletRequest;
-import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 
@@ -20,20 +15,19 @@ public interface Authenticator {
 
     /**
      * Basic authenticator which just extracts credential information from a basic authentication header.
+     *
+     * @see AuthorizationHeader
      */
     class BasicAuthenticator implements Authenticator {
 
         @Override
         public Authentication authenticate(HttpServletRequest request) {
-            String authorizationHeader = request.getHeader("Authorization");
-            if (authorizationHeader != null && authorizationHeader.startsWith("Basic")) {
-                String base64Credentials = authorizationHeader.substring("Basic ".length()).trim();
-                String decodedHeader = new String(Base64.getDecoder().decode(base64Credentials),
-                        StandardCharsets.UTF_8);
-                String[] credentials = decodedHeader.split(":", 2);
-                return new UsernamePasswordAuthenticationToken(credentials[0], credentials[1], Collections.emptySet());
+            AuthorizationHeader authorizationHeader = AuthorizationHeader.parse(
+                    request.getHeader(AuthorizationHeader.NAME));
+            if (authorizationHeader == null) {
+                throw SecurityExceptions.badCredentials("Invalid Credentials!");
             }
-            throw new BadCredentialsException("Invalid Credentials!");
+            return authorizationHeader.decodeBasic();
         }
     }
 }
@@ -0,0 +1,125 @@
+package ir.sahab.rest.common.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * An immutable hashed index of granted authority names. It is built once for each authentication (see {@link
+ * #of(Authentication)}) and then each authority check costs a single hash lookup regardless of the number of authorities the
+ * principal carries. Since the hash code is computed once, the index itself can also be used as a cheap key that
+ * identifies a set of authorities.
+ */
+public final class AuthorityIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final AuthorityIndex EMPTY = new AuthorityIndex(Collections.emptySet());
+
+    // The indexes of the authentications other than AuthenticationTokens. The keys are weak and compared by identity, so
+    // an index is dropped once its authentication (e.g., the one of a finished request) is garbage collected.
+    private static final Cache<Authentication, AuthorityIndex> INDEXES = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final Set<String> authorities;
+    private final int hash;
+
+    private AuthorityIndex(Set<String> authorities) {
+        this.authorities = authorities;
+        this.hash = authorities.hashCode();
+    }
+
+    /**
+     * Returns the index of the authorities of the given authentication. The index of an {@link AuthenticationToken} is
+     * built when the token is created. The index of any other authentication is built on the first call and then kept
+     * as long as the authentication is reachable, so its authorities should not change afterwards (like the ones of
+     * {@link org.springframework.security.authentication.AbstractAuthenticationToken}).
+     */
+    public static AuthorityIndex of(Authentication authentication) {
+        if (authentication == null) {
+            return EMPTY;
+        }
+        if (authentication instanceof AuthenticationToken) {
+            return ((AuthenticationToken) authentication).getAuthorityIndex();
+        }
+        AuthorityIndex index = INDEXES.getIfPresent(authentication);
+        if (index == null) {
+            index = of(authentication.getAuthorities());
+            INDEXES.put(authentication, index);
+        }
+        return index;
+    }
+
+    public static AuthorityIndex of(Collection<? extends GrantedAuthority> grantedAuthorities) {
+        if (grantedAuthorities == null || grantedAuthorities.isEmpty()) {
+            return EMPTY;
+        }
+        Set<String> authorities = new HashSet<>(grantedAuthorities.size() * 2);
+        for (GrantedAuthority grantedAuthority : grantedAuthorities) {
+            // Authorities without a string representation (i.e., complex authorities) can not be checked by name.
+            if (grantedAuthority.getAuthority() != null) {
+                authorities.add(grantedAuthority.getAuthority());
+            }
+        }
+        return new AuthorityIndex(Collections.unmodifiableSet(authorities));
+    }
+
+    public boolean contains(String authority) {
+        return authorities.contains(authority);
+    }
+
+    /**
+     * Returns true if at least one of the given authorities exists in the index.
+     */
+    public boolean containsAny(String... authorities) {
+        for (String authority : authorities) {
+            if (this.authorities.contains(authority)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if all of the given authorities exist in the index.
+     */
+    public boolean containsAll(String... authorities) {
+        for (String authority : authorities) {
+            if (!this.authorities.contains(authority)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Set<String> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AuthorityIndex)) {
+            return false;
+        }
+        AuthorityIndex that = (AuthorityIndex) o;
+        return hash == that.hash && authorities.equals(that.authorities);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return authorities.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package ir.sahab.rest.common.security;
+
+import ir.sahab.rest.common.virtualthread.VirtualThreads;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+/**
+ * A parsed view of an Authorization header value, i.e., {@code <scheme> <credentials>} (e.g., {@code Basic dXNlcjpwYXNz}
+ * or {@code Bearer eyJhbGciOi...}). Parsing just finds the offsets of the scheme and the credentials in the original
+ * value, so no substring is created. The scheme is matched case-insensitively as the HTTP spec requires.
+ *
+ * <p>Basic credentials are decoded directly from the header value into a buffer which is reused by each (platform)
+ * thread, so the only objects created for a Basic header are the username and password strings. On virtual threads,
+ * which are not reused, a new buffer is used for each decoding to not keep a buffer per virtual thread.
+ */
+public final class AuthorizationHeader {
+
+    public static final String NAME = "Authorization";
+
+    public static final String BASIC = "Basic";
+    public static final String BEARER = "Bearer";
+    public static final String API_KEY = "ApiKey";
+
+    // Basic credentials longer than this are decoded into a temporary buffer, so the thread buffers stay small.
+    private static final int MAX_THREAD_BUFFER_SIZE = 256;
+    private static final ThreadLocal<byte[]> threadBuffer =
+            ThreadLocal.withInitial(() -> new byte[MAX_THREAD_BUFFER_SIZE]);
+
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final CharSequence value;
+    private final int schemeEnd;
+    private final int credentialsStart;
+    private final int credentialsEnd;
+
+    private AuthorizationHeader(CharSequence value, int schemeEnd, int credentialsStart, int credentialsEnd) {
+        this.value = value;
+        this.schemeEnd = schemeEnd;
+        this.credentialsStart = credentialsStart;
+        this.credentialsEnd = credentialsEnd;
+    }
+
+    /**
+     * Parses the given value of an Authorization header.
+     *
+     * @return the parsed header or null if the value is null or has no scheme.
+     */
+    public static AuthorizationHeader parse(CharSequence value) {
+        if (value == null) {
+            return null;
+        }
+        int start = skipWhitespaces(value, 0);
+        if (start != 0) {
+            // Leading whitespaces are not expected, but they are tolerated like before.
+            value = CharBuffer.wrap(value, start, value.length());
+        }
+        int schemeEnd = 0;
+        while (schemeEnd < value.length() && !Character.isWhitespace(value.charAt(schemeEnd))) {
+            schemeEnd++;
+        }
+        if (schemeEnd == 0) {
+            return null;
+        }
+        int credentialsStart = skipWhitespaces(value, schemeEnd);
+        int credentialsEnd = value.length();
+        while (credentialsEnd > credentialsStart && Character.isWhitespace(value.charAt(credentialsEnd - 1))) {
+            credentialsEnd--;
+        }
+        return new AuthorizationHeader(value, schemeEnd, credentialsStart, credentialsEnd);
+    }
+
+    /**
+     * Returns true if the scheme of this header is the given scheme (ignoring the case).
+     */
+    public boolean hasScheme(String scheme) {
+        if (scheme.length() != schemeEnd) {
+            return false;
+        }
+        for (int i = 0; i < schemeEnd; i++) {
+            char c = value.charAt(i);
+            char expected = scheme.charAt(i);
+            if (c != expected && Character.toLowerCase(c) != Character.toLowerCase(expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getScheme() {
+        return value.subSequence(0, schemeEnd).toString();
+    }
+
+    /**
+     * Returns a view of the credentials part of the header (e.g., the token of a Bearer header) without copying it.
+     */
+    public CharSequence getCredentials() {
+        return CharBuffer.wrap(value, credentialsStart, credentialsEnd);
+    }
+
+    /**
+     * Returns the credentials part of the header as a string.
+     */
+    public String getCredentialsString() {
+        return value.subSequence(credentialsStart, credentialsEnd).toString();
+    }
+
+    /**
+     * Decodes the credentials of a Basic header.
+     *
+     * @throws BadCredentialsException if the scheme is not Basic or the credentials are not Base64 encoded
+     *     {@code username:password}.
+     */
+    public UsernamePasswordAuthenticationToken decodeBasic() {
+        UsernamePasswordAuthenticationToken token = decodeBasic((buffer, colon, length) -> {
+            String username = new String(buffer, 0, colon, StandardCharsets.UTF_8);
+            String password = new String(buffer, colon + 1, length - colon - 1, StandardCharsets.UTF_8);
+            return new UsernamePasswordAuthenticationToken(username, password, Collections.emptySet());
+        });
+        if (token == null) {
+            throw SecurityExceptions.badCredentials("Invalid Credentials!");
+        }
+        return token;
+    }
+
+    /**
+     * Returns the username of a Basic header without decoding its password into a string.
+     *
+     * @return the username or null if the scheme is not Basic or the credentials are not Base64 encoded
+     *     {@code username:password}.
+     */
+    public String getBasicUsername() {
+        return decodeBasic((buffer, colon, length) -> new String(buffer, 0, colon, StandardCharsets.UTF_8));
+    }
+
+    private <T> T decodeBasic(BasicCredentialsReader<T> reader) {
+        if (!hasScheme(BASIC) || credentialsStart == credentialsEnd) {
+            return null;
+        }
+        int maxLength = (credentialsEnd - credentialsStart) * 3 / 4;
+        byte[] buffer = maxLength <= MAX_THREAD_BUFFER_SIZE && !VirtualThreads.isVirtual(Thread.currentThread())
+                ? threadBuffer.get() : new byte[maxLength];
+        int length = decodeBase64(value, credentialsStart, credentialsEnd, buffer);
+        try {
+            int colon = indexOf(buffer, length, (byte) ':');
+            return length < 0 || colon < 0 ? null : reader.read(buffer, colon, length);
+        } finally {
+            // The buffer may be reused by the thread, so the password should not remain in it.
+            Arrays.fill(buffer, 0, maxLength, (byte) 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        // Credentials are not included, so it is safe to log.
+        return "AuthorizationHeader[" + getScheme() + "]";
+    }
+
+    private static int skipWhitespaces(CharSequence value, int index) {
+        while (index < value.length() && Character.isWhitespace(value.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte value) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the standard Base64 characters in the given range into the given buffer.
+     *
+     * @return the number of decoded bytes or -1 if the characters are not valid Base64.
+     */
+    private static int decodeBase64(CharSequence chars, int start, int end, byte[] buffer) {
+        int bits = 0;
+        int bitCount = 0;
+        int length = 0;
+        int index = start;
+        for (; index < end && chars.charAt(index) != '='; index++) {
+            char c = chars.charAt(index);
+            int sextet = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+            if (sextet < 0) {
+                return -1;
+            }
+            bits = (bits << 6) | sextet;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                buffer[length++] = (byte) (bits >> bitCount);
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+        // Only padding may follow, and a single character can not be the last group.
+        for (; index < end; index++) {
+            if (chars.charAt(index) != '=') {
+                return -1;
+            }
+        }
+        return bitCount >= 6 ? -1 : length;
+    }
+
+    /**
+     * Reads the decoded {@code username:password} bytes of a Basic header, which are only valid during the call.
+     */
+    private interface BasicCredentialsReader<T> {
+
+        T read(byte[] buffer, int colon, int length);
+    }
+}
@@ -0,0 +1,206 @@
+package ir.sahab.rest.common.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Detects the sources of too many authentication failures according to a {@link BruteForceProtection}. The failures
+ * of the requests are recorded per client IP and per username in {@link SlidingWindowSketch}es, and the requests of the
+ * sources which have reached their maximum failures are rejected before their credentials are verified.
+ *
+ * <p>The sources which reach their maximum failures are also kept in a small list of the top offenders, which is
+ * reported by {@link #getTopOffenders()} (e.g., by the {@code bruteforce} actuator endpoint). The number of failures,
+ * blocked requests and current offenders are also published as Micrometer metrics.
+ */
+public final class BruteForceDetector implements MeterBinder {
+
+    public static final String IP = "ip";
+    public static final String USERNAME = "username";
+
+    private static final int SLICES = 6;
+
+    private final LongAdder failures = new LongAdder();
+    private final List<Source> sources = new ArrayList<>();
+
+    public BruteForceDetector(BruteForceProtection protection) {
+        if (protection.windowSeconds() <= 0 || protection.topOffenders() < 0) {
+            throw new IllegalArgumentException("Window and top offenders of brute-force protection must be positive!");
+        }
+        long windowMillis = TimeUnit.SECONDS.toMillis(protection.windowSeconds());
+        if (protection.maxFailuresPerIp() > 0) {
+            sources.add(new Source(IP, protection.maxFailuresPerIp(),
+                    new SlidingWindowSketch(protection.sketchWidth(), SLICES, windowMillis), protection.topOffenders()) {
+                @Override
+                String getKey(HttpServletRequest request) {
+                    return request.getRemoteAddr();
+                }
+            });
+        }
+        if (protection.maxFailuresPerUsername() > 0) {
+            sources.add(new Source(USERNAME, protection.maxFailuresPerUsername(),
+                    new SlidingWindowSketch(protection.sketchWidth(), SLICES, windowMillis), protection.topOffenders()) {
+                @Override
+                String getKey(HttpServletRequest request) {
+                    AuthorizationHeader authorizationHeader =
+                            AuthorizationHeader.parse(request.getHeader(AuthorizationHeader.NAME));
+                    return authorizationHeader == null ? null : authorizationHeader.getBasicUsername();
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks the sources of the given request before its credentials are verified.
+     *
+     * @throws AuthenticationBlockedException if a source of the request has reached its maximum failures.
+     */
+    public void checkAllowed(HttpServletRequest request) {
+        long now = System.currentTimeMillis();
+        for (Source source : sources) {
+            String key = source.getKey(request);
+            if (key != null && source.sketch.estimate(key, now) >= source.maxFailures) {
+                source.blocked.increment();
+                long retryAfterMillis = source.sketch.getMillisToNextSlice(now);
+                throw new AuthenticationBlockedException("Too many authentication failures of the " + source.name,
+                        (retryAfterMillis + TimeUnit.SECONDS.toMillis(1) - 1) / TimeUnit.SECONDS.toMillis(1));
+            }
+        }
+    }
+
+    /**
+     * Records an authentication failure for the sources of the given request.
+     */
+    public void recordFailure(HttpServletRequest request) {
+        failures.increment();
+        long now = System.currentTimeMillis();
+        for (Source source : sources) {
+            String key = source.getKey(request);
+            if (key != null) {
+                int count = source.sketch.add(key, now);
+                if (count >= source.maxFailures) {
+                    source.offer(key, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the top offenders of each source type (i.e., {@link #IP} and {@link #USERNAME}) which are blocked at the
+     * moment, in descending order of their failures.
+     */
+    public Map<String, List<Offender>> getTopOffenders() {
+        Map<String, List<Offender>> topOffenders = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        for (Source source : sources) {
+            topOffenders.put(source.name, source.getOffenders(now));
+        }
+        return topOffenders;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("security.authentication.failures", failures, LongAdder::sum)
+                .description("Number of the failed authentications")
+                .register(registry);
+        for (Source source : sources) {
+            FunctionCounter.builder("security.authentication.blocked", source.blocked, LongAdder::sum)
+                    .description("Number of the requests rejected because of too many authentication failures")
+                    .tag("source", source.name)
+                    .register(registry);
+            Gauge.builder("security.authentication.offenders", source,
+                    s -> s.getOffenders(System.currentTimeMillis()).size())
+                    .description("Number of the top offenders which are blocked at the moment")
+                    .tag("source", source.name)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * A source which has reached its maximum authentication failures.
+     */
+    public static final class Offender {
+
+        private final String source;
+        private final int failures;
+
+        Offender(String source, int failures) {
+            this.source = source;
+            this.failures = failures;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * A type of the sources of the requests (e.g., client IP) whose failures are counted separately.
+     */
+    private abstract static class Source {
+
+        private final String name;
+        private final int maxFailures;
+        private final SlidingWindowSketch sketch;
+        private final int maxOffenders;
+        private final LongAdder blocked = new LongAdder();
+        // It is only accessed when a source reaches its maximum failures, so a synchronized small map is sufficient.
+        private final Map<String, Integer> offenders = new HashMap<>();
+
+        Source(String name, int maxFailures, SlidingWindowSketch sketch, int maxOffenders) {
+            this.name = name;
+            this.maxFailures = maxFailures;
+            this.sketch = sketch;
+            this.maxOffenders = maxOffenders;
+        }
+
+        /**
+         * Returns the key of this source type in the given request or null if the request has no such key.
+         */
+        abstract String getKey(HttpServletRequest request);
+
+        synchronized void offer(String key, int count) {
+            if (offenders.size() < maxOffenders || offenders.containsKey(key)) {
+                offenders.put(key, count);
+                return;
+            }
+            Map.Entry<String, Integer> least = null;
+            for (Map.Entry<String, Integer> entry : offenders.entrySet()) {
+                if (least == null || entry.getValue() < least.getValue()) {
+                    least = entry;
+                }
+            }
+            if (least != null && least.getValue() < count) {
+                offenders.remove(least.getKey());
+                offenders.put(key, count);
+            }
+        }
+
+        synchronized List<Offender> getOffenders(long now) {
+            List<Offender> result = new ArrayList<>();
+            // The offenders whose failures have left the window are not blocked anymore.
+            offenders.entrySet().removeIf(entry -> {
+                int count = sketch.estimate(entry.getKey(), now);
+                entry.setValue(count);
+                return count < maxFailures;
+            });
+            offenders.forEach((key, count) -> result.add(new Offender(key, count)));
+            result.sort(Comparator.comparingInt(Offender::getFailures).reversed());
+            return result;
+        }
+    }
+}
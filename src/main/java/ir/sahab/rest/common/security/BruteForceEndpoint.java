@@ -0,0 +1,27 @@
+package ir.sahab.rest.common.security;
+
+import ir.sahab.rest.common.security.BruteForceDetector.Offender;
+import java.util.List;
+import java.util.Map;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * Actuator endpoint which reports the top offenders of {@link BruteForceDetector}, i.e., the client IPs and usernames
+ * which are blocked at the moment because of too many authentication failures. Like the other actuator endpoints, it
+ * should be exposed explicitly (e.g., by the {@code management.endpoints.web.exposure.include} property).
+ */
+@Endpoint(id = "bruteforce")
+public class BruteForceEndpoint {
+
+    private final BruteForceDetector detector;
+
+    public BruteForceEndpoint(BruteForceDetector detector) {
+        this.detector = detector;
+    }
+
+    @ReadOperation
+    public Map<String, List<Offender>> topOffenders() {
+        return detector.getTopOffenders();
+    }
+}
@@ -0,0 +1,49 @@
+package ir.sahab.rest.common.security;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Blocks the sources of too many authentication failures (i.e., brute-force and credential stuffing attacks). It is
+ * used as an argument of {@link EnableCustomSecurity}. The failures are counted per client IP and per username (of
+ * Basic credentials) during a sliding window, and the requests of a source which has reached its maximum failures are
+ * rejected with the 429 (Too Many Requests) status code before calling the {@link Authenticator}. So the attacks can
+ * not make the server verify lots of credentials. By default, it is disabled.
+ *
+ * <p>The failures are counted by a fixed-size sketch, so the memory usage does not grow with the number of sources. The
+ * counts are approximate, and when there are lots of failing sources, a source may be blocked a bit earlier than its
+ * maximum failures. A larger {@link #sketchWidth()} makes such errors rarer.
+ *
+ * @see BruteForceDetector
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface BruteForceProtection {
+
+    /**
+     * Maximum number of authentication failures of a client IP in the window. Zero means the IPs are not blocked. Note
+     * that if the application is behind a proxy, the proxy should be trusted to resolve the client IPs (e.g., by the
+     * {@code server.forward-headers-strategy} property of Spring Boot).
+     */
+    int maxFailuresPerIp() default 0;
+
+    /**
+     * Maximum number of authentication failures of a username in the window. Zero means the usernames are not blocked.
+     */
+    int maxFailuresPerUsername() default 0;
+
+    int windowSeconds() default 300;
+
+    /**
+     * Number of counters in each row of the sketches. The sketch of each source type takes {@code 96 * sketchWidth}
+     * bytes. With the default width, the counts are overestimated by a few failures at most while there are up to
+     * about 100,000 failing sources in the window.
+     */
+    int sketchWidth() default 16_384;
+
+    /**
+     * Number of top offenders of each source type which are reported by {@link BruteForceDetector#getTopOffenders()}.
+     */
+    int topOffenders() default 10;
+}
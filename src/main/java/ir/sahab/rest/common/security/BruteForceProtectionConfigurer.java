@@ -0,0 +1,26 @@
+package ir.sahab.rest.common.security;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the beans of {@link BruteForceProtection}. It is only imported if the protection is enabled by
+ * {@link EnableCustomSecurity#bruteForceProtection()}.
+ */
+@Configuration
+public class BruteForceProtectionConfigurer {
+
+    /**
+     * Returns the detector which is called by {@link AuthenticationFilter}. It is also a Micrometer meter binder, so
+     * its metrics are registered in the meter registry of the application.
+     */
+    @Bean
+    BruteForceDetector bruteForceDetector() {
+        return new BruteForceDetector(CustomSecurityMetadata.getInstance().getBruteForceProtection());
+    }
+
+    @Bean
+    BruteForceEndpoint bruteForceEndpoint(BruteForceDetector detector) {
+        return new BruteForceEndpoint(detector);
+    }
+}
@@ -0,0 +1,171 @@
+package ir.sahab.rest.common.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.EvaluationException;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.ParseException;
+import org.springframework.expression.ParserContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.ast.BooleanLiteral;
+import org.springframework.expression.spel.ast.MethodReference;
+import org.springframework.expression.spel.ast.OpAnd;
+import org.springframework.expression.spel.ast.OpOr;
+import org.springframework.expression.spel.ast.OperatorNot;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.SpelNodeImpl;
+import org.springframework.expression.spel.ast.StringLiteral;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.security.access.expression.SecurityExpressionOperations;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+
+/**
+ * A method security expression handler which makes evaluation of method security annotations (e.g.,
+ * {@link PreAuthorize}) cheaper in two ways:
+ * <ul>
+ *     <li>Expressions are parsed in SpEL compiled mode, so after a few interpreted evaluations they run as generated
+ *     byte code.</li>
+ *     <li>The expressions that just depend on the authorities of the principal (e.g.,
+ *     <code>hasRole('admin') or hasAuthority('orders.read')</code>) memoize their decisions per authority set. Since
+ *     each annotated method has its own parsed expression, the decisions are in fact cached per (method, authority set)
+ *     pair. The authority set is identified by the {@link AuthorityIndex} of the current authentication which has a
+ *     precomputed hash, so a cache hit costs a single hash lookup.</li>
+ * </ul>
+ */
+public class CachingMethodSecurityExpressionHandler extends DefaultMethodSecurityExpressionHandler {
+
+    private static final int DEFAULT_MAX_CACHED_DECISIONS = 1024;
+
+    private static final Set<String> AUTHORITY_METHODS = new HashSet<>(
+            Arrays.asList("hasRole", "hasAnyRole", "hasAuthority", "hasAnyAuthority"));
+    private static final Set<String> CONSTANT_PROPERTIES = new HashSet<>(Arrays.asList("permitAll", "denyAll"));
+
+    public CachingMethodSecurityExpressionHandler() {
+        this(DEFAULT_MAX_CACHED_DECISIONS);
+    }
+
+    /**
+     * @param maxCachedDecisions maximum number of cached decisions (i.e., distinct authority sets) per expression.
+     */
+    public CachingMethodSecurityExpressionHandler(int maxCachedDecisions) {
+        SpelParserConfiguration configuration =
+                new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader());
+        setExpressionParser(new CachingExpressionParser(configuration, maxCachedDecisions));
+    }
+
+    /**
+     * Returns true if the value of the given expression node only depends on the authorities of the principal. The
+     * role prefix and role hierarchy are also involved in such expressions but they are fixed for a handler.
+     */
+    private static boolean isAuthorityOnly(SpelNode node) {
+        if (node instanceof OpAnd || node instanceof OpOr || node instanceof OperatorNot) {
+            for (int i = 0; i < node.getChildCount(); i++) {
+                if (!isAuthorityOnly(node.getChild(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (node instanceof MethodReference) {
+            if (!AUTHORITY_METHODS.contains(((MethodReference) node).getName())) {
+                return false;
+            }
+            for (int i = 0; i < node.getChildCount(); i++) {
+                if (!(node.getChild(i) instanceof StringLiteral)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (node instanceof PropertyOrFieldReference) {
+            return CONSTANT_PROPERTIES.contains(((PropertyOrFieldReference) node).getName());
+        }
+        return node instanceof BooleanLiteral;
+    }
+
+    /**
+     * Parser which produces compiled SpEL expressions and wraps the authority-only ones in a
+     * {@link DecisionCachingExpression}.
+     */
+    private static class CachingExpressionParser implements ExpressionParser {
+
+        private final SpelExpressionParser delegate;
+        private final SpelParserConfiguration configuration;
+        private final int maxCachedDecisions;
+
+        CachingExpressionParser(SpelParserConfiguration configuration, int maxCachedDecisions) {
+            this.delegate = new SpelExpressionParser(configuration);
+            this.configuration = configuration;
+            this.maxCachedDecisions = maxCachedDecisions;
+        }
+
+        @Override
+        public Expression parseExpression(String expressionString) throws ParseException {
+            return wrap(delegate.parseExpression(expressionString));
+        }
+
+        @Override
+        public Expression parseExpression(String expressionString, ParserContext context) throws ParseException {
+            return wrap(delegate.parseExpression(expressionString, context));
+        }
+
+        private Expression wrap(Expression expression) {
+            if (expression instanceof SpelExpression && isAuthorityOnly(((SpelExpression) expression).getAST())) {
+                SpelExpression spelExpression = (SpelExpression) expression;
+                return new DecisionCachingExpression(spelExpression.getExpressionString(),
+                        (SpelNodeImpl) spelExpression.getAST(), configuration, maxCachedDecisions);
+            }
+            return expression;
+        }
+    }
+
+    /**
+     * A SpEL expression whose boolean results are cached by the authority set of the principal.
+     */
+    private static class DecisionCachingExpression extends SpelExpression {
+
+        private final Cache<AuthorityIndex, Boolean> decisions;
+
+        DecisionCachingExpression(String expression, SpelNodeImpl ast, SpelParserConfiguration configuration,
+                int maxCachedDecisions) {
+            super(expression, ast, configuration);
+            this.decisions = CacheBuilder.newBuilder().maximumSize(maxCachedDecisions).build();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getValue(EvaluationContext context, Class<T> expectedResultType) throws EvaluationException {
+            AuthorityIndex authorityIndex = getAuthorityIndex(context);
+            if (authorityIndex == null || expectedResultType != Boolean.class) {
+                return super.getValue(context, expectedResultType);
+            }
+            Boolean decision = decisions.getIfPresent(authorityIndex);
+            if (decision == null) {
+                decision = super.getValue(context, Boolean.class);
+                if (decision != null) {
+                    decisions.put(authorityIndex, decision);
+                }
+            }
+            return (T) decision;
+        }
+
+        private static AuthorityIndex getAuthorityIndex(EvaluationContext context) {
+            Object root = context.getRootObject().getValue();
+            if (!(root instanceof SecurityExpressionOperations)) {
+                return null;
+            }
+            Authentication authentication = ((SecurityExpressionOperations) root).getAuthentication();
+            return authentication != null ? AuthorityIndex.of(authentication) : null;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ir.sahab.rest.common.security;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Authenticator which sends each request to one of its delegates, so a service can accept different kinds of clients
+ * (e.g., Basic, Bearer and API key clients) at the same time. A delegate is chosen either by the scheme of the
+ * Authorization header or by the presence of a specific header:
+ * <pre>
+ * new CompositeAuthenticator()
+ *         .withScheme(AuthorizationHeader.BASIC, new BasicAuthenticator())
+ *         .withScheme(AuthorizationHeader.BEARER, new JwtAuthenticator(jwksUrl, issuer, audience))
+ *         .withHeader(ApiKeyAuthenticator.API_KEY_HEADER, new ApiKeyAuthenticator(keyFile));
+ * </pre>
+ * The schemes are checked before the headers, and the headers are checked in the order they are added. Just the chosen
+ * delegate is called, so the other delegates do not need to try the request and fail.
+ *
+ * <p>Closing this authenticator closes its {@link AutoCloseable} delegates (e.g., the background reloaders of
+ * {@link JwtAuthenticator} and {@link ApiKeyAuthenticator}), so it can be registered as a bean like them.
+ */
+public class CompositeAuthenticator implements Authenticator, AutoCloseable {
+
+    // The authenticators by the lower-cased schemes, so a scheme is found by a single lookup.
+    private final Map<String, Authenticator> schemeAuthenticators = new HashMap<>();
+    // The authenticators by the headers, in the order they are checked.
+    private final Map<String, Authenticator> headerAuthenticators = new LinkedHashMap<>();
+
+    /**
+     * Sends the requests whose Authorization header has the given scheme (ignoring the case) to the given
+     * authenticator.
+     */
+    public CompositeAuthenticator withScheme(String scheme, Authenticator authenticator) {
+        schemeAuthenticators.putIfAbsent(scheme.toLowerCase(Locale.ROOT), authenticator);
+        return this;
+    }
+
+    /**
+     * Sends the requests which have the given header to the given authenticator.
+     */
+    public CompositeAuthenticator withHeader(String header, Authenticator authenticator) {
+        headerAuthenticators.putIfAbsent(header, authenticator);
+        return this;
+    }
+
+    @Override
+    public Authentication authenticate(HttpServletRequest request) {
+        return getAuthenticator(request).authenticate(request);
+    }
+
+    /**
+     * Closes all the delegates which are {@link AutoCloseable}, each one once, even if closing some of them fails.
+     *
+     * @throws RuntimeException the failure of the first delegate which is not closed (wrapped in an {@link
+     *     IllegalStateException} if it is a checked exception), with the other failures suppressed.
+     */
+    @Override
+    public void close() {
+        Set<Authenticator> delegates = Collections.newSetFromMap(new IdentityHashMap<>());
+        delegates.addAll(schemeAuthenticators.values());
+        delegates.addAll(headerAuthenticators.values());
+        RuntimeException failure = null;
+        for (Authenticator delegate : delegates) {
+            if (!(delegate instanceof AutoCloseable)) {
+                continue;
+            }
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = e instanceof RuntimeException
+                            ? (RuntimeException) e : new IllegalStateException("Unable to close " + delegate, e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Authenticator getAuthenticator(HttpServletRequest request) {
+        AuthorizationHeader authorizationHeader = AuthorizationHeader.parse(
+                request.getHeader(AuthorizationHeader.NAME));
+        if (authorizationHeader != null) {
+            Authenticator authenticator = schemeAuthenticators.get(
+                    authorizationHeader.getScheme().toLowerCase(Locale.ROOT));
+            if (authenticator != null) {
+                return authenticator;
+            }
+        }
+        for (Map.Entry<String, Authenticator> entry : headerAuthenticators.entrySet()) {
+            if (request.getHeader(entry.getKey()) != null) {
+                return entry.getValue();
+            }
+        }
+        throw SecurityExceptions.badCredentials(authorizationHeader == null
+                ? "No credentials are provided!" : "Unsupported authorization scheme: " + authorizationHeader);
+    }
+}
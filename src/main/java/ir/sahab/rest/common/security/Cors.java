@@ -0,0 +1,49 @@
+package ir.sahab.rest.common.security;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Configures Cross-Origin Resource Sharing (CORS) for the browser clients of other origins. It is used as an argument of
+ * {@link EnableCustomSecurity}. By default (i.e., with no allowed origins), CORS is disabled.
+ *
+ * @see CorsRequestFilter
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface Cors {
+
+    /**
+     * Origins which are allowed to call the APIs, e.g., {@code https://app.example.com}. The origins may also be
+     * patterns like {@code https://*.example.com} or {@code *} (any origin).
+     */
+    String[] allowedOrigins() default {};
+
+    String[] allowedMethods() default {"GET", "HEAD", "POST", "PUT", "PATCH", "DELETE"};
+
+    /**
+     * Request headers which the clients are allowed to send. By default, all headers are allowed.
+     */
+    String[] allowedHeaders() default {"*"};
+
+    /**
+     * Response headers (other than the simple ones) which the clients are allowed to read.
+     */
+    String[] exposedHeaders() default {};
+
+    /**
+     * Whether the browsers are allowed to send the credentials (e.g., cookies and Authorization headers) to the APIs.
+     */
+    boolean allowCredentials() default false;
+
+    /**
+     * How long the browsers can cache the result of a preflight request and not send another one for the same request.
+     */
+    long maxAgeSeconds() default 1800;
+
+    /**
+     * Maximum number of distinct preflight requests (i.e., origin, method and headers) whose responses are cached.
+     */
+    int maxCachedPreflights() default 10_000;
+}
@@ -0,0 +1,26 @@
+package ir.sahab.rest.common.security;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Registers the {@link CorsRequestFilter}. It is only imported if CORS is enabled by
+ * {@link EnableCustomSecurity#cors()}.
+ */
+@Configuration
+public class CorsConfigurer {
+
+    /**
+     * Registers the filter before all other filters (including the Spring security and request logging filters), so
+     * the preflight requests are answered without any other work.
+     */
+    @Bean
+    FilterRegistrationBean<CorsRequestFilter> corsRequestFilter() {
+        FilterRegistrationBean<CorsRequestFilter> registration =
+                new FilterRegistrationBean<>(new CorsRequestFilter(CustomSecurityMetadata.getInstance().getCors()));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,176 @@
+package ir.sahab.rest.common.security;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.StringUtils;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Web filter which handles the CORS requests according to the {@link Cors} argument of {@link EnableCustomSecurity}.
+ * It is registered before all other filters, so the preflight requests (which have no credentials) are answered
+ * before any authentication or request logging. The responses of preflight requests are cached for each origin,
+ * requested method and requested headers, so checking them against the configuration is done once. The preflight
+ * responses also have the Access-Control-Max-Age header, so the browsers do not send a preflight before each request.
+ *
+ * <p>The actual (non-preflight) CORS requests just get the Access-Control-Allow-Origin and related headers if their
+ * origin is allowed, and they continue through the filter chain like any other request.
+ */
+public final class CorsRequestFilter extends OncePerRequestFilter {
+
+    private static final String VARY_HEADERS = String.join(", ", HttpHeaders.ORIGIN,
+            HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+
+    private final CorsConfiguration configuration;
+    private final String exposedHeaders;
+    private final String maxAge;
+    private final LoadingCache<PreflightKey, Response> preflightResponses;
+    private final LoadingCache<String, Response> actualResponses;
+
+    public CorsRequestFilter(Cors cors) {
+        configuration = new CorsConfiguration();
+        configuration.setAllowedOriginPatterns(Arrays.asList(cors.allowedOrigins()));
+        configuration.setAllowedMethods(Arrays.asList(cors.allowedMethods()));
+        configuration.setAllowedHeaders(Arrays.asList(cors.allowedHeaders()));
+        configuration.setAllowCredentials(cors.allowCredentials());
+        exposedHeaders = cors.exposedHeaders().length == 0 ? null : String.join(", ", cors.exposedHeaders());
+        maxAge = String.valueOf(cors.maxAgeSeconds());
+        // The keys come from the requests, so the caches are bounded to not be filled by made-up origins and headers.
+        preflightResponses = CacheBuilder.newBuilder()
+                .maximumSize(cors.maxCachedPreflights())
+                .build(new CacheLoader<PreflightKey, Response>() {
+                    @Override
+                    public Response load(PreflightKey key) {
+                        return checkPreflight(key);
+                    }
+                });
+        actualResponses = CacheBuilder.newBuilder()
+                .maximumSize(cors.maxCachedPreflights())
+                .build(new CacheLoader<String, Response>() {
+                    @Override
+                    public Response load(String origin) {
+                        String allowedOrigin = configuration.checkOrigin(origin);
+                        return allowedOrigin == null ? Response.REJECTED : new Response(allowedOrigin, null, null);
+                    }
+                });
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!CorsUtils.isCorsRequest(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String origin = request.getHeader(HttpHeaders.ORIGIN);
+        if (CorsUtils.isPreFlightRequest(request)) {
+            Response preflightResponse = preflightResponses.getUnchecked(new PreflightKey(origin,
+                    request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD),
+                    request.getHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS)));
+            response.setHeader(HttpHeaders.VARY, VARY_HEADERS);
+            if (preflightResponse == Response.REJECTED) {
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+            setAllowOrigin(response, preflightResponse);
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, preflightResponse.allowMethods);
+            if (preflightResponse.allowHeaders != null) {
+                response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, preflightResponse.allowHeaders);
+            }
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_MAX_AGE, maxAge);
+            response.setStatus(HttpServletResponse.SC_OK);
+            return;
+        }
+        Response actualResponse = actualResponses.getUnchecked(origin);
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ORIGIN);
+        if (actualResponse != Response.REJECTED) {
+            setAllowOrigin(response, actualResponse);
+            if (exposedHeaders != null) {
+                response.setHeader(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, exposedHeaders);
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private void setAllowOrigin(HttpServletResponse response, Response corsResponse) {
+        response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, corsResponse.allowOrigin);
+        if (Boolean.TRUE.equals(configuration.getAllowCredentials())) {
+            response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+        }
+    }
+
+    private Response checkPreflight(PreflightKey key) {
+        String allowedOrigin = configuration.checkOrigin(key.origin);
+        HttpMethod method = HttpMethod.resolve(key.method);
+        List<HttpMethod> allowedMethods = method == null ? null : configuration.checkHttpMethod(method);
+        List<String> requestedHeaders = key.headers == null ? null
+                : Arrays.asList(StringUtils.tokenizeToStringArray(key.headers, ","));
+        List<String> allowedHeaders = requestedHeaders == null ? null : configuration.checkHeaders(requestedHeaders);
+        if (allowedOrigin == null || allowedMethods == null || (requestedHeaders != null && allowedHeaders == null)) {
+            return Response.REJECTED;
+        }
+        return new Response(allowedOrigin, StringUtils.collectionToDelimitedString(allowedMethods, ", "),
+                allowedHeaders == null || allowedHeaders.isEmpty() ? null
+                        : StringUtils.collectionToDelimitedString(allowedHeaders, ", "));
+    }
+
+    /**
+     * The CORS headers of the response to a request.
+     */
+    private static class Response {
+
+        static final Response REJECTED = new Response(null, null, null);
+
+        final String allowOrigin;
+        final String allowMethods;
+        final String allowHeaders;
+
+        Response(String allowOrigin, String allowMethods, String allowHeaders) {
+            this.allowOrigin = allowOrigin;
+            this.allowMethods = allowMethods;
+            this.allowHeaders = allowHeaders;
+        }
+    }
+
+    /**
+     * The parts of a preflight request which determine its response.
+     */
+    private static class PreflightKey {
+
+        final String origin;
+        final String method;
+        final String headers;
+
+        PreflightKey(String origin, String method, String headers) {
+            this.origin = origin;
+            this.method = method;
+            this.headers = headers;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof PreflightKey)) {
+                return false;
+            }
+            PreflightKey that = (PreflightKey) other;
+            return origin.equals(that.origin) && method.equals(that.method)
+                    && (headers == null ? that.headers == null : headers.equals(that.headers));
+        }
+
+        @Override
+        public int hashCode() {
+            return (origin.hashCode() * 31 + method.hashCode()) * 31 + (headers == null ? 0 : headers.hashCode());
+        }
+    }
+}
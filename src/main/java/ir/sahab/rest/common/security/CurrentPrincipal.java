@@ -1,12 +1,11 @@
 package ir.sahab.rest.common.security;
 
-import java.util.Collection;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 /**
- * A utility class that simplifies getting name or checking authorities of current authenticated principal.
+ * A utility class that simplifies getting name or checking authorities of current authenticated principal. Authority
+ * checks are answered from the {@link AuthorityIndex} of the current authentication, so each check is a hash lookup
+ * regardless of the number of authorities the principal has.
  */
 public final class CurrentPrincipal {
 
@@ -19,16 +18,24 @@ public final class CurrentPrincipal {
     }
 
     public static boolean hasAuthority(String selectedAuthority) {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication != null) {
-            @SuppressWarnings("unchecked")
-            Collection<GrantedAuthority> authorities = (Collection<GrantedAuthority>) authentication.getAuthorities();
-            for (GrantedAuthority authority : authorities) {
-                if (authority.getAuthority().equals(selectedAuthority)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return getAuthorityIndex().contains(selectedAuthority);
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns true if the current principal has at least one of the given authorities.
+     */
+    public static boolean hasAnyAuthority(String... authorities) {
+        return getAuthorityIndex().containsAny(authorities);
+    }
+
+    /**
+     * Returns true if the current principal has all of the given authorities.
+     */
+    public static boolean hasAllAuthorities(String... authorities) {
+        return getAuthorityIndex().containsAll(authorities);
+    }
+
+    private static AuthorityIndex getAuthorityIndex() {
+        return AuthorityIndex.of(SecurityContextHolder.getContext().getAuthentication());
+    }
+}
@@ -1,5 +1,7 @@
 package ir.sahab.rest.common.security;
 
+import java.util.Arrays;
+import org.springframework.core.annotation.MergedAnnotation;
 import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
@@ -14,6 +16,10 @@ public class CustomSecurityMetadata {
     private String applicationBasePathPattern;
     private String[] ignoredPaths;
     private String authorityPrefix;
+    private RateLimit[] rateLimits;
+    private BruteForceProtection bruteForceProtection;
+    private Cors cors;
+    private boolean stacklessExceptions;
 
     public static CustomSecurityMetadata getInstance() {
         return instance;
@@ -30,6 +36,15 @@ public class CustomSecurityMetadata {
             throw new IllegalArgumentException(
                     "You must provide application base path pattern!, eg. /backend-api/** ");
         }
+        MergedAnnotation<EnableCustomSecurity> annotation = securityAttributes.getAnnotations()
+                .get(EnableCustomSecurity.class);
+        rateLimits = Arrays.stream(annotation.getAnnotationArray("rateLimits", RateLimit.class))
+                .map(MergedAnnotation::synthesize)
+                .toArray(RateLimit[]::new);
+        bruteForceProtection = annotation.getAnnotation("bruteForceProtection", BruteForceProtection.class)
+                .synthesize();
+        cors = annotation.getAnnotation("cors", Cors.class).synthesize();
+        stacklessExceptions = (Boolean) allAnnotationAttributes.getFirst("stacklessExceptions");
     }
 
     public String getApplicationBasePathPattern() {
@@ -43,4 +58,28 @@ public class CustomSecurityMetadata {
     public String getAuthorityPrefix() {
         return authorityPrefix;
     }
+
+    public RateLimit[] getRateLimits() {
+        return rateLimits;
+    }
+
+    public BruteForceProtection getBruteForceProtection() {
+        return bruteForceProtection;
+    }
+
+    public boolean isBruteForceProtectionEnabled() {
+        return bruteForceProtection.maxFailuresPerIp() > 0 || bruteForceProtection.maxFailuresPerUsername() > 0;
+    }
+
+    public Cors getCors() {
+        return cors;
+    }
+
+    public boolean isCorsEnabled() {
+        return cors.allowedOrigins().length > 0;
+    }
+
+    public boolean isStacklessExceptions() {
+        return stacklessExceptions;
+    }
 }
\ No newline at end of file
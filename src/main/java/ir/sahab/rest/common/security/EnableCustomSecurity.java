@@ -6,6 +6,8 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.ImportSelector;
 import org.springframework.core.type.AnnotationMetadata;
@@ -27,6 +29,28 @@ public @interface EnableCustomSecurity {
 
     String[] ignoredPaths() default {};
 
+    /**
+     * Limits the rate of the requests each authenticated principal can send to the specific paths. By default, there
+     * is no limit.
+     */
+    RateLimit[] rateLimits() default {};
+
+    /**
+     * Blocks the client IPs and usernames which have too many authentication failures. By default, it is disabled.
+     */
+    BruteForceProtection bruteForceProtection() default @BruteForceProtection;
+
+    /**
+     * Allows the browser clients of other origins to call the APIs. By default, it is disabled.
+     */
+    Cors cors() default @Cors;
+
+    /**
+     * If true, the authentication exceptions thrown by the authenticators of this library do not capture their stack
+     * traces. It makes rejecting requests with invalid credentials cheaper, e.g., during a brute-force attack.
+     */
+    boolean stacklessExceptions() default false;
+
     /**
      * It selects {@link SecurityConfigurer} configuration to apply.
      */
@@ -36,7 +60,15 @@ public @interface EnableCustomSecurity {
         public String[] selectImports(AnnotationMetadata classMetadata) {
             CustomSecurityMetadata customSecurityMetadata = CustomSecurityMetadata.getInstance();
             customSecurityMetadata.fillFrom(classMetadata);
-            return new String[] {SecurityConfigurer.class.getName()};
+            List<String> imports = new ArrayList<>();
+            imports.add(SecurityConfigurer.class.getName());
+            if (customSecurityMetadata.isBruteForceProtectionEnabled()) {
+                imports.add(BruteForceProtectionConfigurer.class.getName());
+            }
+            if (customSecurityMetadata.isCorsEnabled()) {
+                imports.add(CorsConfigurer.class.getName());
+            }
+            return imports.toArray(new String[0]);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package ir.sahab.rest.common.security;
+
+import ir.sahab.rest.common.security.Authenticator.BasicAuthenticator;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Basic authenticator which also verifies the passwords against the hashed passwords of a {@link UserDetailsService}
+ * (e.g., bcrypt or argon2 hashes checked by the given {@link PasswordEncoder}).
+ *
+ * <p>Slow password hashes are designed to cost a lot of CPU, so a burst of requests (e.g., a credential stuffing attack)
+ * could take all the CPU of the server. To prevent this, the passwords are verified on a dedicated pool of a few threads
+ * with a bounded queue. When the queue is full, the request is rejected by an {@link AuthenticationOverloadException}
+ * which makes a 503 (Service Unavailable) response. Also the successfully verified credentials are cached for a while,
+ * so the clients which send the same credentials on each request, pay for the slow hash just once. The cache keeps the
+ * credentials by their HMACs with a random key, so the cache does not reveal the passwords. Note that a changed password
+ * is still accepted until its cache entry expires.
+ */
+public class HashedPasswordAuthenticator implements Authenticator, AutoCloseable {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 100;
+    private static final int DEFAULT_MAX_CACHED_CREDENTIALS = 10_000;
+    private static final long DEFAULT_CACHE_SECONDS = 300;
+
+    private final BasicAuthenticator basicAuthenticator = new BasicAuthenticator();
+    private final AccountStatusUserDetailsChecker userDetailsChecker = new AccountStatusUserDetailsChecker();
+    private final UserDetailsService userDetailsService;
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor verifier;
+    private final TokenCache<Authentication> verifiedCredentials;
+    private final long cacheMillis;
+    // Hash of a random password which is checked for unknown users, so they take as long as the known users.
+    private final String unknownUserPassword;
+
+    /**
+     * Creates an authenticator which verifies the passwords on as many threads as the CPUs with a queue of 100 requests
+     * and caches the verified credentials for 5 minutes.
+     */
+    public HashedPasswordAuthenticator(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder) {
+        this(userDetailsService, passwordEncoder, Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY,
+                DEFAULT_MAX_CACHED_CREDENTIALS, DEFAULT_CACHE_SECONDS);
+    }
+
+    /**
+     * @param verifierThreads number of the threads verifying the passwords.
+     * @param queueCapacity maximum number of the requests waiting for a verifier thread.
+     * @param maxCachedCredentials maximum number of the cached verified credentials.
+     * @param cacheSeconds time of caching the verified credentials.
+     */
+    public HashedPasswordAuthenticator(UserDetailsService userDetailsService, PasswordEncoder passwordEncoder,
+            int verifierThreads, int queueCapacity, int maxCachedCredentials, long cacheSeconds) {
+        this.userDetailsService = userDetailsService;
+        this.passwordEncoder = passwordEncoder;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.verifier = new ThreadPoolExecutor(verifierThreads, verifierThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-verifier-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.verifiedCredentials = new TokenCache<>(maxCachedCredentials, cacheSeconds, TimeUnit.SECONDS);
+        this.cacheMillis = TimeUnit.SECONDS.toMillis(cacheSeconds);
+        this.unknownUserPassword = passwordEncoder.encode(UUID.randomUUID().toString());
+    }
+
+    @Override
+    public Authentication authenticate(HttpServletRequest request) {
+        Authentication credentials = basicAuthenticator.authenticate(request);
+        String username = credentials.getName();
+        String password = (String) credentials.getCredentials();
+        // Usernames of basic authentication have no colon, so the joined credentials are unique.
+        String cacheKey = username + ':' + password;
+        Authentication authentication = verifiedCredentials.get(cacheKey);
+        if (authentication != null) {
+            return authentication;
+        }
+
+        Future<Authentication> verification;
+        try {
+            verification = verifier.submit(() -> verify(username, password));
+        } catch (RejectedExecutionException e) {
+            throw new AuthenticationOverloadException("Too many credentials are waiting for verification!");
+        }
+        try {
+            authentication = verification.get();
+        } catch (InterruptedException e) {
+            verification.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationServiceException("Interrupted while verifying the credentials!", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AuthenticationException) {
+                throw (AuthenticationException) e.getCause();
+            }
+            throw new AuthenticationServiceException("Unable to verify the credentials!", e.getCause());
+        }
+        verifiedCredentials.put(cacheKey, authentication, System.currentTimeMillis() + cacheMillis);
+        return authentication;
+    }
+
+    @Override
+    public void close() {
+        verifier.shutdownNow();
+    }
+
+    private Authentication verify(String username, String password) {
+        UserDetails user;
+        try {
+            user = userDetailsService.loadUserByUsername(username);
+        } catch (UsernameNotFoundException e) {
+            passwordEncoder.matches(password, unknownUserPassword);
+            throw SecurityExceptions.badCredentials("Invalid username/password!");
+        }
+        if (!passwordEncoder.matches(password, user.getPassword())) {
+            throw SecurityExceptions.badCredentials("Invalid username/password!");
+        }
+        userDetailsChecker.check(user);
+        // The user is wrapped once here, so the authorities of cached credentials are not indexed again on each request.
+        return new AuthenticationToken(
+                new UsernamePasswordAuthenticationToken(user.getUsername(), null, user.getAuthorities()));
+    }
+}
@@ -0,0 +1,155 @@
+package ir.sahab.rest.common.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Authenticator for opaque OAuth2 access tokens which are provided as bearer tokens in the Authorization header. Each
+ * token is validated by the token introspection endpoint (RFC 7662) of the identity provider. The "sub" (or "username")
+ * field of the introspection response is used as the name of the principal and the values of its "scope" field are
+ * mapped to the granted authorities, prefixed by the {@link EnableCustomSecurity#authorityPrefix() authorityPrefix}.
+ *
+ * <p>The introspection call dominates the latency of the requests, so:
+ * <ul>
+ *     <li>Active tokens are cached until they expire, but not longer than a maximum time, so revoked tokens are
+ *     eventually rejected.</li>
+ *     <li>Inactive tokens are cached for a short time, so repeated requests with an invalid token (e.g., by an
+ *     attacker) do not reach the identity provider.</li>
+ *     <li>The responses are read completely, so the underlying connections are kept alive and reused by the JDK.</li>
+ *     <li>Connecting to and reading from the endpoint have timeouts. A request whose token can not be introspected in
+ *     time fails with a {@link BadCredentialsException}.</li>
+ * </ul>
+ */
+public class IntrospectionAuthenticator implements Authenticator {
+
+    private static final int DEFAULT_TIMEOUT_MILLIS = 2000;
+    private static final int DEFAULT_MAX_CACHED_TOKENS = 10_000;
+    private static final long DEFAULT_MAX_ACTIVE_CACHE_SECONDS = 300;
+    private static final long DEFAULT_INACTIVE_CACHE_SECONDS = 10;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final URL introspectionUrl;
+    private final String clientAuthorization;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final TokenCache<Authentication> activeTokens;
+    private final TokenCache<Boolean> inactiveTokens;
+    private final long inactiveCacheMillis;
+
+    /**
+     * Creates an authenticator with default timeouts (2 seconds) and caches.
+     *
+     * @param introspectionUrl URL of the introspection endpoint.
+     * @param clientId the client id which this service is registered by in the identity provider.
+     * @param clientSecret the secret of the client.
+     */
+    public IntrospectionAuthenticator(String introspectionUrl, String clientId, String clientSecret) {
+        this(introspectionUrl, clientId, clientSecret, DEFAULT_TIMEOUT_MILLIS, DEFAULT_TIMEOUT_MILLIS,
+                DEFAULT_MAX_CACHED_TOKENS, DEFAULT_MAX_ACTIVE_CACHE_SECONDS, DEFAULT_INACTIVE_CACHE_SECONDS);
+    }
+
+    /**
+     * @param introspectionUrl URL of the introspection endpoint.
+     * @param clientId the client id which this service is registered by in the identity provider.
+     * @param clientSecret the secret of the client.
+     * @param connectTimeoutMillis timeout of connecting to the introspection endpoint.
+     * @param readTimeoutMillis timeout of reading the response of the introspection endpoint.
+     * @param maxCachedTokens maximum number of cached active tokens (and also inactive tokens).
+     * @param maxActiveCacheSeconds maximum time of caching an active token even if it expires later.
+     * @param inactiveCacheSeconds time of caching an inactive token.
+     */
+    public IntrospectionAuthenticator(String introspectionUrl, String clientId, String clientSecret,
+            int connectTimeoutMillis, int readTimeoutMillis, int maxCachedTokens, long maxActiveCacheSeconds,
+            long inactiveCacheSeconds) {
+        try {
+            this.introspectionUrl = new URL(introspectionUrl);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid introspection URL: " + introspectionUrl, e);
+        }
+        this.clientAuthorization = "Basic " + Base64.getEncoder().encodeToString(
+                (clientId + ":" + clientSecret).getBytes(StandardCharsets.UTF_8));
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.activeTokens = new TokenCache<>(maxCachedTokens, maxActiveCacheSeconds, TimeUnit.SECONDS);
+        this.inactiveTokens = new TokenCache<>(maxCachedTokens, inactiveCacheSeconds, TimeUnit.SECONDS);
+        this.inactiveCacheMillis = TimeUnit.SECONDS.toMillis(inactiveCacheSeconds);
+    }
+
+    @Override
+    public Authentication authenticate(HttpServletRequest request) {
+        AuthorizationHeader authorizationHeader = AuthorizationHeader.parse(
+                request.getHeader(AuthorizationHeader.NAME));
+        if (authorizationHeader == null || !authorizationHeader.hasScheme(AuthorizationHeader.BEARER)) {
+            throw SecurityExceptions.badCredentials("No bearer token is provided!");
+        }
+        String token = authorizationHeader.getCredentialsString();
+        Authentication authentication = activeTokens.get(token);
+        if (authentication != null) {
+            return authentication;
+        }
+        if (inactiveTokens.get(token) != null) {
+            throw SecurityExceptions.badCredentials("Token is not active!");
+        }
+
+        JsonNode response = introspect(token);
+        if (!response.path("active").asBoolean(false)) {
+            inactiveTokens.put(token, Boolean.TRUE, System.currentTimeMillis() + inactiveCacheMillis);
+            throw SecurityExceptions.badCredentials("Token is not active!");
+        }
+        String subject = response.path("sub").asText(response.path("username").asText(null));
+        if (subject == null) {
+            throw SecurityExceptions.badCredentials("Introspected token has no subject!");
+        }
+        // The token is wrapped once here, so the authorities of cached tokens are not indexed again on each request.
+        authentication = new AuthenticationToken(new UsernamePasswordAuthenticationToken(
+                subject, null, TokenClaims.toAuthorities(response.path("scope"))));
+        activeTokens.put(token, authentication, TokenClaims.getExpiresAtMillis(response));
+        return authentication;
+    }
+
+    private JsonNode introspect(String token) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) introspectionUrl.openConnection();
+            connection.setConnectTimeout(connectTimeoutMillis);
+            connection.setReadTimeout(readTimeoutMillis);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Authorization", clientAuthorization);
+            connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+            connection.setRequestProperty("Accept", "application/json");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(("token=" + URLEncoder.encode(token, StandardCharsets.UTF_8.name())
+                        + "&token_type_hint=access_token").getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                // The body is still consumed, so the connection can be reused.
+                try (InputStream error = connection.getErrorStream()) {
+                    if (error != null) {
+                        StreamUtils.drain(error);
+                    }
+                }
+                throw SecurityExceptions.badCredentials("Token introspection failed with status " + status);
+            }
+            try (InputStream input = connection.getInputStream()) {
+                return objectMapper.readTree(StreamUtils.copyToByteArray(input));
+            }
+        } catch (IOException e) {
+            throw SecurityExceptions.badCredentials("Token introspection failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ir.sahab.rest.common.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * The RSA public keys of a JSON Web Key Set (JWKS) document which is loaded from a file or URL. The keys are loaded
+ * once on creation and then refreshed periodically in a background thread, so looking up a key never blocks on I/O. A
+ * failed refresh is just logged and the previous keys are kept.
+ */
+final class JsonWebKeySet implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonWebKeySet.class);
+
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static final long MIN_ON_DEMAND_REFRESH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final String location;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService refresher;
+    private final AtomicLong lastOnDemandRefreshMillis = new AtomicLong();
+
+    private volatile Map<String, PublicKey> keys;
+
+    /**
+     * @param location location of the JWKS document, either a URL (e.g., https://idp/jwks.json) or a file path
+     *     (optionally prefixed by "file:" or "classpath:").
+     * @throws IllegalStateException if the initial load of the keys fails.
+     */
+    JsonWebKeySet(String location, long refreshInterval, TimeUnit unit) {
+        this.location = location;
+        try {
+            this.keys = load();
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to load JSON web keys from " + location, e);
+        }
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwks-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, unit);
+    }
+
+    /**
+     * Returns the key with the given id or null if there is no such key. If the id is null, the only key of the set is
+     * returned (if there is just one key). When a key is not found, a refresh is requested, because the keys may have
+     * been rotated by the issuer since the last refresh.
+     */
+    PublicKey get(String keyId) {
+        Map<String, PublicKey> currentKeys = keys;
+        PublicKey key = keyId == null
+                ? (currentKeys.size() == 1 ? currentKeys.values().iterator().next() : null)
+                : currentKeys.get(keyId);
+        if (key == null) {
+            requestRefresh();
+        }
+        return key;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private void requestRefresh() {
+        long now = System.currentTimeMillis();
+        long last = lastOnDemandRefreshMillis.get();
+        // Unknown key ids are under the control of the clients, so they must not be able to flood the issuer.
+        if (now - last >= MIN_ON_DEMAND_REFRESH_INTERVAL_MILLIS && lastOnDemandRefreshMillis.compareAndSet(last, now)) {
+            refresher.execute(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        try {
+            keys = load();
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            logger.warn("Unable to refresh JSON web keys from {}. The previous keys are kept.", location, e);
+        }
+    }
+
+    private Map<String, PublicKey> load() throws IOException, GeneralSecurityException {
+        URL url = ResourceUtils.getURL(location);
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        JsonNode document;
+        try (InputStream input = connection.getInputStream()) {
+            document = objectMapper.readTree(input);
+        }
+        Map<String, PublicKey> loadedKeys = new HashMap<>();
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        for (JsonNode key : document.path("keys")) {
+            if (!"RSA".equals(key.path("kty").asText()) || "enc".equals(key.path("use").asText())) {
+                continue;
+            }
+            BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(key.path("n").asText()));
+            BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(key.path("e").asText()));
+            loadedKeys.put(key.path("kid").asText(null),
+                    keyFactory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+        }
+        return Collections.unmodifiableMap(loadedKeys);
+    }
+}
@@ -0,0 +1,178 @@
+package ir.sahab.rest.common.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Authenticator which extracts the principal from a JSON Web Token (JWT) provided as a bearer token in the
+ * Authorization header. The tokens must be signed by one of the RSA keys (RS256, RS384 or RS512) of a JSON Web Key Set
+ * which is loaded from a file or URL and refreshed in the background. The subject of a token is used as the name of the
+ * principal, and the values of its authorities claim (either a JSON array or a space separated string) are mapped to
+ * the granted authorities, prefixed by the {@link EnableCustomSecurity#authorityPrefix() authorityPrefix}. The tokens
+ * must also be issued by the expected issuer ("iss" claim) for the expected audience ("aud" claim), otherwise a token
+ * which the same identity provider has issued for another service would be accepted too.
+ *
+ * <p>Verifying an RSA signature is much more expensive than the rest of the request processing, so the authentication
+ * of each verified token is cached (by the hash of the token) until the token expires. So the signature of a token is
+ * verified at most once as long as it stays in the cache, even if several requests with the same new token arrive at
+ * once.
+ */
+public class JwtAuthenticator implements Authenticator, AutoCloseable {
+
+    private static final Map<String, String> SIGNATURE_ALGORITHMS = new HashMap<>();
+
+    static {
+        SIGNATURE_ALGORITHMS.put("RS256", "SHA256withRSA");
+        SIGNATURE_ALGORITHMS.put("RS384", "SHA384withRSA");
+        SIGNATURE_ALGORITHMS.put("RS512", "SHA512withRSA");
+    }
+
+    private static final long DEFAULT_REFRESH_INTERVAL_MINUTES = 10;
+    private static final int DEFAULT_MAX_CACHED_TOKENS = 10_000;
+    // The upper bound of caching tokens which have no expiration time.
+    private static final long MAX_CACHE_TIME_MINUTES = 60;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonWebKeySet keySet;
+    private final TokenCache<Authentication> verifiedTokens;
+    private final String issuer;
+    private final String audience;
+    private final String authoritiesClaim;
+
+    /**
+     * Creates an authenticator which reads the authorities from the "authorities" claim of the tokens.
+     *
+     * @param jwksLocation location of the JSON Web Key Set, either a URL (e.g., https://idp/jwks.json) or a file path
+     *     (optionally prefixed by "file:" or "classpath:").
+     * @param issuer the expected issuer of the tokens, or null to accept any issuer.
+     * @param audience the expected audience of the tokens (e.g., the name of this service), or null to accept any
+     *     audience.
+     */
+    public JwtAuthenticator(String jwksLocation, String issuer, String audience) {
+        this(jwksLocation, issuer, audience, "authorities", DEFAULT_REFRESH_INTERVAL_MINUTES, TimeUnit.MINUTES,
+                DEFAULT_MAX_CACHED_TOKENS);
+    }
+
+    /**
+     * @param jwksLocation location of the JSON Web Key Set, either a URL (e.g., https://idp/jwks.json) or a file path
+     *     (optionally prefixed by "file:" or "classpath:").
+     * @param issuer the expected issuer of the tokens, or null to accept any issuer.
+     * @param audience the expected audience of the tokens (e.g., the name of this service), or null to accept any
+     *     audience.
+     * @param authoritiesClaim name of the claim which contains the authorities of the principal (e.g., scope).
+     * @param refreshInterval the interval of reloading the key set.
+     * @param maxCachedTokens maximum number of verified tokens to cache.
+     */
+    public JwtAuthenticator(String jwksLocation, String issuer, String audience, String authoritiesClaim,
+            long refreshInterval, TimeUnit unit, int maxCachedTokens) {
+        this.keySet = new JsonWebKeySet(jwksLocation, refreshInterval, unit);
+        this.verifiedTokens = new TokenCache<>(maxCachedTokens, MAX_CACHE_TIME_MINUTES, TimeUnit.MINUTES);
+        this.issuer = issuer;
+        this.audience = audience;
+        this.authoritiesClaim = authoritiesClaim;
+    }
+
+    @Override
+    public Authentication authenticate(HttpServletRequest request) {
+        AuthorizationHeader authorizationHeader = AuthorizationHeader.parse(
+                request.getHeader(AuthorizationHeader.NAME));
+        if (authorizationHeader == null || !authorizationHeader.hasScheme(AuthorizationHeader.BEARER)) {
+            throw SecurityExceptions.badCredentials("No bearer token is provided!");
+        }
+        return verifiedTokens.get(authorizationHeader.getCredentialsString(), this::verify);
+    }
+
+    @Override
+    public void close() {
+        keySet.close();
+    }
+
+    private TokenCache.Entry<Authentication> verify(String token) {
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 3) {
+            throw SecurityExceptions.badCredentials("Malformed JWT!");
+        }
+        JsonNode header = decodeJson(parts[0]);
+        JsonNode claims = decodeJson(parts[1]);
+
+        String algorithm = SIGNATURE_ALGORITHMS.get(header.path("alg").asText());
+        if (algorithm == null) {
+            throw SecurityExceptions.badCredentials("Unsupported JWT algorithm: " + header.path("alg").asText());
+        }
+        PublicKey key = keySet.get(header.path("kid").asText(null));
+        if (key == null) {
+            throw SecurityExceptions.badCredentials("Unknown JWT key: " + header.path("kid").asText(null));
+        }
+        if (!isSignatureValid(algorithm, key, parts)) {
+            throw SecurityExceptions.badCredentials("Invalid JWT signature!");
+        }
+
+        long now = System.currentTimeMillis();
+        long expiresAtMillis = TokenClaims.getExpiresAtMillis(claims);
+        if (expiresAtMillis <= now) {
+            throw SecurityExceptions.credentialsExpired("JWT is expired!");
+        }
+        if (claims.has("nbf") && TimeUnit.SECONDS.toMillis(claims.get("nbf").asLong()) > now) {
+            throw SecurityExceptions.badCredentials("JWT is not valid yet!");
+        }
+        if (issuer != null && !issuer.equals(claims.path("iss").asText(null))) {
+            throw SecurityExceptions.badCredentials("JWT is not issued by the expected issuer!");
+        }
+        if (audience != null && !hasAudience(claims.path("aud"))) {
+            throw SecurityExceptions.badCredentials("JWT is not issued for the expected audience!");
+        }
+        String subject = claims.path("sub").asText(null);
+        if (subject == null) {
+            throw SecurityExceptions.badCredentials("JWT has no subject!");
+        }
+
+        // The token is wrapped once here, so the authorities of cached tokens are not indexed again on each request.
+        Authentication authentication = new AuthenticationToken(new UsernamePasswordAuthenticationToken(
+                subject, null, TokenClaims.toAuthorities(claims.path(authoritiesClaim))));
+        return new TokenCache.Entry<>(authentication, expiresAtMillis);
+    }
+
+    private boolean hasAudience(JsonNode audienceClaim) {
+        // The audience claim is either a single string or an array of strings.
+        if (audienceClaim.isArray()) {
+            for (JsonNode value : audienceClaim) {
+                if (audience.equals(value.asText(null))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return audience.equals(audienceClaim.asText(null));
+    }
+
+    private static boolean isSignatureValid(String algorithm, PublicKey key, String[] parts) {
+        try {
+            Signature signature = Signature.getInstance(algorithm);
+            signature.initVerify(key);
+            signature.update((parts[0] + '.' + parts[1]).getBytes(StandardCharsets.US_ASCII));
+            return signature.verify(Base64.getUrlDecoder().decode(parts[2]));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private JsonNode decodeJson(String part) {
+        try {
+            return objectMapper.readTree(Base64.getUrlDecoder().decode(part));
+        } catch (IOException | IllegalArgumentException e) {
+            throw SecurityExceptions.badCredentials("Malformed JWT!", e);
+        }
+    }
+}
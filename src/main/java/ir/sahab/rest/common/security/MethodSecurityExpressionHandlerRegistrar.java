@@ -0,0 +1,46 @@
+package ir.sahab.rest.common.security;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
+
+/**
+ * Registers a {@link CachingMethodSecurityExpressionHandler} as the handler of method security expressions, unless the
+ * application has its own {@link MethodSecurityExpressionHandler} bean. Spring security uses the handler bean only if
+ * there is exactly one of them, so registering another one next to the handler of the application would make both of
+ * them ignored. The beans are checked after all the configuration classes are loaded, since the handler of the
+ * application may be declared anywhere (e.g., by its main class, whose beans are loaded after the imported ones).
+ *
+ * <p>The registered handler uses the authority prefix of {@link EnableCustomSecurity} as its role prefix, and the
+ * {@link RoleHierarchy} and {@link PermissionEvaluator} beans of the application if there are any.
+ */
+final class MethodSecurityExpressionHandlerRegistrar implements BeanDefinitionRegistryPostProcessor {
+
+    static final String BEAN_NAME = "methodSecurityExpressionHandler";
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) {
+        if (!(registry instanceof ListableBeanFactory) || ((ListableBeanFactory) registry).getBeanNamesForType(
+                MethodSecurityExpressionHandler.class, true, false).length > 0) {
+            return;
+        }
+        BeanFactory beanFactory = (BeanFactory) registry;
+        registry.registerBeanDefinition(BEAN_NAME, new RootBeanDefinition(MethodSecurityExpressionHandler.class, () -> {
+            CachingMethodSecurityExpressionHandler handler = new CachingMethodSecurityExpressionHandler();
+            handler.setDefaultRolePrefix(CustomSecurityMetadata.getInstance().getAuthorityPrefix());
+            beanFactory.getBeanProvider(RoleHierarchy.class).ifAvailable(handler::setRoleHierarchy);
+            beanFactory.getBeanProvider(PermissionEvaluator.class).ifAvailable(handler::setPermissionEvaluator);
+            return handler;
+        }));
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) {
+    }
+}
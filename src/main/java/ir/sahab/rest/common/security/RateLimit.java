@@ -0,0 +1,35 @@
+package ir.sahab.rest.common.security;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Limits the rate of the requests each authenticated principal can send to the paths matching a pattern. It is used as
+ * an argument of {@link EnableCustomSecurity}. Each principal has a token bucket of {@link #requests()} tokens which is
+ * refilled continuously during {@link #periodSeconds()}, so a principal can send a burst of up to {@link #requests()}
+ * requests and after that one request per {@code periodSeconds / requests} seconds.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+public @interface RateLimit {
+
+    /**
+     * Ant style pattern of the paths this limit applies to (e.g., /api/orders/**). If a request matches the patterns of
+     * several limits, just the first one is applied.
+     */
+    String pathPattern();
+
+    /**
+     * Maximum number of requests a principal can send in each period.
+     */
+    long requests();
+
+    long periodSeconds() default 1;
+
+    /**
+     * Maximum number of principals whose buckets are kept in memory. If there are more active principals, the least
+     * recently used buckets are dropped, which means their principals get a full bucket on their next request.
+     */
+    int maxPrincipals() default 100_000;
+}
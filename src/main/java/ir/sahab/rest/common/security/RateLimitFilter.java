@@ -0,0 +1,111 @@
+package ir.sahab.rest.common.security;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import ir.sahab.rest.common.apierror.ApiException;
+import ir.sahab.rest.common.apierror.ApiExceptionHandler;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+/**
+ * Web filter which limits the rate of the requests of each authenticated principal according to the {@link RateLimit}
+ * arguments of {@link EnableCustomSecurity}. It runs after {@link AuthenticationFilter}, so the requests are keyed on
+ * the principal extracted by the {@link Authenticator} (e.g., a user or an API key). The rejected requests get the
+ * 429 (Too Many Requests) status code with a Retry-After header. If the API error mapping is enabled, they are
+ * rejected by an {@link ApiException} of {@link SecurityErrorCode#TOO_MANY_REQUESTS}, so the response is a problem
+ * rendered by {@link ApiExceptionHandler} like the other API errors.
+ */
+public final class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final int MIN_CONCURRENCY_LEVEL = 4;
+
+    private final List<Limiter> limiters = new ArrayList<>();
+    private final SecurityErrorResponder errorResponder;
+
+    /**
+     * @param exceptionResolver the resolver to render the rejected requests by or null if the rejected requests should
+     *     get a plain error response.
+     */
+    public RateLimitFilter(RateLimit[] rateLimits, HandlerExceptionResolver exceptionResolver) {
+        for (RateLimit rateLimit : rateLimits) {
+            limiters.add(new Limiter(rateLimit));
+        }
+        this.errorResponder = new SecurityErrorResponder(exceptionResolver);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null) {
+            for (Limiter limiter : limiters) {
+                if (limiter.matcher.matches(request)) {
+                    long waitNanos = limiter.buckets.getUnchecked(authentication.getName()).tryTake();
+                    if (waitNanos > 0) {
+                        reject(request, response, waitNanos);
+                        return;
+                    }
+                    break;
+                }
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, long waitNanos)
+            throws IOException {
+        // Retry-After is in seconds, so it is rounded up to not let the client retry too early.
+        long retryAfterSeconds = (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        errorResponder.respond(request, response, SecurityErrorCode.TOO_MANY_REQUESTS,
+                "Rate limit of the path is exceeded by the principal.", retryAfterSeconds);
+    }
+
+    /**
+     * Keeps the buckets of the principals for a {@link RateLimit}.
+     */
+    private static class Limiter {
+
+        private final RequestMatcher matcher;
+        private final LoadingCache<String, TokenBucket> buckets;
+
+        Limiter(RateLimit rateLimit) {
+            if (rateLimit.requests() <= 0 || rateLimit.periodSeconds() <= 0) {
+                throw new IllegalArgumentException("Requests and period of rate limits must be positive: "
+                        + rateLimit.pathPattern());
+            }
+            if (rateLimit.requests() > TimeUnit.SECONDS.toNanos(rateLimit.periodSeconds())) {
+                // The buckets cannot refill more than a token per nanosecond, so they would grant every request.
+                throw new IllegalArgumentException("Requests of rate limits must be at most one per nanosecond: "
+                        + rateLimit.pathPattern());
+            }
+            this.matcher = new AntPathRequestMatcher(rateLimit.pathPattern());
+            // A bucket which is not accessed during a whole period is full again, so dropping it and creating a new
+            // one on the next request of its principal makes no difference.
+            this.buckets = CacheBuilder.newBuilder()
+                    .concurrencyLevel(Math.max(MIN_CONCURRENCY_LEVEL, Runtime.getRuntime().availableProcessors()))
+                    .maximumSize(rateLimit.maxPrincipals())
+                    .expireAfterAccess(rateLimit.periodSeconds(), TimeUnit.SECONDS)
+                    .build(new CacheLoader<String, TokenBucket>() {
+                        @Override
+                        public TokenBucket load(String principal) {
+                            return new TokenBucket(rateLimit.requests(), rateLimit.periodSeconds(), TimeUnit.SECONDS);
+                        }
+                    });
+        }
+    }
+}
@@ -4,14 +4,20 @@ import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 import static org.springframework.security.config.http.SessionCreationPolicy.STATELESS;
 
 import ir.sahab.rest.common.apierror.ApiExceptionHandler;
+import ir.sahab.rest.common.apierror.ErrorRecordStore;
+import ir.sahab.rest.common.apierror.ErrorRecordsEndpoint;
+import ir.sahab.rest.common.security.Authenticator.BasicAuthenticator;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.boot.autoconfigure.security.SecurityProperties;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
@@ -22,15 +28,18 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.core.GrantedAuthorityDefaults;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.access.AccessDeniedHandler;
 import org.springframework.security.web.access.AccessDeniedHandlerImpl;
 import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
 import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.SimpleUrlAuthenticationSuccessHandler;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.NegatedRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
 import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.servlet.HandlerExceptionResolver;
 import org.zalando.problem.spring.web.advice.security.SecurityProblemSupport;
 
 /**
@@ -47,11 +56,6 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
     @Autowired
     private SecurityProblemSupport problemSupport;
 
-    public SecurityConfigurer() {
-        // Spring support for sending asynchronous processing of the requests with propagated SecurityContext.
-        SecurityContextHolder.setStrategyName(SecurityContextHolder.MODE_INHERITABLETHREADLOCAL);
-    }
-
     private final CustomSecurityMetadata customSecurityMetadata = CustomSecurityMetadata.getInstance();
 
     // The application-wide matcher with the specific pattern which will match all HTTP methods in a case insensitive
@@ -59,6 +63,11 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
     private final RequestMatcher protectedPathMatcher = new AntPathRequestMatcher(
             customSecurityMetadata.getApplicationBasePathPattern());
 
+    // The actuator endpoint of the error records, which has the stack traces and requests of the errors, so it is not
+    // public like the other actuator endpoints. Its path is resolved from the context on the first request, so it
+    // follows the management.endpoints.web.base-path and path-mapping properties.
+    private final RequestMatcher errorRecordsMatcher = EndpointRequest.to(ErrorRecordsEndpoint.class);
+
     @Override
     protected void configure(final HttpSecurity http) throws Exception {
         // If ApiErrorMapping is enabled, we want to use that library for mapping authentication/authorization errors to
@@ -76,7 +85,15 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
                 // It is sufficient to successfully extract the authentication object by the authentication filter.
                 .authenticationProvider(noMoreAuthenticationProvider())
                 .addFilterBefore(authenticationFilter(), AnonymousAuthenticationFilter.class)
-                .authorizeRequests()
+                .addFilterAfter(rateLimitFilter(), AuthenticationFilter.class);
+
+        ErrorRecordStore errorRecordStore = getErrorRecordStore();
+        if (errorRecordStore != null) {
+            http.authorizeRequests()
+                    .requestMatchers(errorRecordsMatcher)
+                    .hasAuthority(errorRecordStore.getRequiredAuthority());
+        }
+        http.authorizeRequests()
                 .anyRequest()
                 .authenticated()
 
@@ -96,24 +113,62 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
         if (null != ignoredPath) {
             web.ignoring().antMatchers(ignoredPath);
         }
-        web.ignoring().antMatchers("/actuator/**");
+        if (getErrorRecordStore() == null) {
+            web.ignoring().antMatchers("/actuator/**");
+        } else {
+            web.ignoring().requestMatchers(new AndRequestMatcher(new AntPathRequestMatcher("/actuator/**"),
+                    new NegatedRequestMatcher(errorRecordsMatcher)));
+        }
     }
 
     /**
      * Returns authentication filter that authenticates requests in protected paths. It calls the {@link Authenticator}
-     * object provided as argument to {@link EnableCustomSecurity}.
+     * bean of the application (or the primary one if there are several beans, e.g., a {@link CompositeAuthenticator}
+     * and its delegates). If there is no such bean, the {@link BasicAuthenticator} is used. The authenticator is
+     * resolved once here, so the filter has nothing to look up on each request. If {@link BruteForceProtection} is
+     * enabled, the filter also gets the {@link BruteForceDetector}. If the application has a {@link SessionTokenService}
+     * bean, the filter issues and accepts session tokens. If the errors are recorded by an {@link ErrorRecordStore},
+     * the filter also authenticates the requests of its actuator endpoint.
      */
     @Bean
     AuthenticationFilter authenticationFilter() throws Exception {
-        final AuthenticationFilter filter = new AuthenticationFilter(getApplicationContext(), protectedPathMatcher);
+        final Authenticator authenticator = getApplicationContext().getBeanProvider(Authenticator.class)
+                .getIfAvailable(BasicAuthenticator::new);
+        final AuthenticationFilter filter = new AuthenticationFilter(authenticator, getErrorRecordStore() == null
+                ? protectedPathMatcher : new OrRequestMatcher(protectedPathMatcher, errorRecordsMatcher));
         filter.setAuthenticationManager(authenticationManager());
         filter.setAuthenticationSuccessHandler(successHandler());
+        getApplicationContext().getBeanProvider(BruteForceDetector.class).ifAvailable(filter::setBruteForceDetector);
+        getApplicationContext().getBeanProvider(SessionTokenService.class).ifAvailable(filter::setSessionTokenService);
         AuthenticationEntryPoint authenticationEntryPoint =
                 isApiErrorMappingEnabled() ? problemSupport : new HttpStatusEntryPoint(UNAUTHORIZED);
-        filter.setAuthenticationFailureHandler(authenticationEntryPoint::commence);
+        SecurityErrorResponder errorResponder = new SecurityErrorResponder(getExceptionResolver());
+        filter.setAuthenticationFailureHandler((request, response, exception) -> {
+            // The credentials of overload failures are not verified at all, so they should not get 401.
+            if (exception instanceof AuthenticationOverloadException) {
+                errorResponder.respond(request, response, SecurityErrorCode.AUTHENTICATION_OVERLOADED,
+                        exception.getMessage());
+            } else if (exception instanceof AuthenticationBlockedException) {
+                long retryAfterSeconds = ((AuthenticationBlockedException) exception).getRetryAfterSeconds();
+                response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+                errorResponder.respond(request, response, SecurityErrorCode.TOO_MANY_AUTHENTICATION_FAILURES,
+                        exception.getMessage(), retryAfterSeconds);
+            } else {
+                authenticationEntryPoint.commence(request, response, exception);
+            }
+        });
         return filter;
     }
 
+    /**
+     * Returns the filter that limits the rate of the requests of each authenticated principal according to the
+     * {@link RateLimit} arguments of {@link EnableCustomSecurity}. It is not a bean, so it is just registered in the
+     * security filter chain.
+     */
+    private RateLimitFilter rateLimitFilter() {
+        return new RateLimitFilter(customSecurityMetadata.getRateLimits(), getExceptionResolver());
+    }
+
     /**
      * Disables redirecting after successful login. Redirection is not required with pure REST.
      */
@@ -146,13 +201,38 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
         return new GrantedAuthorityDefaults(customSecurityMetadata.getAuthorityPrefix());
     }
 
+    /**
+     * Propagates the security context of the submitting thread to the tasks which are submitted to the executor and
+     * scheduler beans of the application (e.g., the ones used by {@code @Async} methods). So there is no need to make
+     * the security context inheritable by all the threads of the JVM, which also leaves stale principals in pooled
+     * threads.
+     */
+    @Bean
+    static SecurityContextPropagatingBeanPostProcessor securityContextPropagatingBeanPostProcessor() {
+        return new SecurityContextPropagatingBeanPostProcessor();
+    }
+
+    /**
+     * Replaces the default handler of method security expressions (e.g., the ones in {@link PreAuthorize}) with a
+     * handler that compiles the expressions and caches the decisions of the authority-only ones, unless the
+     * application has its own handler.
+     *
+     * @see CachingMethodSecurityExpressionHandler
+     */
+    @Bean
+    static MethodSecurityExpressionHandlerRegistrar methodSecurityExpressionHandlerRegistrar() {
+        return new MethodSecurityExpressionHandlerRegistrar();
+    }
+
     /**
      * Since Spring security {@link AuthenticationManager} needs at least one instance of {@link AuthenticationProvider}
      * ,so we implement this provider which has not any logic and it simply accepts all extracted authentications. In
      * fact we extract authentication objects by authentication filter and the authentication filter calls the {@link
      * Authenticator} object which is provided as an argument to {@link EnableCustomSecurity}. Successful extraction is
      * sufficient that we conclude the request is authenticated and the user information and its grants is set in the
-     * authentication object.
+     * authentication object. The authorities of the accepted authentication are indexed here (see {@link
+     * AuthorityIndex#of(Authentication)}), so the later authority checks of the request are simple hash lookups. The
+     * authentication itself is kept as it is, so the application gets the same object which its authenticator returned.
      *
      * @see Authenticator
      */
@@ -161,6 +241,7 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
         return new AuthenticationProvider() {
             @Override
             public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+                AuthorityIndex.of(authentication);
                 return authentication;
             }
 
@@ -171,6 +252,15 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
         };
     }
 
+    /**
+     * Returns the resolver which renders exceptions by {@link ApiExceptionHandler} or null if the API error mapping is
+     * not enabled.
+     */
+    private HandlerExceptionResolver getExceptionResolver() {
+        return isApiErrorMappingEnabled()
+                ? getApplicationContext().getBean("handlerExceptionResolver", HandlerExceptionResolver.class) : null;
+    }
+
     private boolean isApiErrorMappingEnabled() {
         try {
             getApplicationContext().getBean(ApiExceptionHandler.class);
@@ -179,4 +269,11 @@ public class SecurityConfigurer extends WebSecurityConfigurerAdapter {
         }
         return true;
     }
+
+    /**
+     * Returns the store of the error records if they are enabled by the API error mapping, or null otherwise.
+     */
+    private ErrorRecordStore getErrorRecordStore() {
+        return getApplicationContext().getBeanProvider(ErrorRecordStore.class).getIfAvailable();
+    }
 }
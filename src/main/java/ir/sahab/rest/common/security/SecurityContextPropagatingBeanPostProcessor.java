@@ -0,0 +1,132 @@
+package ir.sahab.rest.common.security;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Makes all {@link Executor}, {@link ExecutorService} and {@link TaskScheduler} beans of the application propagate the
+ * {@link SecurityContext} of the submitting thread to the submitted tasks. This is done by proxying those beans, so
+ * each submitted {@link Runnable} or {@link Callable} is wrapped to run with the context which was current at the
+ * time of submission. The original context of the worker thread is restored when the task finishes, so a pooled thread
+ * never keeps the principal of a previous task.
+ *
+ * <p>The proxies extend the class of the original beans when possible, so the beans can still be injected by their
+ * concrete types (e.g., {@code ThreadPoolTaskExecutor}). For the final or JDK classes (e.g., the executors created by
+ * {@code Executors}), the proxies just implement the interfaces of the original beans.
+ */
+public final class SecurityContextPropagatingBeanPostProcessor implements BeanPostProcessor, BeanClassLoaderAware {
+
+    private ClassLoader beanClassLoader = ClassUtils.getDefaultClassLoader();
+
+    @Override
+    public void setBeanClassLoader(ClassLoader beanClassLoader) {
+        this.beanClassLoader = beanClassLoader;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Executor) && !(bean instanceof TaskScheduler)) {
+            return bean;
+        }
+        if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            ((Advised) bean).addAdvice(0, new SecurityContextPropagatingInterceptor());
+            return bean;
+        }
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        Class<?> beanClass = bean.getClass();
+        if (Modifier.isPublic(beanClass.getModifiers()) && !Modifier.isFinal(beanClass.getModifiers())
+                && !beanClass.getName().startsWith("java.")) {
+            proxyFactory.setProxyTargetClass(true);
+        } else {
+            proxyFactory.setInterfaces(ClassUtils.getAllInterfaces(bean));
+        }
+        proxyFactory.addAdvice(new SecurityContextPropagatingInterceptor());
+        return proxyFactory.getProxy(beanClassLoader);
+    }
+
+    /**
+     * Wraps the tasks passed to the task submission methods, so they run with the security context of the submitting
+     * thread. Just the methods which are declared by the executor and scheduler interfaces are intercepted, so the
+     * other methods of the beans (even if they have the same names) are called with their original arguments.
+     */
+    private static class SecurityContextPropagatingInterceptor implements MethodInterceptor {
+
+        private static final List<Class<?>> SUBMISSION_INTERFACES = Arrays.asList(
+                Executor.class, ExecutorService.class, ScheduledExecutorService.class, AsyncTaskExecutor.class,
+                AsyncListenableTaskExecutor.class, TaskScheduler.class);
+
+        // Whether each of the invoked methods is a task submission method.
+        private final Map<Method, Boolean> submissionMethods = new ConcurrentHashMap<>();
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            if (submissionMethods.computeIfAbsent(invocation.getMethod(), this::isSubmissionMethod)) {
+                Object[] arguments = invocation.getArguments();
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = wrap(arguments[i]);
+                }
+            }
+            return invocation.proceed();
+        }
+
+        private boolean isSubmissionMethod(Method method) {
+            for (Class<?> submissionInterface : SUBMISSION_INTERFACES) {
+                if (ClassUtils.hasMethod(submissionInterface, method.getName(), method.getParameterTypes())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Object wrap(Object argument) {
+            if (argument instanceof Runnable && !(argument instanceof DelegatingSecurityContextRunnable)) {
+                return DelegatingSecurityContextRunnable.create((Runnable) argument, null);
+            }
+            if (argument instanceof Callable && !(argument instanceof DelegatingSecurityContextCallable)) {
+                return DelegatingSecurityContextCallable.create((Callable<?>) argument, null);
+            }
+            if (argument instanceof Collection && isTasks((Collection<?>) argument)) {
+                // The tasks of invokeAll/invokeAny methods.
+                Collection<?> tasks = (Collection<?>) argument;
+                List<Object> wrappedTasks = new ArrayList<>(tasks.size());
+                for (Object task : tasks) {
+                    wrappedTasks.add(wrap(task));
+                }
+                return wrappedTasks;
+            }
+            return argument;
+        }
+
+        private static boolean isTasks(Collection<?> collection) {
+            for (Object element : collection) {
+                if (!(element instanceof Callable) && !(element instanceof Runnable)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
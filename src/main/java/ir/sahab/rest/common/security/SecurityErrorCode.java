@@ -0,0 +1,51 @@
+package ir.sahab.rest.common.security;
+
+import ir.sahab.rest.common.apierror.ApiErrorCode;
+import org.zalando.problem.Status;
+
+/**
+ * Error codes of the requests which are rejected by the security module (beside the authentication and authorization
+ * failures which have their own standard responses).
+ */
+public enum SecurityErrorCode implements ApiErrorCode {
+
+    TOO_MANY_REQUESTS(Status.TOO_MANY_REQUESTS,
+            "Rate limit is exceeded. Retry after %s seconds.",
+            "تعداد درخواست‌ها بیش از حد مجاز است. پس از %s ثانیه دوباره تلاش کنید."),
+    AUTHENTICATION_OVERLOADED(Status.SERVICE_UNAVAILABLE,
+            "Server is too busy to verify the credentials. Retry later.",
+            "سرور برای بررسی اعتبارنامه‌ها بیش از حد مشغول است. بعدا دوباره تلاش کنید."),
+    TOO_MANY_AUTHENTICATION_FAILURES(Status.TOO_MANY_REQUESTS,
+            "Too many authentication failures. Retry after %s seconds.",
+            "تعداد تلاش‌های ناموفق برای احراز هویت بیش از حد مجاز است. پس از %s ثانیه دوباره تلاش کنید.");
+
+    private final Status status;
+    private final String enMessage;
+    private final String faMessage;
+
+    SecurityErrorCode(Status status, String enMessage, String faMessage) {
+        this.status = status;
+        this.enMessage = enMessage;
+        this.faMessage = faMessage;
+    }
+
+    @Override
+    public String getName() {
+        return name();
+    }
+
+    @Override
+    public Status getHttpStatusCode() {
+        return status;
+    }
+
+    @Override
+    public String getEnMessage() {
+        return enMessage;
+    }
+
+    @Override
+    public String getFaMessage() {
+        return faMessage;
+    }
+}
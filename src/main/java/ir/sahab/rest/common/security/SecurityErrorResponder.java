@@ -0,0 +1,36 @@
+package ir.sahab.rest.common.security;
+
+import ir.sahab.rest.common.apierror.ApiException;
+import ir.sahab.rest.common.apierror.ApiExceptionHandler;
+import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+/**
+ * Responds to the requests which are rejected by the security filters with a {@link SecurityErrorCode}. If the API
+ * error mapping is enabled, the response is the problem rendered by {@link ApiExceptionHandler} for an
+ * {@link ApiException} of the error code (so it has a tracking id like the other API errors). Otherwise, it is a plain
+ * error response with the status code of the error code.
+ */
+final class SecurityErrorResponder {
+
+    private final HandlerExceptionResolver exceptionResolver;
+
+    /**
+     * @param exceptionResolver the resolver to render the errors by or null if the API error mapping is not enabled.
+     */
+    SecurityErrorResponder(HandlerExceptionResolver exceptionResolver) {
+        this.exceptionResolver = exceptionResolver;
+    }
+
+    void respond(HttpServletRequest request, HttpServletResponse response, SecurityErrorCode errorCode,
+            String detail, Object... parameters) throws IOException {
+        if (exceptionResolver == null) {
+            response.sendError(errorCode.getHttpStatusCode().getStatusCode());
+            return;
+        }
+        ApiException exception = new ApiException(errorCode, detail).setParameters(parameters);
+        exceptionResolver.resolveException(request, response, null, exception);
+    }
+}
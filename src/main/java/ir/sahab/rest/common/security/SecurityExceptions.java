@@ -0,0 +1,62 @@
+package ir.sahab.rest.common.security;
+
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+
+/**
+ * Factory of the authentication exceptions which are thrown by the authenticators of this library. If stackless
+ * exceptions are enabled by {@link EnableCustomSecurity#stacklessExceptions()}, the created exceptions do not capture
+ * their stack traces. These exceptions are thrown for every rejected request, so under a flood of invalid credentials,
+ * capturing the stack traces (which are never looked at) can be a major part of the CPU usage.
+ */
+final class SecurityExceptions {
+
+    private SecurityExceptions() {
+    }
+
+    static BadCredentialsException badCredentials(String message) {
+        return badCredentials(message, null);
+    }
+
+    static BadCredentialsException badCredentials(String message, Throwable cause) {
+        return isStackless() ? new StacklessBadCredentialsException(message, cause)
+                : new BadCredentialsException(message, cause);
+    }
+
+    static CredentialsExpiredException credentialsExpired(String message) {
+        return isStackless() ? new StacklessCredentialsExpiredException(message)
+                : new CredentialsExpiredException(message);
+    }
+
+    static boolean isStackless() {
+        return CustomSecurityMetadata.getInstance().isStacklessExceptions();
+    }
+
+    private static class StacklessBadCredentialsException extends BadCredentialsException {
+
+        private static final long serialVersionUID = 1L;
+
+        StacklessBadCredentialsException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static class StacklessCredentialsExpiredException extends CredentialsExpiredException {
+
+        private static final long serialVersionUID = 1L;
+
+        StacklessCredentialsExpiredException(String message) {
+            super(message);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ir.sahab.rest.common.security;
+
+import ir.sahab.rest.common.virtualthread.VirtualThreads;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Issues and verifies short-lived session tokens, so the clients do not pay for the {@link Authenticator} on each
+ * request. If the application has a bean of this class, each request which is authenticated by the
+ * {@link Authenticator} gets a token in the {@link #HEADER} response header. The token holds the principal name, its
+ * authorities and an expiration time, signed by HMAC-SHA256. The next requests which send the token in the same request
+ * header are authenticated by verifying the signature, without calling the {@link Authenticator}. So all nodes of a
+ * service which share the key accept the tokens issued by each other, and there is no server-side session (i.e., it is
+ * compatible with the stateless session policy).
+ *
+ * <p>The clients should still send their original credentials too, because an expired or invalid token is just
+ * ignored and the request is authenticated by the {@link Authenticator} (and gets a new token). Note that the
+ * authentication which is restored from a token just has the principal name and the authorities, and changing the
+ * authorities of a principal takes effect when its tokens expire.
+ */
+public class SessionTokenService {
+
+    public static final String HEADER = "X-Auth-Token";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_KEY_LENGTH = 32;
+    private static final byte VERSION = 1;
+
+    private final SecretKeySpec key;
+    private final long timeToLiveMillis;
+    // Mac instances are not thread-safe and creating them is relatively expensive, so each thread keeps its own.
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * @param key the secret key which is shared by all the nodes of the service. It should have at least 32 random
+     *     bytes.
+     */
+    public SessionTokenService(byte[] key, long timeToLive, TimeUnit unit) {
+        if (key.length < MIN_KEY_LENGTH) {
+            throw new IllegalArgumentException("Session token key must have at least " + MIN_KEY_LENGTH + " bytes!");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("Session token time to live must be positive!");
+        }
+        this.key = new SecretKeySpec(key.clone(), ALGORITHM);
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+        // Fails fast if the algorithm or key is not supported.
+        newMac();
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Returns a token which holds the name and authorities of the given authentication until the time to live passes.
+     */
+    public String issue(Authentication authentication) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream payload = new DataOutputStream(bytes)) {
+            payload.writeByte(VERSION);
+            payload.writeLong(System.currentTimeMillis() + timeToLiveMillis);
+            payload.writeUTF(authentication.getName());
+            payload.writeShort(authentication.getAuthorities().size());
+            for (GrantedAuthority authority : authentication.getAuthorities()) {
+                payload.writeUTF(authority.getAuthority());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload) + '.' + encoder.encodeToString(sign(payload));
+    }
+
+    /**
+     * Verifies the given token and returns the authentication it holds.
+     *
+     * @return the authentication or null if the token is null, malformed, forged or expired.
+     */
+    public Authentication verify(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            payload = decoder.decode(token.substring(0, dot));
+            signature = decoder.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(payload), signature)) {
+            return null;
+        }
+        // The payload is signed by us, so it is well-formed unless it has another version.
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (input.readByte() != VERSION || input.readLong() <= System.currentTimeMillis()) {
+                return null;
+            }
+            String name = input.readUTF();
+            int authorityCount = input.readUnsignedShort();
+            List<GrantedAuthority> authorities = new ArrayList<>(authorityCount);
+            for (int i = 0; i < authorityCount; i++) {
+                authorities.add(new SimpleGrantedAuthority(input.readUTF()));
+            }
+            return new UsernamePasswordAuthenticationToken(name, null, authorities);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(byte[] payload) {
+        // Virtual threads are not reused, so keeping a Mac for each of them is useless.
+        Mac mac = VirtualThreads.isVirtual(Thread.currentThread()) ? newMac() : macs.get();
+        return mac.doFinal(payload);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + ALGORITHM, e);
+        }
+    }
+}
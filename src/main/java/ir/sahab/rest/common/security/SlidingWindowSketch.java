@@ -0,0 +1,113 @@
+package ir.sahab.rest.common.security;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximately counts the events of each key (e.g., the authentication failures of each IP) during a sliding window,
+ * in a fixed amount of memory no matter how many distinct keys there are. It is a count-min sketch per slice of the
+ * window: the window is divided into a few slices, and the oldest slice is cleared and reused when the window slides
+ * past it. The count of a key is the sum of its counts in the slices of the window.
+ *
+ * <p>A count-min sketch never underestimates, but the keys which share counters may be overestimated. To keep the
+ * overestimation low, the counters are incremented by the conservative update rule (i.e., just the counters which hold
+ * the minimum). The keys are hashed with a random seed, so an attacker can not choose keys that collide with the keys
+ * of others. Concurrent increments on a slice which is being cleared may be lost, which is acceptable for detecting
+ * abusive sources.
+ */
+final class SlidingWindowSketch {
+
+    private static final int DEPTH = 4;
+
+    private final int width;
+    private final int slices;
+    private final long sliceMillis;
+    private final HashFunction hashFunction = Hashing.murmur3_128(new SecureRandom().nextInt());
+    // The counters of slice s, row r and column c are at ((s * DEPTH) + r) * width + c.
+    private final AtomicIntegerArray counters;
+    // The epoch (i.e., the start time divided by sliceMillis) of the counts which are kept in each slice.
+    private final AtomicLongArray sliceEpochs;
+
+    SlidingWindowSketch(int width, int slices, long windowMillis) {
+        if (width <= 0 || slices <= 0 || windowMillis < slices) {
+            throw new IllegalArgumentException("Invalid sketch: width = " + width + ", slices = " + slices
+                    + ", window = " + windowMillis + " ms");
+        }
+        this.width = width;
+        this.slices = slices;
+        this.sliceMillis = windowMillis / slices;
+        this.counters = new AtomicIntegerArray(slices * DEPTH * width);
+        this.sliceEpochs = new AtomicLongArray(slices);
+    }
+
+    /**
+     * Counts an event of the given key at the given time.
+     *
+     * @return the count of the key (including this event) in the window which ends at the given time.
+     */
+    int add(String key, long nowMillis) {
+        long hash = hashFunction.hashString(key).asLong();
+        long epoch = nowMillis / sliceMillis;
+        int slice = (int) (epoch % slices);
+        long sliceEpoch = sliceEpochs.get(slice);
+        if (sliceEpoch != epoch && sliceEpochs.compareAndSet(slice, sliceEpoch, epoch)) {
+            int start = slice * DEPTH * width;
+            for (int i = start; i < start + DEPTH * width; i++) {
+                counters.set(i, 0);
+            }
+        }
+        int min = getCount(slice, hash);
+        for (int row = 0; row < DEPTH; row++) {
+            int index = getIndex(slice, row, hash);
+            if (counters.get(index) == min) {
+                counters.compareAndSet(index, min, min + 1);
+            }
+        }
+        return estimate(hash, epoch);
+    }
+
+    /**
+     * Returns the count of the given key in the window which ends at the given time.
+     */
+    int estimate(String key, long nowMillis) {
+        return estimate(hashFunction.hashString(key).asLong(), nowMillis / sliceMillis);
+    }
+
+    /**
+     * Returns the milliseconds after which the oldest slice leaves the window, i.e., the earliest time the counts may
+     * decrease.
+     */
+    long getMillisToNextSlice(long nowMillis) {
+        return sliceMillis - nowMillis % sliceMillis;
+    }
+
+    private int estimate(long hash, long epoch) {
+        int count = 0;
+        for (int slice = 0; slice < slices; slice++) {
+            if (epoch - sliceEpochs.get(slice) < slices) {
+                count += getCount(slice, hash);
+            }
+        }
+        return count;
+    }
+
+    private int getCount(int slice, long hash) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters.get(getIndex(slice, row, hash)));
+        }
+        return min;
+    }
+
+    /**
+     * Returns the index of the counter of the given hash in the given row. The column of each row is derived from the
+     * two halves of the hash (i.e., the Kirsch-Mitzenmacher double hashing), so a single hash is computed per key.
+     */
+    private int getIndex(int slice, int row, long hash) {
+        int column = ((int) hash + row * (int) (hash >>> 32)) & Integer.MAX_VALUE;
+        return (slice * DEPTH + row) * width + column % width;
+    }
+}
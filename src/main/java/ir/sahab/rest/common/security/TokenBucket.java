@@ -0,0 +1,52 @@
+package ir.sahab.rest.common.security;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket. Instead of the number of remaining tokens and the time of last refill, it just keeps the
+ * time at which the bucket will be full again (the generic cell rate algorithm). So taking a token is a single
+ * compare-and-set and there is no need to refill the bucket periodically.
+ */
+final class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long periodNanos;
+
+    // The time (in terms of System.nanoTime()) at which the bucket will be full again.
+    private final AtomicLong fullAt;
+
+    /**
+     * @throws IllegalArgumentException if the tokens are not positive or more than the nanoseconds of the period, so
+     *     each token would take less than a nanosecond (i.e., nothing) to be refilled.
+     */
+    TokenBucket(long tokens, long period, TimeUnit unit) {
+        this.periodNanos = unit.toNanos(period);
+        if (tokens <= 0 || tokens > periodNanos) {
+            throw new IllegalArgumentException("Tokens of a bucket must be positive and at most one per nanosecond of "
+                    + "its period: " + tokens + " tokens per " + period + " " + unit);
+        }
+        this.nanosPerToken = periodNanos / tokens;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token from the bucket if there is any.
+     *
+     * @return zero if a token is taken, otherwise the number of nanoseconds to wait for the next token.
+     */
+    long tryTake() {
+        final long now = System.nanoTime();
+        while (true) {
+            final long currentFullAt = fullAt.get();
+            final long nextFullAt = (currentFullAt - now < 0 ? now : currentFullAt) + nanosPerToken;
+            final long waitNanos = nextFullAt - now - periodNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (fullAt.compareAndSet(currentFullAt, nextFullAt)) {
+                return 0;
+            }
+        }
+    }
+}
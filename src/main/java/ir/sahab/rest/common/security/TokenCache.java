@@ -0,0 +1,135 @@
+package ir.sahab.rest.common.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import ir.sahab.rest.common.virtualthread.VirtualThreads;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A bounded cache of the results of verifying credentials (e.g., bearer tokens or passwords). The credentials are kept
+ * by their HMACs with a random key of the cache, so the cache holds neither the credentials nor hashes of them which
+ * could be used to guess the credentials offline. Each entry expires at its own time (e.g., the expiration time of its
+ * token) or after the maximum time to live of the cache, whichever comes first.
+ *
+ * <p>The results can also be loaded through the cache (see {@link #get(String, Verifier)}), so the concurrent requests
+ * of an uncached token (e.g., the requests of a client which has just got a new token) wait for a single verification.
+ *
+ * @param <V> type of the cached results.
+ */
+final class TokenCache<V> {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_LENGTH = 32;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final Cache<ByteBuffer, Entry<V>> entries;
+
+    TokenCache(int maxSize, long maxTimeToLive, TimeUnit unit) {
+        byte[] keyBytes = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(keyBytes);
+        this.key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(maxTimeToLive, unit)
+                .build();
+    }
+
+    /**
+     * Returns the result cached for the given token or null if there is no unexpired result.
+     */
+    V get(String token) {
+        ByteBuffer hmac = hmac(token);
+        Entry<V> entry = entries.getIfPresent(hmac);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis <= System.currentTimeMillis()) {
+            entries.invalidate(hmac);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Returns the result cached for the given token, or verifies the token by the given verifier and caches its result
+     * if there is no unexpired result. Just one of the concurrent calls for the same token runs the verifier, and the
+     * others wait for its result. The failures of the verifier are thrown as they are and are not cached.
+     */
+    V get(String token, Verifier<V> verifier) {
+        ByteBuffer hmac = hmac(token);
+        try {
+            Entry<V> entry = entries.get(hmac, () -> verifier.verify(token));
+            if (entry.expiresAtMillis <= System.currentTimeMillis()) {
+                // Only the expired entry is removed, not the one which another thread may have just loaded.
+                entries.asMap().remove(hmac, entry);
+                entry = entries.get(hmac, () -> verifier.verify(token));
+            }
+            return entry.value;
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } catch (ExecutionException e) {
+            // The verifiers throw no checked exception.
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Caches the given result until the given time (in milliseconds since epoch).
+     */
+    void put(String token, V value, long expiresAtMillis) {
+        entries.put(hmac(token), new Entry<>(value, expiresAtMillis));
+    }
+
+    private ByteBuffer hmac(String token) {
+        // Virtual threads are not reused, so keeping a Mac for each of them is useless.
+        Mac mac = VirtualThreads.isVirtual(Thread.currentThread()) ? newMac() : macs.get();
+        return ByteBuffer.wrap(mac.doFinal(token.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to initialize " + HMAC_ALGORITHM, e);
+        }
+    }
+
+    /**
+     * Verifies a token and returns its result, or throws an exception (e.g., an {@link
+     * org.springframework.security.core.AuthenticationException}) if the token is not valid.
+     */
+    @FunctionalInterface
+    interface Verifier<V> {
+
+        Entry<V> verify(String token);
+    }
+
+    /**
+     * The result of verifying a token and the time (in milliseconds since epoch) until which it is valid.
+     */
+    static final class Entry<V> {
+
+        private final V value;
+        private final long expiresAtMillis;
+
+        Entry(V value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ir.sahab.rest.common.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * A utility class for reading the standard claims of the bearer tokens (e.g., the claims of a JWT or the response of a
+ * token introspection endpoint).
+ */
+final class TokenClaims {
+
+    private TokenClaims() {
+    }
+
+    /**
+     * Returns the expiration time of the claims in milliseconds since epoch or {@link Long#MAX_VALUE} if the claims
+     * have no expiration time.
+     */
+    static long getExpiresAtMillis(JsonNode claims) {
+        return claims.has("exp") ? TimeUnit.SECONDS.toMillis(claims.get("exp").asLong()) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Maps the values of the given claim (either a JSON array or a space separated string like the scope claim) to
+     * granted authorities, prefixed by the {@link EnableCustomSecurity#authorityPrefix() authorityPrefix}.
+     */
+    static Collection<GrantedAuthority> toAuthorities(JsonNode claim) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        if (claim.isArray()) {
+            for (JsonNode authority : claim) {
+                authorities.add(toAuthority(authority.asText()));
+            }
+        } else if (claim.isTextual()) {
+            for (String authority : claim.asText().split(" ")) {
+                if (!authority.isEmpty()) {
+                    authorities.add(toAuthority(authority));
+                }
+            }
+        }
+        return authorities;
+    }
+
+    /**
+     * Maps the given value to a granted authority, prefixed by the
+     * {@link EnableCustomSecurity#authorityPrefix() authorityPrefix}.
+     */
+    static GrantedAuthority toAuthority(String value) {
+        String prefix = CustomSecurityMetadata.getInstance().getAuthorityPrefix();
+        return new SimpleGrantedAuthority(prefix == null ? value : prefix + value);
+    }
+}
@@ -0,0 +1,66 @@
+package ir.sahab.rest.common.virtualthread;
+
+import ir.sahab.rest.common.security.EnableCustomSecurity;
+import ir.sahab.rest.common.virtualthread.EnableVirtualThreads.VirtualThreadsImporter;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.ImportSelector;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.core.type.AnnotationMetadata;
+
+/**
+ * Annotation to enable processing of the requests on virtual threads (JDK 21 or later) via annotation configuration.
+ * The application fails to start if the running JDK does not support virtual threads.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Import(VirtualThreadsImporter.class)
+public @interface EnableVirtualThreads {
+
+    /**
+     * It selects {@link VirtualThreadsConfigurer} configuration to apply.
+     */
+    class VirtualThreadsImporter implements ImportSelector {
+
+        @Override
+        public String[] selectImports(AnnotationMetadata classMetadata) {
+            if (!VirtualThreads.isSupported()) {
+                throw new IllegalStateException("Virtual threads are enabled by @EnableVirtualThreads but the running "
+                        + "JDK does not support them: " + System.getProperty("java.version"));
+            }
+            return new String[] {VirtualThreadsConfigurer.class.getName()};
+        }
+    }
+
+    class VirtualThreadsConfigurer {
+
+        /**
+         * Makes Tomcat process each request on a new virtual thread instead of its pool of platform threads.
+         */
+        @Bean
+        public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadsProtocolHandlerCustomizer() {
+            return protocolHandler -> protocolHandler.setExecutor(
+                    VirtualThreads.newVirtualThreadPerTaskExecutor("http-virtual-"));
+        }
+
+        /**
+         * Replaces the default application task executor of Spring Boot (which is used for example by {@code @Async}
+         * methods) with an executor that runs each task on a new virtual thread. If {@link EnableCustomSecurity} is
+         * enabled, the security context is propagated to these tasks too.
+         *
+         * @see TaskExecutionAutoConfiguration
+         */
+        @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+        public AsyncTaskExecutor applicationTaskExecutor() {
+            return new TaskExecutorAdapter(VirtualThreads.newVirtualThreadPerTaskExecutor("task-virtual-"));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ir.sahab.rest.common.virtualthread;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A utility class that gives access to virtual threads (available from JDK 21) while the library itself is still
+ * compiled for older JDKs. All the methods are safe to call on older JDKs; {@link #isSupported()} returns false and
+ * {@link #isVirtual(Thread)} always returns false there.
+ */
+public final class VirtualThreads {
+
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return IS_VIRTUAL != null;
+    }
+
+    /**
+     * Returns true if the given thread is a virtual thread.
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            throw new AssertionError("Unable to check whether the thread is virtual.", e);
+        }
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for each task. Names of the threads start with the given
+     * prefix and end with a counter.
+     *
+     * @throws IllegalStateException if virtual threads are not supported by the running JDK.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads require JDK 21 or later, but the running JDK is "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor.", e);
+        }
+    }
+
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup()
+                    .findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ir.sahab.rest.common.apierror;
+
+import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_AVAILABLE_IN_STORE;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.apierror.ApiErrorMappingWithLanguageNegotiationTest.RestServiceSetup;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.config.annotation.web.builders.WebSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class ApiErrorMappingWithLanguageNegotiationTest {
+
+    private static final String PRODUCT = "NOT_AVAILABLE";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testApiExceptionMessages() throws Exception {
+        mockMvc.perform(get(REST_BASE_PATH + "/searchByName?name=" + PRODUCT)
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "fa-IR,fa;q=0.9,en;q=0.8")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().string(HttpHeaders.CONTENT_LANGUAGE, "fa"))
+                .andExpect(jsonPath("$.error_code").value(NOT_AVAILABLE_IN_STORE.name()))
+                .andExpect(jsonPath("$.fa_message")
+                        .value(String.format(NOT_AVAILABLE_IN_STORE.getFaMessage(), PRODUCT)))
+                .andExpect(jsonPath("$.en_message").doesNotExist());
+
+        // The default language is used if the header is missing or accepts none of the supported languages.
+        for (String acceptLanguage : new String[]{null, "fr-CH, fr;q=0.9", "not a valid header;;"}) {
+            mockMvc.perform(get(REST_BASE_PATH + "/searchByName?name=" + PRODUCT)
+                    .headers(acceptLanguageHeaders(acceptLanguage))
+                    .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(header().string(HttpHeaders.CONTENT_LANGUAGE, "en"))
+                    .andExpect(jsonPath("$.en_message")
+                            .value(String.format(NOT_AVAILABLE_IN_STORE.getEnMessage(), PRODUCT)))
+                    .andExpect(jsonPath("$.fa_message").doesNotExist());
+        }
+
+        // The additional languages are rendered from the message bundles.
+        mockMvc.perform(get(REST_BASE_PATH + "/searchByName?name=" + PRODUCT)
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "de-DE")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().string(HttpHeaders.CONTENT_LANGUAGE, "de"))
+                .andExpect(jsonPath("$.de_message")
+                        .value("Nicht genügend Menge des Produkts im Lager: Produkt = " + PRODUCT))
+                .andExpect(jsonPath("$.en_message").doesNotExist())
+                .andExpect(jsonPath("$.fa_message").doesNotExist());
+    }
+
+    @Test
+    public void testGeneralExceptionMessages() throws Exception {
+        mockMvc.perform(get(REST_BASE_PATH + "/throwIOException")
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "fa")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isInternalServerError())
+                .andExpect(header().string(HttpHeaders.CONTENT_LANGUAGE, "fa"))
+                .andExpect(jsonPath("$.fa_message").value("درخواست مربوطه با خطا مواجه شد."))
+                .andExpect(jsonPath("$.en_message").doesNotExist());
+
+        // The message bundles just have the messages of the error codes, so other errors fall back to English.
+        mockMvc.perform(get(REST_BASE_PATH + "/throwIOException")
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "de")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isInternalServerError())
+                .andExpect(header().string(HttpHeaders.CONTENT_LANGUAGE, "en"))
+                .andExpect(jsonPath("$.en_message")
+                        .value("Internal Server Error: Connection refused (Connection refused)"))
+                .andExpect(jsonPath("$.fa_message").doesNotExist());
+    }
+
+    @Test
+    public void testRejectedRequestMessages() throws Exception {
+        mockMvc.perform(get("/wp-login.php")
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "fa")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound())
+                .andExpect(header().string(HttpHeaders.CONTENT_LANGUAGE, "fa"))
+                .andExpect(jsonPath("$.fa_message").value("درخواست مربوطه با خطا مواجه شد."))
+                .andExpect(jsonPath("$.en_message").doesNotExist());
+        mockMvc.perform(get("/wp-login.php")
+                .header(HttpHeaders.ACCEPT_LANGUAGE, "de")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound())
+                .andExpect(header().string(HttpHeaders.CONTENT_LANGUAGE, "en"))
+                .andExpect(jsonPath("$.en_message").value("Not Found: No handler found for GET /wp-login.php"))
+                .andExpect(jsonPath("$.fa_message").doesNotExist());
+    }
+
+    @Test
+    public void testNegotiator() {
+        MessageLanguageNegotiator negotiator = new MessageLanguageNegotiator(Arrays.asList("en", "fa", "de"), "fa");
+        assertEquals("fa", negotiator.negotiate(null));
+        assertEquals("fa", negotiator.negotiate("*"));
+        assertEquals("en", negotiator.negotiate("en-US,en;q=0.9"));
+        assertEquals("de", negotiator.negotiate("fr;q=0.9, de;q=0.8, en;q=0.1"));
+        assertEquals("fa", negotiator.negotiate("ja"));
+        assertEquals("fa", negotiator.negotiate("en;q=x"));
+    }
+
+    private static HttpHeaders acceptLanguageHeaders(String acceptLanguage) {
+        HttpHeaders headers = new HttpHeaders();
+        if (acceptLanguage != null) {
+            headers.set(HttpHeaders.ACCEPT_LANGUAGE, acceptLanguage);
+        }
+        return headers;
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableApiErrorMapping(negotiateLanguage = true, languages = "de", messageBundle = "error-messages")
+    public static class RestServiceSetup extends WebSecurityConfigurerAdapter {
+
+        @Override
+        public void configure(WebSecurity web) {
+            web.ignoring().antMatchers("/**");
+        }
+    }
+}
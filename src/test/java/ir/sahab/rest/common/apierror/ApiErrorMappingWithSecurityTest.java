@@ -2,13 +2,17 @@ package ir.sahab.rest.common.apierror;
 
 import static ir.sahab.rest.common.security.CustomSecurityWithDefaultAuthenticatorTest.TEST_VALID_USER_NAME;
 import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.jayway.jsonpath.JsonPath;
 import ir.sahab.rest.common.apierror.ApiErrorMappingWithSecurityTest.RestServiceSetup;
 import ir.sahab.rest.common.security.Authenticator;
 import ir.sahab.rest.common.security.EnableCustomSecurity;
+import java.util.Collections;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
@@ -26,14 +30,19 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest(classes = {RestServiceSetup.class})
+@SpringBootTest(classes = {RestServiceSetup.class},
+        properties = "management.endpoints.web.exposure.include=errorrecords")
 @AutoConfigureMockMvc
 public class ApiErrorMappingWithSecurityTest {
 
+    private static final String ADMIN_USER_NAME = "admin";
+
     @Autowired
     private MockMvc mockMvc;
 
@@ -73,13 +82,54 @@ public class ApiErrorMappingWithSecurityTest {
                 .andExpect(jsonPath("$.fa_message").value("درخواست مربوطه با خطا مواجه شد."));
     }
 
+    @Test
+    public void testErrorRecords() throws Exception {
+        MvcResult result = mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("Authorization", "saeed"))
+                .andExpect(status().isForbidden())
+                .andReturn();
+        String trackingId = JsonPath.read(result.getResponse().getContentAsString(), "$.tracking_id");
+        String recordPath = "/actuator/errorrecords/" + trackingId;
+
+        // The records are only fetched by the users which have the required authority.
+        mockMvc.perform(get(recordPath))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get(recordPath)
+                .header("Authorization", "saeed"))
+                .andExpect(status().isForbidden());
+
+        // The errors are recorded asynchronously, so the record may not be found at first.
+        int recordStatus = 0;
+        for (int i = 0; i < 50 && recordStatus != 200; i++) {
+            Thread.sleep(i == 0 ? 0 : 100);
+            recordStatus = mockMvc.perform(get(recordPath)
+                    .header("Authorization", ADMIN_USER_NAME))
+                    .andReturn().getResponse().getStatus();
+        }
+        assertEquals(200, recordStatus);
+        mockMvc.perform(get(recordPath)
+                .header("Authorization", ADMIN_USER_NAME))
+                .andExpect(jsonPath("$.trackingId").value(trackingId))
+                .andExpect(jsonPath("$.status").value(403))
+                .andExpect(jsonPath("$.httpMethod").value("GET"))
+                .andExpect(jsonPath("$.apiPath").value(REST_BASE_PATH + "/protected-with-permission"))
+                .andExpect(jsonPath("$.user").value(TEST_VALID_USER_NAME))
+                .andExpect(jsonPath("$.exception").value(containsString(
+                        "AccessDeniedException")));
+
+        mockMvc.perform(get("/actuator/errorrecords/unknown")
+                .header("Authorization", ADMIN_USER_NAME))
+                .andExpect(status().isNotFound());
+    }
+
     @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
     @PropertySource("classpath:rest-commons-test.properties")
     @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
     @EntityScan(basePackages = {
             "ir.sahab.rest.common.testapp"
     })
-    @EnableApiErrorMapping
+    @EnableApiErrorMapping(errorRecords = @ErrorRecords(capacity = 100))
     @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
     public static class RestServiceSetup {
 
@@ -94,6 +144,10 @@ public class ApiErrorMappingWithSecurityTest {
         @Override
         public Authentication authenticate(HttpServletRequest request) throws AuthenticationException {
             String authorization = request.getHeader("Authorization");
+            if (ADMIN_USER_NAME.equals(authorization)) {
+                return new UsernamePasswordAuthenticationToken(ADMIN_USER_NAME, "password",
+                        Collections.singletonList(new SimpleGrantedAuthority("error.records")));
+            }
             if (StringUtils.isEmpty(authorization) || !TEST_VALID_USER_NAME.equalsIgnoreCase(authorization)) {
                 throw new BadCredentialsException("Invalid username/password!");
             }
@@ -1,16 +1,28 @@
 package ir.sahab.rest.common.apierror;
 
 import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_AVAILABLE_IN_STORE;
+import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_ENOUGH_CREDIT;
 import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import ir.sahab.rest.common.apierror.ApiErrorMappingWithoutSecurityTest.RestServiceSetup;
+import ir.sahab.rest.common.apierror.ErrorMetrics.ErrorCount;
+import ir.sahab.rest.common.apierror.RejectedRequestCounter.RejectedSource;
 import ir.sahab.rest.common.testapp.TestOrderEntity;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,20 +32,30 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = {RestServiceSetup.class})
 @AutoConfigureMockMvc
 public class ApiErrorMappingWithoutSecurityTest {
 
+    private static final String PROBLEM_JSON_UTF8 = "application/problem+json;charset=UTF-8";
+
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private ErrorMetrics errorMetrics;
+
+    @Autowired
+    private RejectedRequestCounter rejectedRequestCounter;
+
     @Test
     public void testSpringMvcExceptions() throws Exception {
         // Invalid path variable type
@@ -222,11 +244,160 @@ public class ApiErrorMappingWithoutSecurityTest {
                         .value(String.format(NOT_AVAILABLE_IN_STORE.getFaMessage(), productName)));
     }
 
+    @Test
+    public void testApiExceptionWithoutParameters() throws Exception {
+        // The problems of the error codes without parameters are written from their pre-serialized templates, with the
+        // same content type as the other problems.
+        String contentType = mockMvc.perform(get(REST_BASE_PATH + "/searchByName?name=NOT_AVAILABLE")
+                .accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentType();
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post(REST_BASE_PATH + "/buy")
+                    .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(content().contentType(contentType))
+                    .andExpect(jsonPath("$.title").value("Bad Request"))
+                    .andExpect(jsonPath("$.status").value(400))
+                    .andExpect(jsonPath("$.detail").value("null"))
+                    .andExpect(jsonPath("$.user").value(""))
+                    .andExpect(jsonPath("$.api_path").value(REST_BASE_PATH + "/buy"))
+                    .andExpect(jsonPath("$.http_method").value("POST"))
+                    .andExpect(jsonPath("$.timestamp").isNumber())
+                    .andExpect(jsonPath("$.tracking_id").value(matchesPattern("[0-9A-Z]{26}")))
+                    .andExpect(jsonPath("$.error_code").value(NOT_ENOUGH_CREDIT.name()))
+                    .andExpect(jsonPath("$.en_message").value(NOT_ENOUGH_CREDIT.getEnMessage()))
+                    .andExpect(jsonPath("$.fa_message").value(NOT_ENOUGH_CREDIT.getFaMessage()));
+        }
+        mockMvc.perform(post(REST_BASE_PATH + "/buy"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentType(PROBLEM_JSON_UTF8))
+                .andExpect(jsonPath("$.error_code").value(NOT_ENOUGH_CREDIT.name()));
+        assertFieldOrder(post(REST_BASE_PATH + "/buy"), "title", "status", "detail", "tracking_id", "en_message",
+                "fa_message", "error_code", "user", "api_path", "http_method", "timestamp");
+
+        // The errors are counted by their route.
+        ErrorCount errorCount = errorMetrics.getTopErrors().get("1m").stream()
+                .filter(count -> count.getErrorCode().equals(NOT_ENOUGH_CREDIT.name()))
+                .findFirst().get();
+        assertEquals(REST_BASE_PATH + "/buy", errorCount.getRoute());
+        assertEquals(400, errorCount.getStatus());
+        assertEquals(4, errorCount.getCount());
+    }
+
+    @Test
+    public void testRejectedRequests() throws Exception {
+        // The problems of the requests which match no route are written from templates, with the same fields.
+        mockMvc.perform(get("/wp-login.php"))
+                .andExpect(status().isNotFound())
+                .andExpect(content().contentType(PROBLEM_JSON_UTF8))
+                .andExpect(jsonPath("$.detail").value("No handler found for GET /wp-login.php"))
+                .andExpect(jsonPath("$.api_path").value("/wp-login.php"))
+                .andExpect(jsonPath("$.http_method").value("GET"))
+                .andExpect(jsonPath("$.tracking_id").value(matchesPattern("[0-9A-Z]{26}")))
+                .andExpect(jsonPath("$.en_message").value("Not Found: No handler found for GET /wp-login.php"));
+        mockMvc.perform(delete(REST_BASE_PATH).header(HttpHeaders.ACCEPT, "application/*+json, text/html;q=0.5"))
+                .andExpect(status().isMethodNotAllowed())
+                .andExpect(content().contentType(PROBLEM_JSON_UTF8))
+                .andExpect(header().string(HttpHeaders.ALLOW, matchesPattern("POST, PUT|PUT, POST")))
+                .andExpect(jsonPath("$.detail").value("Request method 'DELETE' not supported"))
+                .andExpect(jsonPath("$.en_message").value("Method Not Allowed: Request method 'DELETE' not supported"));
+        assertFieldOrder(get("/wp-login.php"), "title", "status", "detail", "user", "api_path", "http_method",
+                "timestamp", "tracking_id", "en_message", "fa_message");
+        assertFieldOrder(delete(REST_BASE_PATH), "title", "status", "detail", "user", "api_path", "http_method",
+                "timestamp", "tracking_id", "en_message", "fa_message");
+
+        // They are counted by their source, which is far from being blocked.
+        RejectedSource source = rejectedRequestCounter.getTopSources().get(0);
+        assertEquals("127.0.0.1", source.getSource());
+        assertFalse(source.isBlocked());
+    }
+
+    @Test
+    public void testFieldOrder() throws Exception {
+        // The fields are added in the same order whether the problem is built by a handler or copied.
+        assertFieldOrder(get(REST_BASE_PATH + "/throwIOException"), "title", "status", "detail", "user", "api_path",
+                "http_method", "timestamp", "tracking_id", "en_message", "fa_message");
+        assertFieldOrder(get(REST_BASE_PATH + "/searchByName?name=NOT_AVAILABLE"), "title", "status", "detail",
+                "tracking_id", "en_message", "fa_message", "error_code", "user", "api_path", "http_method",
+                "timestamp");
+        assertFieldOrder(post(REST_BASE_PATH).content(new TestOrderEntity(1L, "shampoo", 20).toJson())
+                        .contentType(MediaType.APPLICATION_JSON), "type", "title", "status", "user", "api_path",
+                "http_method", "timestamp", "tracking_id", "en_message", "fa_message", "violations", "violation_count");
+    }
+
+    @Test
+    public void testConstraintViolations() throws Exception {
+        StringBuilder orders = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            // Half of the orders have too few items and the other half too many.
+            TestOrderEntity order = new TestOrderEntity((long) i, "shampoo", i % 2 == 0 ? 0 : 20);
+            orders.append(i == 0 ? "" : ",").append(order.toJson());
+        }
+        orders.append(",").append(new TestOrderEntity(1000L, "shampoo", 5).toJson());
+
+        // The violations of the same field of different orders are grouped.
+        mockMvc.perform(post(REST_BASE_PATH + "/batch")
+                .content("{\"orders\":[" + orders + "]}")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.type").value("https://zalando.github.io/problem/constraint-violation"))
+                .andExpect(jsonPath("$.title").value("Constraint Violation"))
+                .andExpect(jsonPath("$.status").value("400"))
+                .andExpect(jsonPath("$.api_path").value(REST_BASE_PATH + "/batch"))
+                .andExpect(jsonPath("$.tracking_id").exists())
+                .andExpect(jsonPath("$.en_message").value("Constraint Violation"))
+                .andExpect(jsonPath("$.violation_count").value(1000))
+                .andExpect(jsonPath("$.violations.length()").value(2))
+                .andExpect(jsonPath("$.violations[0].field").value("orders[].count"))
+                .andExpect(jsonPath("$.violations[0].count").value(500))
+                .andExpect(jsonPath("$.violations[1].field").value("orders[].count"))
+                .andExpect(jsonPath("$.violations[1].count").value(500));
+
+        // A violation which is not grouped has its own field.
+        mockMvc.perform(post(REST_BASE_PATH + "/batch")
+                .content("{\"orders\":[" + new TestOrderEntity(1L, "shampoo", 20).toJson() + "]}")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.violation_count").value(1))
+                .andExpect(jsonPath("$.violations[0].field").value("orders[0].count"))
+                .andExpect(jsonPath("$.violations[0].message").value("must be less than or equal to 10"))
+                .andExpect(jsonPath("$.violations[0].count").doesNotExist());
+    }
+
+    @Test
+    public void testMethodParameterViolations() throws Exception {
+        // The constraint violations are in a hash set, but they are rendered in the order of their fields.
+        for (int i = 0; i < 5; i++) {
+            mockMvc.perform(get(REST_BASE_PATH + "/page?page=0&size=1000&name=x")
+                    .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.type").value("https://zalando.github.io/problem/constraint-violation"))
+                    .andExpect(jsonPath("$.api_path").value(REST_BASE_PATH + "/page"))
+                    .andExpect(jsonPath("$.violation_count").value(3))
+                    .andExpect(jsonPath("$.violations[0].field").value("getPage.name"))
+                    .andExpect(jsonPath("$.violations[0].message").value("size must be between 2 and 2147483647"))
+                    .andExpect(jsonPath("$.violations[1].field").value("getPage.page"))
+                    .andExpect(jsonPath("$.violations[1].message").value("must be greater than or equal to 1"))
+                    .andExpect(jsonPath("$.violations[2].field").value("getPage.size"))
+                    .andExpect(jsonPath("$.violations[2].message").value("must be less than or equal to 100"));
+        }
+    }
+
+    private void assertFieldOrder(MockHttpServletRequestBuilder request, String... fields) throws Exception {
+        String json = mockMvc.perform(request.accept(MediaType.APPLICATION_JSON))
+                .andReturn().getResponse().getContentAsString();
+        List<String> actualFields = new ArrayList<>();
+        new ObjectMapper().readTree(json).fieldNames().forEachRemaining(actualFields::add);
+        assertEquals(Arrays.asList(fields), actualFields);
+    }
+
     @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
     @PropertySource("classpath:rest-commons-test.properties")
     @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
     @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
-    @EnableApiErrorMapping
+    @EnableApiErrorMapping(maxRejectionsPerMinute = 1000)
     public static class RestServiceSetup extends WebSecurityConfigurerAdapter {
 
         @Override
@@ -0,0 +1,69 @@
+package ir.sahab.rest.common.apierror;
+
+import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_AVAILABLE_IN_STORE;
+import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_ENOUGH_CREDIT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+public class ErrorLogCoalescerTest {
+
+    private static final StackTraceElement[] STACK_TRACE = {
+            new StackTraceElement("ir.sahab.Service", "call", "Service.java", 10),
+            new StackTraceElement("ir.sahab.Controller", "get", "Controller.java", 20),
+            new StackTraceElement("ir.sahab.Filter", "doFilter", "Filter.java", 30),
+            new StackTraceElement("ir.sahab.Servlet", "service", "Servlet.java", 40)};
+
+    @Test
+    public void testCoalescing() {
+        try (ErrorLogCoalescer coalescer = new ErrorLogCoalescer(3600)) {
+            // Only the first occurrence of each fingerprint is logged.
+            assertTrue(coalescer.shouldLog(withStackTrace(new IllegalStateException("Failed")),
+                    HttpStatus.INTERNAL_SERVER_ERROR));
+            assertFalse(coalescer.shouldLog(withStackTrace(new IllegalStateException("Failed again")),
+                    HttpStatus.INTERNAL_SERVER_ERROR));
+            assertTrue(coalescer.shouldLog(withStackTrace(new ApiException(NOT_ENOUGH_CREDIT)),
+                    HttpStatus.BAD_REQUEST));
+            assertFalse(coalescer.shouldLog(withStackTrace(new ApiException(NOT_ENOUGH_CREDIT)),
+                    HttpStatus.BAD_REQUEST));
+            assertTrue(coalescer.shouldLog(withStackTrace(new ApiException(NOT_AVAILABLE_IN_STORE)),
+                    HttpStatus.BAD_REQUEST));
+            assertEquals(3, coalescer.getFingerprints());
+
+            // The frames below the top ones are not in the fingerprint.
+            IllegalStateException exception = withStackTrace(new IllegalStateException("Failed"));
+            StackTraceElement[] stackTrace = exception.getStackTrace();
+            stackTrace[ErrorLogCoalescer.FINGERPRINT_FRAMES] = new StackTraceElement("A", "b", "A.java", 1);
+            exception.setStackTrace(stackTrace);
+            assertFalse(coalescer.shouldLog(exception, HttpStatus.INTERNAL_SERVER_ERROR));
+            stackTrace[0] = new StackTraceElement("A", "b", "A.java", 1);
+            exception.setStackTrace(stackTrace);
+            assertTrue(coalescer.shouldLog(exception, HttpStatus.INTERNAL_SERVER_ERROR));
+
+            // The fingerprints of the 4xx errors have no stack frames.
+            ApiException apiException = new ApiException(NOT_ENOUGH_CREDIT);
+            apiException.setStackTrace(new StackTraceElement[] {new StackTraceElement("A", "b", "A.java", 1)});
+            assertFalse(coalescer.shouldLog(apiException, HttpStatus.BAD_REQUEST));
+
+            // The fingerprints which occurred since the last summary are still coalesced after it, and the ones which
+            // did not are forgotten.
+            coalescer.summarize();
+            assertEquals(2, coalescer.getFingerprints());
+            assertFalse(coalescer.shouldLog(withStackTrace(new IllegalStateException("Failed")),
+                    HttpStatus.INTERNAL_SERVER_ERROR));
+            assertTrue(coalescer.shouldLog(withStackTrace(new ApiException(NOT_AVAILABLE_IN_STORE)),
+                    HttpStatus.BAD_REQUEST));
+            coalescer.summarize();
+            coalescer.summarize();
+            assertEquals(0, coalescer.getFingerprints());
+        }
+    }
+
+    private static <T extends Throwable> T withStackTrace(T throwable) {
+        throwable.setStackTrace(STACK_TRACE.clone());
+        return throwable;
+    }
+}
@@ -0,0 +1,69 @@
+package ir.sahab.rest.common.apierror;
+
+import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_AVAILABLE_IN_STORE;
+import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_ENOUGH_CREDIT;
+import static org.junit.Assert.assertEquals;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ir.sahab.rest.common.apierror.ErrorMetrics.ErrorCount;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ErrorMetricsTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void testWindows() {
+        ErrorMetrics metrics = new ErrorMetrics(2);
+        long start = 1_000 * MINUTE;
+        for (int i = 0; i < 3; i++) {
+            metrics.record(NOT_ENOUGH_CREDIT, "/buy", start);
+        }
+        for (int i = 0; i < 2; i++) {
+            metrics.record(NOT_AVAILABLE_IN_STORE, "/search", start + 3 * MINUTE);
+        }
+        metrics.record(NOT_AVAILABLE_IN_STORE, null, start + 3 * MINUTE);
+        metrics.record(NOT_ENOUGH_CREDIT, "/buy", start + 10 * MINUTE);
+
+        Map<String, List<ErrorCount>> topErrors = metrics.getTopErrors(start + 10 * MINUTE);
+        assertErrors(topErrors.get("1m"), "NOT_ENOUGH_CREDIT /buy 1");
+        assertErrors(topErrors.get("5m"), "NOT_ENOUGH_CREDIT /buy 1");
+        // Just the top two errors are reported.
+        assertErrors(topErrors.get("15m"), "NOT_ENOUGH_CREDIT /buy 4", "NOT_AVAILABLE_IN_STORE /search 2");
+
+        // The slots of the ring are reused after 15 minutes.
+        metrics.record(NOT_ENOUGH_CREDIT, "/buy", start + 15 * MINUTE);
+        metrics.record(NOT_ENOUGH_CREDIT, "/buy", start + 15 * MINUTE);
+        topErrors = metrics.getTopErrors(start + 15 * MINUTE);
+        assertErrors(topErrors.get("1m"), "NOT_ENOUGH_CREDIT /buy 2");
+        assertErrors(topErrors.get("15m"), "NOT_ENOUGH_CREDIT /buy 3", "NOT_AVAILABLE_IN_STORE /search 2");
+        assertErrors(metrics.getTopErrors(start + 60 * MINUTE).get("15m"));
+    }
+
+    @Test
+    public void testMeters() {
+        ErrorMetrics metrics = new ErrorMetrics(10);
+        metrics.record(NOT_ENOUGH_CREDIT, "/buy");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+        metrics.record(NOT_ENOUGH_CREDIT, "/buy");
+        metrics.record(NOT_ENOUGH_CREDIT, null);
+
+        assertEquals(2, registry.get("api.errors").tag("error_code", "NOT_ENOUGH_CREDIT").tag("status", "400")
+                .tag("route", "/buy").functionCounter().count(), 0);
+        assertEquals(1, registry.get("api.errors").tag("route", ErrorMetrics.UNKNOWN_ROUTE).functionCounter().count(),
+                0);
+    }
+
+    private static void assertErrors(List<ErrorCount> errorCounts, String... expected) {
+        assertEquals(expected.length, errorCounts.size());
+        for (int i = 0; i < expected.length; i++) {
+            ErrorCount errorCount = errorCounts.get(i);
+            assertEquals(expected[i],
+                    errorCount.getErrorCode() + " " + errorCount.getRoute() + " " + errorCount.getCount());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ir.sahab.rest.common.apierror;
+
+import static ir.sahab.rest.common.testapp.OrderErrorCode.NOT_ENOUGH_CREDIT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class ErrorRecordStoreTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testFindRecords() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (ErrorRecordStore store = new ErrorRecordStore(2, directory, 1024 * 1024, 8, 100, "error.records")) {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/buy");
+            request.setQueryString("count=2");
+            request.setRemoteAddr("10.0.0.1");
+            ApiException exception = new ApiException(NOT_ENOUGH_CREDIT);
+            store.record("id-1", exception, 400, request, "saeed");
+
+            ErrorRecord record = awaitRecord(store, "id-1");
+            assertEquals("id-1", record.getTrackingId());
+            assertEquals(400, record.getStatus());
+            assertEquals(NOT_ENOUGH_CREDIT.getName(), record.getErrorCode());
+            assertEquals("POST", record.getHttpMethod());
+            assertEquals("/api/buy", record.getApiPath());
+            assertEquals("count=2", record.getQueryString());
+            assertEquals("10.0.0.1", record.getRemoteAddress());
+            assertEquals("saeed", record.getUser());
+            assertTrue(record.getException().contains(ApiException.class.getName()));
+
+            // The oldest records are evicted from memory to the segments, where they are still found.
+            store.record("id-2", new IllegalStateException("Failed"), 500, request, "");
+            store.record("id-3", new IllegalStateException("Failed"), 500, request, "");
+            awaitRecord(store, "id-3");
+            record = store.find("id-1");
+            assertNotNull(record);
+            assertEquals("saeed", record.getUser());
+            assertNull(store.find("id-2").getErrorCode());
+            assertNull(store.find("unknown"));
+        }
+
+        // The records in memory are written to the segments on close, so they are found after reopening.
+        try (ErrorRecordStore store = new ErrorRecordStore(2, directory, 1024 * 1024, 8, 100, "error.records")) {
+            assertNotNull(store.find("id-1"));
+            assertNotNull(store.find("id-3"));
+        }
+    }
+
+    @Test
+    public void testMaskedParameters() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        try (ErrorRecordStore store = new ErrorRecordStore(1, directory, 1024 * 1024, 8, 100, "error.records",
+                Arrays.asList("X-API-KEY", "token"))) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/order/1");
+            request.setQueryString("x-api-key=s3cr3t&count=2&TOKEN=t0k3n&X%2DAPI-KEY=s3cr3t&flag");
+            store.record("id-1", new IllegalStateException("Failed"), 500, request, "");
+            store.record("id-2", new IllegalStateException("Failed"), 500, request, "");
+
+            String expected = "x-api-key=XXX&count=2&TOKEN=XXX&X%2DAPI-KEY=XXX&flag";
+            assertEquals(expected, awaitRecord(store, "id-2").getQueryString());
+            // The evicted record is written to the segments with the masked query string too.
+            assertEquals(expected, store.find("id-1").getQueryString());
+            for (File segment : temporaryFolder.getRoot().listFiles()) {
+                assertFalse(new String(Files.readAllBytes(segment.toPath()), StandardCharsets.UTF_8)
+                        .contains("s3cr3t"));
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentRotation() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/order/1");
+        try (ErrorRecordStore store = new ErrorRecordStore(1, directory, 1, 3, 100, "error.records")) {
+            for (int i = 0; i < 10; i++) {
+                store.record("id-" + i, new IllegalStateException("Failed"), 500, request, "");
+            }
+        }
+        // Each record is written to its own segment (the last one on close), and just the last segments are kept.
+        File[] segments = temporaryFolder.getRoot().listFiles();
+        assertNotNull(segments);
+        assertEquals(3, segments.length);
+        try (ErrorRecordStore store = new ErrorRecordStore(1, directory, 1, 3, 100, "error.records")) {
+            assertNull(store.find("id-6"));
+            assertNotNull(store.find("id-7"));
+            assertNotNull(store.find("id-9"));
+        }
+    }
+
+    @Test
+    public void testWithoutDirectory() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/order/1");
+        try (ErrorRecordStore store = new ErrorRecordStore(1, null, 1024, 1, 100, "error.records")) {
+            store.record("id-1", new IllegalStateException("Failed"), 500, request, "");
+            store.record("id-2", new IllegalStateException("Failed"), 500, request, "");
+            awaitRecord(store, "id-2");
+            assertNull(store.find("id-1"));
+            assertEquals(0, store.getDroppedRecords());
+        }
+    }
+
+    private static ErrorRecord awaitRecord(ErrorRecordStore store, String trackingId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        ErrorRecord record;
+        while ((record = store.find(trackingId)) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(record);
+        return record;
+    }
+}
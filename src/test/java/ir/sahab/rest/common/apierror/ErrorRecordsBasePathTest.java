@@ -0,0 +1,38 @@
+package ir.sahab.rest.common.apierror;
+
+import static ir.sahab.rest.common.security.CustomSecurityWithDefaultAuthenticatorTest.TEST_VALID_USER_NAME;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.apierror.ApiErrorMappingWithSecurityTest.RestServiceSetup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class}, properties = {
+        "management.endpoints.web.exposure.include=errorrecords",
+        "management.endpoints.web.base-path=/manage"})
+@AutoConfigureMockMvc
+public class ErrorRecordsBasePathTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testErrorRecordsAreProtectedUnderCustomBasePath() throws Exception {
+        String recordPath = "/manage/errorrecords/unknown";
+        mockMvc.perform(get(recordPath))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get(recordPath)
+                .header("Authorization", TEST_VALID_USER_NAME))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get(recordPath)
+                .header("Authorization", "admin"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,118 @@
+package ir.sahab.rest.common.apierror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import ir.sahab.rest.common.testapp.OrderErrorCode;
+import java.util.MissingFormatArgumentException;
+import org.junit.Test;
+import org.zalando.problem.Status;
+
+public class MessageTemplateTest {
+
+    @Test
+    public void testRenderLikeFormat() {
+        assertRenderedLikeFormat("Order %s is not available.", "o-1");
+        assertRenderedLikeFormat("%s-%s", "a", null);
+        assertRenderedLikeFormat("%2$s before %1$s and %s", "first", "second");
+        assertRenderedLikeFormat("100%% done%n", "ignored");
+        assertRenderedLikeFormat("No parameter");
+        assertRenderedLikeFormat("");
+        // Not simple templates are rendered by String.format.
+        assertRenderedLikeFormat("Count: %d, ratio: %.2f, name: %-5s|", 12, 0.5, "ab");
+    }
+
+    @Test
+    public void testNestedRendering() {
+        MessageTemplate template = MessageTemplate.compile("outer(%s)");
+        Object parameter = new Object() {
+            @Override
+            public String toString() {
+                return MessageTemplate.compile("inner(%s)").render("x");
+            }
+        };
+        assertEquals("outer(inner(x))", template.render(parameter));
+    }
+
+    @Test
+    public void testMissingParameter() {
+        try {
+            MessageTemplate.compile("%s and %s").render("one");
+            fail("Missing parameter is not detected.");
+        } catch (MissingFormatArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMalformedTemplate() {
+        for (String template : new String[]{"50%", "%q", "%#s", "%-s"}) {
+            try {
+                MessageTemplate.compile(template);
+                fail("Malformed template is compiled: " + template);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testRegistry() {
+        MessageTemplateRegistry registry = new MessageTemplateRegistry("ir.sahab.rest.common.testapp");
+        assertEquals(String.format(OrderErrorCode.NOT_AVAILABLE_IN_STORE.getEnMessage(), "o-1"),
+                registry.getEnMessage(OrderErrorCode.NOT_AVAILABLE_IN_STORE, "o-1"));
+        assertEquals(String.format(OrderErrorCode.NOT_AVAILABLE_IN_STORE.getFaMessage(), "o-1"),
+                registry.getFaMessage(OrderErrorCode.NOT_AVAILABLE_IN_STORE, "o-1"));
+
+        // The error codes which are not scanned are compiled on their first use.
+        try {
+            registry.getEnMessage(newErrorCode("MALFORMED", "%z", "%s"));
+            fail("Malformed template is rendered.");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid message of error code MALFORMED: Invalid message template: %z", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRegistryOfOtherErrorCodes() {
+        MessageTemplateRegistry registry = new MessageTemplateRegistry();
+        // Error codes which are created for each error, even more than the ones which are kept.
+        for (int i = 0; i < MessageTemplateRegistry.MAX_OTHER_MESSAGES + 10; i++) {
+            ApiErrorCode errorCode = newErrorCode("DYNAMIC", "Order " + i + " of %s is not found.",
+                    "سفارش " + i + " از %s پیدا نشد.");
+            assertEquals("Order " + i + " of saeed is not found.", registry.getEnMessage(errorCode, "saeed"));
+            assertEquals("سفارش " + i + " از saeed پیدا نشد.", registry.getFaMessage(errorCode, "saeed"));
+        }
+        // Error codes with the same name but different messages
+        assertEquals("First", registry.getEnMessage(newErrorCode("SAME", "First", "")));
+        assertEquals("Second", registry.getEnMessage(newErrorCode("SAME", "Second", "")));
+    }
+
+    private static ApiErrorCode newErrorCode(String name, String enMessage, String faMessage) {
+        return new ApiErrorCode() {
+            @Override
+            public String getName() {
+                return name;
+            }
+
+            @Override
+            public String getEnMessage() {
+                return enMessage;
+            }
+
+            @Override
+            public String getFaMessage() {
+                return faMessage;
+            }
+
+            @Override
+            public Status getHttpStatusCode() {
+                return Status.BAD_REQUEST;
+            }
+        };
+    }
+
+    private static void assertRenderedLikeFormat(String template, Object... parameters) {
+        assertEquals(String.format(template, parameters), MessageTemplate.compile(template).render(parameters));
+    }
+}
@@ -0,0 +1,89 @@
+package ir.sahab.rest.common.apierror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.zalando.problem.Problem;
+import org.zalando.problem.ProblemModule;
+import org.zalando.problem.Status;
+
+public class ProblemTemplateTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new ProblemModule());
+
+    @Test
+    public void testSameAsSerializedProblem() throws Exception {
+        ProblemTemplate template = ProblemTemplate.compile(objectMapper,
+                problem("Not enough credit!", ProblemTemplate.TRACKING_ID_PLACEHOLDER, ProblemTemplate.USER_PLACEHOLDER,
+                        ProblemTemplate.API_PATH_PLACEHOLDER, ProblemTemplate.HTTP_METHOD_PLACEHOLDER,
+                        ProblemTemplate.TIMESTAMP_PLACEHOLDER), null);
+
+        // The dynamic values are escaped like the other JSON strings.
+        String user = "Ali \"the admin\" \\ علی";
+        String apiPath = "/api/orders/v1/buy";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.write(out, "01FH9EE0ZBGJ09TQM83XSSSS6Y", user, apiPath, "POST", 1600844664969L);
+        assertEquals(objectMapper.writeValueAsString(
+                problem("Not enough credit!", "01FH9EE0ZBGJ09TQM83XSSSS6Y", user, apiPath, "POST", 1600844664969L)),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPlaceholderInMessage() throws Exception {
+        assertNull(ProblemTemplate.compile(objectMapper,
+                problem("Message with " + ProblemTemplate.USER_PLACEHOLDER, ProblemTemplate.TRACKING_ID_PLACEHOLDER,
+                        ProblemTemplate.USER_PLACEHOLDER, ProblemTemplate.API_PATH_PLACEHOLDER,
+                        ProblemTemplate.HTTP_METHOD_PLACEHOLDER, ProblemTemplate.TIMESTAMP_PLACEHOLDER), null));
+    }
+
+    @Test
+    public void testRepeatedFields() throws Exception {
+        Problem sampleProblem = Problem.builder()
+                .withTitle(Status.NOT_FOUND.getReasonPhrase())
+                .withStatus(Status.NOT_FOUND)
+                .withDetail("No handler found for " + ProblemTemplate.HTTP_METHOD_PLACEHOLDER + " "
+                        + ProblemTemplate.API_PATH_PLACEHOLDER)
+                .with("user", ProblemTemplate.USER_PLACEHOLDER)
+                .with("api_path", ProblemTemplate.API_PATH_PLACEHOLDER)
+                .with("http_method", ProblemTemplate.HTTP_METHOD_PLACEHOLDER)
+                .with("timestamp", ProblemTemplate.TIMESTAMP_PLACEHOLDER)
+                .with("tracking_id", ProblemTemplate.TRACKING_ID_PLACEHOLDER)
+                .build();
+        assertNull(ProblemTemplate.compile(objectMapper, sampleProblem, null));
+
+        ProblemTemplate template = ProblemTemplate.compile(objectMapper, sampleProblem, null, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.write(out, "01FH9EE0ZBGJ09TQM83XSSSS6Y", "", "/wp-admin/\"x\"", "GET", 1600844664969L);
+        assertEquals(objectMapper.writeValueAsString(Problem.builder()
+                        .withTitle(Status.NOT_FOUND.getReasonPhrase())
+                        .withStatus(Status.NOT_FOUND)
+                        .withDetail("No handler found for GET /wp-admin/\"x\"")
+                        .with("user", "")
+                        .with("api_path", "/wp-admin/\"x\"")
+                        .with("http_method", "GET")
+                        .with("timestamp", 1600844664969L)
+                        .with("tracking_id", "01FH9EE0ZBGJ09TQM83XSSSS6Y")
+                        .build()),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static Problem problem(String message, String trackingId, String user, String apiPath, String httpMethod,
+            long timestamp) {
+        return Problem.builder()
+                .with("tracking_id", trackingId)
+                .with("en_message", message)
+                .with("error_code", "NOT_ENOUGH_CREDIT")
+                .withDetail("null")
+                .withStatus(Status.BAD_REQUEST)
+                .withTitle(Status.BAD_REQUEST.getReasonPhrase())
+                .with("user", user)
+                .with("api_path", apiPath)
+                .with("http_method", httpMethod)
+                .with("timestamp", timestamp)
+                .build();
+    }
+}
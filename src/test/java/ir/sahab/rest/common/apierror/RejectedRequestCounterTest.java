@@ -0,0 +1,95 @@
+package ir.sahab.rest.common.apierror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import ir.sahab.rest.common.apierror.RejectedRequestCounter.RejectedSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class RejectedRequestCounterTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void testBlocking() {
+        RejectedRequestCounter counter = new RejectedRequestCounter(10);
+        long start = 1_000 * MINUTE;
+        for (int i = 0; i < 9; i++) {
+            assertFalse(counter.record("10.0.0.1", start));
+        }
+        assertTrue(counter.record("10.0.0.1", start));
+        assertTrue(counter.isBlocked("10.0.0.1", start + MINUTE / 2));
+        assertFalse(counter.isBlocked("10.0.0.2", start));
+
+        // The rejections of the previous minute are weighted by its part which is still in the last minute.
+        assertTrue(counter.isBlocked("10.0.0.1", start + MINUTE));
+        assertFalse(counter.isBlocked("10.0.0.1", start + MINUTE + MINUTE / 2));
+        for (int i = 0; i < 4; i++) {
+            assertFalse(counter.record("10.0.0.1", start + MINUTE + MINUTE / 2));
+        }
+        assertTrue(counter.record("10.0.0.1", start + MINUTE + MINUTE / 2));
+        assertFalse(counter.isBlocked("10.0.0.1", start + 3 * MINUTE));
+    }
+
+    @Test
+    public void testTopSources() {
+        RejectedRequestCounter counter = new RejectedRequestCounter(3);
+        long start = 1_000 * MINUTE;
+        for (int i = 0; i < 4; i++) {
+            counter.record("10.0.0.1", start);
+        }
+        counter.record("10.0.0.2", start + MINUTE);
+        for (int i = 0; i < RejectedRequestCounter.TOP_SOURCES + 10; i++) {
+            counter.record("10.0.1." + i, start);
+        }
+
+        List<RejectedSource> topSources = counter.getTopSources(start + MINUTE);
+        assertEquals(RejectedRequestCounter.TOP_SOURCES, topSources.size());
+        assertEquals("10.0.0.1", topSources.get(0).getSource());
+        assertEquals(4, topSources.get(0).getRejections());
+        assertTrue(topSources.get(0).isBlocked());
+        assertFalse(topSources.get(1).isBlocked());
+        assertEquals(0, counter.getTopSources(start + 3 * MINUTE).size());
+    }
+
+    @Test
+    public void testBoundedSources() {
+        RejectedRequestCounter counter = new RejectedRequestCounter(1);
+        long start = 1_000 * MINUTE;
+        for (int i = 0; i < RejectedRequestCounter.MAX_SOURCES; i++) {
+            counter.record("10." + i, start);
+        }
+        // The sources which are not counted are not blocked either.
+        assertFalse(counter.record("10.0.0.1", start));
+        assertFalse(counter.isBlocked("10.0.0.1", start));
+        assertTrue(counter.record("10.0.0.1", start + MINUTE));
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        RejectedRequestCounter counter = new RejectedRequestCounter(1);
+        RejectedSourceFilter filter = new RejectedSourceFilter(counter);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/wp-login.php");
+        request.setRemoteAddr("10.0.0.1");
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        assertEquals(request, chain.getRequest());
+
+        counter.record("10.0.0.1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertEquals("60", response.getHeader(HttpHeaders.RETRY_AFTER));
+        assertNull(chain.getRequest());
+    }
+}
@@ -0,0 +1,71 @@
+package ir.sahab.rest.common.apierror;
+
+import ir.sahab.rest.common.testapp.OrderErrorCode;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.type.AnnotationMetadata;
+
+/**
+ * Compares the cost of creating an {@link ApiException} with and without {@link
+ * EnableApiErrorMapping#stacklessExceptions()}. The exceptions are created deep in a call stack, like the ones thrown
+ * from the controllers of a typical Spring application, since capturing a stack trace costs more as the stack grows.
+ *
+ * <p>It is not run by the tests. Run its main method (e.g., from the IDE) after compiling the tests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StacklessApiExceptionBenchmark {
+
+    @Param({"false", "true"})
+    private boolean stackless;
+
+    @Param({"20", "150"})
+    private int callStackDepth;
+
+    @Setup
+    public void setUp() {
+        ApiErrorMappingMetadata.getInstance().fillFrom(AnnotationMetadata.introspect(
+                stackless ? StacklessSetup.class : DefaultSetup.class));
+    }
+
+    @Benchmark
+    public ApiException createException() {
+        return createDeep(callStackDepth);
+    }
+
+    private static ApiException createDeep(int depth) {
+        if (depth > 0) {
+            return createDeep(depth - 1);
+        }
+        return new ApiException(OrderErrorCode.NOT_AVAILABLE_IN_STORE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StacklessApiExceptionBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @EnableApiErrorMapping
+    private static class DefaultSetup {
+    }
+
+    @EnableApiErrorMapping(stacklessExceptions = true)
+    private static class StacklessSetup {
+    }
+}
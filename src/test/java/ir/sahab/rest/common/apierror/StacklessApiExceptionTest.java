@@ -0,0 +1,85 @@
+package ir.sahab.rest.common.apierror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import ir.sahab.rest.common.testapp.OrderErrorCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.ReflectionUtils;
+import org.zalando.problem.Status;
+
+/**
+ * Tests {@link EnableApiErrorMapping#stacklessExceptions()}.
+ */
+public class StacklessApiExceptionTest {
+
+    private final ApiErrorMappingMetadata savedMetadata = new ApiErrorMappingMetadata();
+
+    @Before
+    public void setUp() {
+        ReflectionUtils.shallowCopyFieldState(ApiErrorMappingMetadata.getInstance(), savedMetadata);
+    }
+
+    @After
+    public void tearDown() {
+        ReflectionUtils.shallowCopyFieldState(savedMetadata, ApiErrorMappingMetadata.getInstance());
+    }
+
+    @Test
+    public void testStackTraces() {
+        ApiErrorMappingMetadata.getInstance().fillFrom(AnnotationMetadata.introspect(DefaultSetup.class));
+        ApiException exception = new ApiException(OrderErrorCode.NOT_AVAILABLE_IN_STORE);
+        assertTrue(exception.getStackTrace().length > 0);
+
+        ApiErrorMappingMetadata.getInstance().fillFrom(AnnotationMetadata.introspect(StacklessSetup.class));
+        IllegalStateException cause = new IllegalStateException();
+        exception = new ApiException(OrderErrorCode.NOT_AVAILABLE_IN_STORE, null, cause);
+        assertEquals(0, exception.getStackTrace().length);
+        assertSame(cause, exception.getCause());
+        assertEquals(OrderErrorCode.NOT_AVAILABLE_IN_STORE.getEnMessage(), exception.getMessage());
+
+        // The error codes which require the stack trace still capture it.
+        assertTrue(new ApiException(InternalErrorCode.UNEXPECTED).getStackTrace().length > 0);
+    }
+
+    private enum InternalErrorCode implements ApiErrorCode {
+        UNEXPECTED;
+
+        @Override
+        public String getName() {
+            return name();
+        }
+
+        @Override
+        public Status getHttpStatusCode() {
+            return Status.INTERNAL_SERVER_ERROR;
+        }
+
+        @Override
+        public String getEnMessage() {
+            return "Unexpected error";
+        }
+
+        @Override
+        public String getFaMessage() {
+            return "خطای غیرمنتظره";
+        }
+
+        @Override
+        public boolean isStackTraceRequired() {
+            return true;
+        }
+    }
+
+    @EnableApiErrorMapping
+    private static class DefaultSetup {
+    }
+
+    @EnableApiErrorMapping(stacklessExceptions = true)
+    private static class StacklessSetup {
+    }
+}
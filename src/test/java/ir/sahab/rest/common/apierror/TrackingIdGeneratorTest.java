@@ -0,0 +1,79 @@
+package ir.sahab.rest.common.apierror;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import ir.sahab.rest.common.testapp.OrderErrorCode;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.util.ReflectionUtils;
+
+public class TrackingIdGeneratorTest {
+
+    private final ApiErrorMappingMetadata savedMetadata = new ApiErrorMappingMetadata();
+
+    @Before
+    public void setUp() {
+        ReflectionUtils.shallowCopyFieldState(ApiErrorMappingMetadata.getInstance(), savedMetadata);
+    }
+
+    @After
+    public void tearDown() {
+        ReflectionUtils.shallowCopyFieldState(savedMetadata, ApiErrorMappingMetadata.getInstance());
+    }
+
+    @Test
+    public void testUlidFormat() {
+        // The example of the ULID spec: timestamp 1469918176385 and all random bits set.
+        assertEquals("01ARYZ6S41ZZZZZZZZZZZZZZZZ", UlidTrackingIdGenerator.format(1469918176385L, -1L, -1));
+        assertEquals("01ARYZ6S410000000000000000", UlidTrackingIdGenerator.format(1469918176385L, 0L, 0));
+        assertEquals("00000000000000000000000001", UlidTrackingIdGenerator.format(0L, 0L, 1));
+
+        TrackingIdGenerator generator = new UlidTrackingIdGenerator();
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            String id = generator.generate();
+            assertTrue(id, id.matches("[0-9A-HJKMNP-TV-Z]{26}"));
+            ids.add(id);
+        }
+        assertEquals(100_000, ids.size());
+    }
+
+    @Test
+    public void testTimeOrder() throws InterruptedException {
+        TrackingIdGenerator generator = new UlidTrackingIdGenerator();
+        String first = generator.generate();
+        Thread.sleep(2);
+        String second = generator.generate();
+        assertTrue(first.compareTo(second) < 0);
+    }
+
+    @Test
+    public void testLazyGeneration() {
+        ApiErrorMappingMetadata.getInstance().fillFrom(AnnotationMetadata.introspect(CountingSetup.class));
+        ApiException exception = new ApiException(OrderErrorCode.NOT_AVAILABLE_IN_STORE);
+        assertEquals(0, CountingTrackingIdGenerator.count.get());
+        assertEquals("id-1", exception.getTrackingId());
+        assertEquals("id-1", exception.getTrackingId());
+        assertEquals(1, CountingTrackingIdGenerator.count.get());
+    }
+
+    public static class CountingTrackingIdGenerator implements TrackingIdGenerator {
+
+        static final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public String generate() {
+            return "id-" + count.incrementAndGet();
+        }
+    }
+
+    @EnableApiErrorMapping(trackingIdGenerator = CountingTrackingIdGenerator.class)
+    private static class CountingSetup {
+    }
+}
@@ -0,0 +1,49 @@
+package ir.sahab.rest.common.apierror;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import org.junit.Test;
+import org.zalando.problem.violations.Violation;
+
+public class ViolationGroupsTest {
+
+    @Test
+    public void testGrouping() throws Exception {
+        List<Violation> violations = Arrays.asList(
+                new Violation("owner", "must not be null"),
+                new Violation("items[0].count", "must be positive"),
+                new Violation("items[1].count", "must be positive"),
+                new Violation("items[1].name", "must not be blank"),
+                new Violation("items[2].count", "must be less than 10"),
+                new Violation("items[3].count", "must be positive"));
+        String expected = "[{\"field\":\"items[2].count\",\"message\":\"must be less than 10\"},"
+                + "{\"field\":\"items[].count\",\"message\":\"must be positive\",\"count\":3},"
+                + "{\"field\":\"items[1].name\",\"message\":\"must not be blank\"}]";
+        ObjectMapper objectMapper = new ObjectMapper();
+        assertEquals(expected, objectMapper.writeValueAsString(
+                new ViolationGroups<>(violations, Function.identity(), 3)));
+
+        // The same groups are rendered in the same order, whatever the order of the violations.
+        List<Violation> shuffled = new ArrayList<>(violations);
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            Collections.shuffle(shuffled, random);
+            assertEquals(expected, objectMapper.writeValueAsString(
+                    new ViolationGroups<>(shuffled, Function.identity(), 3)));
+        }
+    }
+
+    @Test
+    public void testRemoveIndexes() {
+        assertEquals("items[].count", ViolationGroups.removeIndexes("items[12].count"));
+        assertEquals("map[].values[]", ViolationGroups.removeIndexes("map[key].values[0]"));
+        assertEquals("name", ViolationGroups.removeIndexes("name"));
+    }
+}
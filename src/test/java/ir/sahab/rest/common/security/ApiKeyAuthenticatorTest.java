@@ -0,0 +1,116 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.ApiKeyAuthenticator.API_KEY_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.security.ApiKeyAuthenticatorTest.RestServiceSetup;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class ApiKeyAuthenticatorTest {
+
+    private static final File keyFile = createKeyFile();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testApiKeys() throws Exception {
+        callProtectedApi("key-of-saeed").andExpect(status().isOk());
+        callProtectedApi("key-of-ali").andExpect(status().isForbidden());
+        callProtectedApi("key-of-reza").andExpect(status().isOk());
+        callProtectedApi("sha256:" + sha256Hex("key-of-reza")).andExpect(status().isUnauthorized());
+        callProtectedApi("unknown-key").andExpect(status().isUnauthorized());
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get(REST_BASE_PATH + "/blocking-call")
+                .param("durationMillis", "0")
+                .header(API_KEY_HEADER, "key-of-ali"))
+                .andExpect(content().string("ali"));
+
+        // Revoke the key of saeed and grant the permission to ali.
+        writeKeys("key-of-ali=ali,sample.permission");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (callProtectedApi("key-of-ali").andReturn().getResponse().getStatus() != 200) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Changes of the key file are not reloaded.");
+            }
+            Thread.sleep(50);
+        }
+        callProtectedApi("key-of-saeed").andExpect(status().isUnauthorized());
+    }
+
+    private ResultActions callProtectedApi(String apiKey) throws Exception {
+        return mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(API_KEY_HEADER, apiKey));
+    }
+
+    private static File createKeyFile() {
+        try {
+            File file = File.createTempFile("api-keys", ".txt");
+            file.deleteOnExit();
+            Files.write(file.toPath(), ("# Test keys\n"
+                    + "key-of-saeed=saeed,sample.permission,orders.read\n"
+                    + "\n"
+                    + "key-of-ali=ali\n"
+                    + "sha256:" + sha256Hex("key-of-reza") + "=reza,sample.permission\n").getBytes(StandardCharsets.UTF_8));
+            return file;
+        } catch (IOException e) {
+            throw new AssertionError("Unable to create the key file.", e);
+        }
+    }
+
+    private static String sha256Hex(String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return String.format("%064x", new BigInteger(1, hash));
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is not available.", e);
+        }
+    }
+
+    private static void writeKeys(String keys) throws IOException {
+        long lastModified = keyFile.lastModified();
+        Files.write(keyFile.toPath(), keys.getBytes(StandardCharsets.UTF_8));
+        // Make sure the change is visible even on file systems with coarse modification times.
+        keyFile.setLastModified(lastModified + TimeUnit.SECONDS.toMillis(2));
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class RestServiceSetup {
+
+        @Bean
+        public Authenticator authenticator() {
+            return new ApiKeyAuthenticator(keyFile.getAbsolutePath(), 100, TimeUnit.MILLISECONDS);
+        }
+    }
+}
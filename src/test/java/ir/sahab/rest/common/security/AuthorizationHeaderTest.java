@@ -0,0 +1,58 @@
+package ir.sahab.rest.common.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+public class AuthorizationHeaderTest {
+
+    @Test
+    public void testSchemeAndCredentials() {
+        AuthorizationHeader header = AuthorizationHeader.parse("bearer   abc.def.ghi  ");
+        assertTrue(header.hasScheme(AuthorizationHeader.BEARER));
+        assertFalse(header.hasScheme(AuthorizationHeader.BASIC));
+        assertEquals("abc.def.ghi", header.getCredentials().toString());
+        assertEquals("abc.def.ghi", header.getCredentialsString());
+
+        assertTrue(AuthorizationHeader.parse("ApiKey 123").hasScheme(AuthorizationHeader.API_KEY));
+        assertFalse(AuthorizationHeader.parse("Basicxyz").hasScheme(AuthorizationHeader.BASIC));
+        assertNull(AuthorizationHeader.parse(null));
+        assertNull(AuthorizationHeader.parse(""));
+    }
+
+    @Test
+    public void testDecodeBasic() {
+        UsernamePasswordAuthenticationToken credentials =
+                AuthorizationHeader.parse(HttpBasicAuthentication.of("saeed", "pa:ss")).decodeBasic();
+        assertEquals("saeed", credentials.getName());
+        assertEquals("pa:ss", credentials.getCredentials());
+
+        // Unpadded, non-ASCII and longer than the thread buffer
+        String longPassword = new String(new char[300]).replace('\0', 'x');
+        String encoded = Base64.getEncoder().withoutPadding()
+                .encodeToString(("علی:" + longPassword).getBytes(StandardCharsets.UTF_8));
+        credentials = AuthorizationHeader.parse("BASIC " + encoded).decodeBasic();
+        assertEquals("علی", credentials.getName());
+        assertEquals(longPassword, credentials.getCredentials());
+    }
+
+    @Test
+    public void testInvalidBasic() {
+        String noColon = Base64.getEncoder().encodeToString("saeed".getBytes(StandardCharsets.UTF_8));
+        for (String value : new String[] {"Basic " + noColon, "Basic ***", "Basic", "Basic YQ=b", "Bearer abc"}) {
+            try {
+                AuthorizationHeader.parse(value).decodeBasic();
+                throw new AssertionError("Invalid header is decoded: " + value);
+            } catch (BadCredentialsException e) {
+                // Expected
+            }
+        }
+    }
+}
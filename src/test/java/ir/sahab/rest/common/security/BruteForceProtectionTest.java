@@ -0,0 +1,112 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.security.BruteForceDetector.Offender;
+import ir.sahab.rest.common.security.BruteForceProtectionTest.RestServiceSetup;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class BruteForceProtectionTest {
+
+    private static final int MAX_FAILURES_PER_IP = 5;
+    private static final int MAX_FAILURES_PER_USERNAME = 3;
+
+    private static final AtomicInteger authenticatorCalls = new AtomicInteger();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BruteForceDetector detector;
+
+    @Test
+    public void testBlocking() throws Exception {
+        // Guessing the password of a user from several IPs
+        for (int i = 0; i < MAX_FAILURES_PER_USERNAME; i++) {
+            mockMvc.perform(request("10.0.0." + i, "ali", "guess" + i))
+                    .andExpect(status().isUnauthorized());
+        }
+        int calls = authenticatorCalls.get();
+        // Now even the right password of the user is rejected without verifying it.
+        mockMvc.perform(request("10.0.0.100", "ali", "pass"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        assertEquals(calls, authenticatorCalls.get());
+        // But the other users are not affected.
+        mockMvc.perform(request("10.0.0.100", "saeed", "pass"))
+                .andExpect(status().isOk());
+
+        // Trying lots of users from a single IP
+        for (int i = 0; i < MAX_FAILURES_PER_IP; i++) {
+            mockMvc.perform(request("10.0.1.1", "user" + i, "guess"))
+                    .andExpect(status().isUnauthorized());
+        }
+        mockMvc.perform(request("10.0.1.1", "saeed", "pass"))
+                .andExpect(status().isTooManyRequests());
+        mockMvc.perform(request("10.0.1.2", "saeed", "pass"))
+                .andExpect(status().isOk());
+
+        Map<String, List<Offender>> topOffenders = detector.getTopOffenders();
+        assertEquals(1, topOffenders.get(BruteForceDetector.IP).size());
+        assertEquals("10.0.1.1", topOffenders.get(BruteForceDetector.IP).get(0).getSource());
+        assertEquals(MAX_FAILURES_PER_IP, topOffenders.get(BruteForceDetector.IP).get(0).getFailures());
+        assertEquals(1, topOffenders.get(BruteForceDetector.USERNAME).size());
+        assertEquals("ali", topOffenders.get(BruteForceDetector.USERNAME).get(0).getSource());
+    }
+
+    private static MockHttpServletRequestBuilder request(String ip, String username, String password) {
+        return get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of(username, password))
+                .with(request -> {
+                    request.setRemoteAddr(ip);
+                    return request;
+                });
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**", bruteForceProtection = @BruteForceProtection(
+            maxFailuresPerIp = MAX_FAILURES_PER_IP, maxFailuresPerUsername = MAX_FAILURES_PER_USERNAME))
+    public static class RestServiceSetup {
+
+        @Bean
+        public Authenticator authenticator() {
+            return request -> {
+                authenticatorCalls.incrementAndGet();
+                UsernamePasswordAuthenticationToken token =
+                        AuthorizationHeader.parse(request.getHeader(AuthorizationHeader.NAME)).decodeBasic();
+                if (!"pass".equals(token.getCredentials())) {
+                    throw SecurityExceptions.badCredentials("Invalid username/password!");
+                }
+                return token;
+            };
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.security.Authenticator.BasicAuthenticator;
+import ir.sahab.rest.common.security.CompositeAuthenticatorTest.RestServiceSetup;
+import java.util.Collections;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class CompositeAuthenticatorTest {
+
+    private static final String API_KEY_HEADER = "X-API-KEY";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testDispatching() throws Exception {
+        mockMvc.perform(whoAmI().header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of("saeed", "pass")))
+                .andExpect(status().isOk())
+                .andExpect(content().string("saeed"));
+        mockMvc.perform(whoAmI().header(AUTHORIZATION_HEADER, "bearer token-of-ali"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("ali"));
+        mockMvc.perform(whoAmI().header(API_KEY_HEADER, "key-of-billing"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("billing"));
+
+        // The scheme takes precedence over the other headers.
+        mockMvc.perform(whoAmI()
+                .header(AUTHORIZATION_HEADER, "Bearer token-of-ali")
+                .header(API_KEY_HEADER, "key-of-billing"))
+                .andExpect(content().string("ali"));
+
+        // Failure of the chosen delegate
+        mockMvc.perform(whoAmI().header(AUTHORIZATION_HEADER, "Bearer invalid"))
+                .andExpect(status().isUnauthorized());
+        // Unsupported scheme
+        mockMvc.perform(whoAmI().header(AUTHORIZATION_HEADER, "Digest username=\"saeed\""))
+                .andExpect(status().isUnauthorized());
+        // No credentials
+        mockMvc.perform(whoAmI())
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void testClose() {
+        ClosingAuthenticator jwtAuthenticator = new ClosingAuthenticator(null);
+        ClosingAuthenticator apiKeyAuthenticator = new ClosingAuthenticator(new IllegalStateException("Failed"));
+        CompositeAuthenticator authenticator = new CompositeAuthenticator()
+                .withScheme(AuthorizationHeader.BASIC, new BasicAuthenticator())
+                .withScheme(AuthorizationHeader.BEARER, jwtAuthenticator)
+                .withHeader(API_KEY_HEADER, apiKeyAuthenticator)
+                .withHeader("X-OTHER-API-KEY", apiKeyAuthenticator);
+        try {
+            authenticator.close();
+            fail("The failure of closing a delegate is not thrown.");
+        } catch (IllegalStateException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+        assertEquals(1, jwtAuthenticator.closed);
+        assertEquals(1, apiKeyAuthenticator.closed);
+    }
+
+    private static MockHttpServletRequestBuilder whoAmI() {
+        return get(REST_BASE_PATH + "/blocking-call").param("durationMillis", "0");
+    }
+
+    private static class ClosingAuthenticator implements Authenticator, AutoCloseable {
+
+        private final RuntimeException failure;
+        private int closed;
+
+        ClosingAuthenticator(RuntimeException failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public Authentication authenticate(HttpServletRequest request) {
+            throw new BadCredentialsException("Not supported!");
+        }
+
+        @Override
+        public void close() {
+            closed++;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class RestServiceSetup {
+
+        @Bean
+        public Authenticator authenticator() {
+            return new CompositeAuthenticator()
+                    .withScheme(AuthorizationHeader.BASIC, new BasicAuthenticator())
+                    .withScheme(AuthorizationHeader.BEARER, request -> {
+                        String token = AuthorizationHeader.parse(request.getHeader(AuthorizationHeader.NAME))
+                                .getCredentialsString();
+                        if (!token.startsWith("token-of-")) {
+                            throw new BadCredentialsException("Invalid token!");
+                        }
+                        return new UsernamePasswordAuthenticationToken(
+                                token.substring("token-of-".length()), null, Collections.emptySet());
+                    })
+                    .withHeader(API_KEY_HEADER, request -> new UsernamePasswordAuthenticationToken(
+                            request.getHeader(API_KEY_HEADER).substring("key-of-".length()), null,
+                            Collections.emptySet()));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.options;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.security.CorsTest.RestServiceSetup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class CorsTest {
+
+    private static final String ALLOWED_ORIGIN = "https://app.example.com";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testPreflight() throws Exception {
+        // The preflight of a protected API has no credentials, but it is answered before authentication.
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(options(REST_BASE_PATH + "/protected-api")
+                    .header(HttpHeaders.ORIGIN, ALLOWED_ORIGIN)
+                    .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "GET")
+                    .header(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS, "authorization"))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, ALLOWED_ORIGIN))
+                    .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, "GET, POST"))
+                    .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, "authorization"))
+                    .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true"))
+                    .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_MAX_AGE, "600"));
+        }
+
+        // Another origin
+        mockMvc.perform(options(REST_BASE_PATH + "/protected-api")
+                .header(HttpHeaders.ORIGIN, "https://evil.example.com")
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "GET"))
+                .andExpect(status().isForbidden())
+                .andExpect(header().doesNotExist(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN));
+        // A method which is not allowed
+        mockMvc.perform(options(REST_BASE_PATH + "/protected-api")
+                .header(HttpHeaders.ORIGIN, ALLOWED_ORIGIN)
+                .header(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "DELETE"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    public void testActualRequest() throws Exception {
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(HttpHeaders.ORIGIN, ALLOWED_ORIGIN)
+                .header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of("saeed", "pass")))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, ALLOWED_ORIGIN))
+                .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, "X-Auth-Token"));
+
+        // The browser should be able to read the errors too.
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(HttpHeaders.ORIGIN, ALLOWED_ORIGIN))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, ALLOWED_ORIGIN));
+
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(HttpHeaders.ORIGIN, "https://evil.example.com")
+                .header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of("saeed", "pass")))
+                .andExpect(header().doesNotExist(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN));
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**", cors = @Cors(allowedOrigins = ALLOWED_ORIGIN,
+            allowedMethods = {"GET", "POST"}, exposedHeaders = "X-Auth-Token", allowCredentials = true,
+            maxAgeSeconds = 600))
+    public static class RestServiceSetup {
+    }
+}
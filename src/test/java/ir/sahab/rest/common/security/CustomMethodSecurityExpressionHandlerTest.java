@@ -0,0 +1,98 @@
+package ir.sahab.rest.common.security;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.security.CustomMethodSecurityExpressionHandlerTest.RestServiceSetup;
+import ir.sahab.rest.common.security.CustomSecurityWithCustomAuthenticatorTest.TestAuthenticator;
+import ir.sahab.rest.common.testapp.TestOrderController;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionOperations;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Checks that the method security expression handler of the application is used instead of the default one of the
+ * custom security.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class CustomMethodSecurityExpressionHandlerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private CountingExpressionHandler countingExpressionHandler;
+
+    @Test
+    public void testApplicationHandlerIsUsed() throws Exception {
+        assertSame(countingExpressionHandler, applicationContext.getBean(MethodSecurityExpressionHandler.class));
+
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/protected-with-permission")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("username", "saeed"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/protected-with-permission")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("username", "ali"))
+                .andExpect(status().isForbidden());
+        assertTrue(countingExpressionHandler.roots.get() >= 2);
+    }
+
+    /**
+     * A custom handler which keeps the caching of the default handler by extending it.
+     */
+    public static class CountingExpressionHandler extends CachingMethodSecurityExpressionHandler {
+
+        private final AtomicInteger roots = new AtomicInteger();
+
+        @Override
+        protected MethodSecurityExpressionOperations createSecurityExpressionRoot(Authentication authentication,
+                MethodInvocation invocation) {
+            roots.incrementAndGet();
+            return super.createSecurityExpressionRoot(authentication, invocation);
+        }
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**", authorityPrefix = "orders.")
+    public static class RestServiceSetup {
+
+        @Bean
+        public Authenticator authenticator() {
+            return new TestAuthenticator();
+        }
+
+        @Bean
+        public CountingExpressionHandler countingExpressionHandler() {
+            CountingExpressionHandler handler = new CountingExpressionHandler();
+            handler.setDefaultRolePrefix("orders.");
+            return handler;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package ir.sahab.rest.common.security;
 
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.google.common.collect.ImmutableSet;
@@ -20,6 +22,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.http.MediaType;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -37,6 +40,9 @@ public class CustomSecurityWithCustomAuthenticatorTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private MethodSecurityExpressionHandler methodSecurityExpressionHandler;
+
     @Test
     public void testCustomAuthenticator() throws Exception {
 
@@ -70,6 +76,64 @@ public class CustomSecurityWithCustomAuthenticatorTest {
                 .andExpect(status().isForbidden());
     }
 
+    @Test
+    public void testCachedMethodSecurityDecisions() throws Exception {
+        assertTrue(methodSecurityExpressionHandler instanceof CachingMethodSecurityExpressionHandler);
+
+        // Decisions are cached per authority set, so the decision made for one principal must not be reused for a
+        // principal with different authorities.
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/protected-with-permission")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .header("username", "saeed"))
+                    .andExpect(status().isOk());
+            mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/protected-with-permission")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .header("username", "ali"))
+                    .andExpect(status().isForbidden());
+        }
+    }
+
+    @Test
+    public void testCurrentPrincipalAuthorities() throws Exception {
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/current-principal/has-any-authority")
+                .param("authorities", "orders.unknown", "orders.sample.permission")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("username", "saeed"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("true"));
+
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/current-principal/has-all-authorities")
+                .param("authorities", "orders.unknown", "orders.sample.permission")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("username", "saeed"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("false"));
+
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/current-principal/has-all-authorities")
+                .param("authorities", "orders.sample.permission")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("username", "saeed"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("true"));
+
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/current-principal/has-any-authority")
+                .param("authorities", "orders.sample.permission")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("username", "ali"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("false"));
+    }
+
+    @Test
+    public void testAuthenticationIsNotWrapped() throws Exception {
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/current-principal/authentication-type")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("username", "saeed"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(UsernamePasswordAuthenticationToken.class.getSimpleName()));
+    }
+
     @Test
     public void testIgnoredPath() throws Exception {
         mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/ignored-path")
@@ -6,6 +6,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 import ir.sahab.rest.common.security.CustomSecurityWithDefaultAuthenticatorTest.RestServiceSetup;
 import ir.sahab.rest.common.testapp.TestOrderController;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +44,13 @@ public class CustomSecurityWithDefaultAuthenticatorTest {
                 .accept(MediaType.APPLICATION_JSON)
                 .header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of(TEST_VALID_USER_NAME, "pass")))
                 .andExpect(status().isOk());
+
+        // Call the service with a basic authentication header which has no password part.
+        mockMvc.perform(get(TestOrderController.REST_BASE_PATH + "/protected-api")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION_HEADER, "Basic " + Base64.getEncoder().encodeToString(
+                        TEST_VALID_USER_NAME.getBytes(StandardCharsets.UTF_8))))
+                .andExpect(status().isUnauthorized());
     }
 
     @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
@@ -0,0 +1,162 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.apierror.EnableApiErrorMapping;
+import ir.sahab.rest.common.security.HashedPasswordAuthenticatorTest.RestServiceSetup;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class HashedPasswordAuthenticatorTest {
+
+    private static final long VERIFICATION_MILLIS = 500;
+
+    private static final AtomicInteger verifications = new AtomicInteger();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        verifications.set(0);
+    }
+
+    @Test
+    public void testPasswordVerification() throws Exception {
+        callProtectedApi("saeed", "secret").andExpect(status().isOk());
+        callProtectedApi("saeed", "secret").andExpect(status().isOk());
+        // The second request is authenticated by the cached credentials.
+        assertEquals(1, verifications.get());
+
+        callProtectedApi("saeed", "wrong").andExpect(status().isUnauthorized());
+        callProtectedApi("unknown", "secret").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void testOverload() throws Exception {
+        // There is one verifier thread with a queue of one request, so some of these concurrent requests are rejected.
+        int requests = 6;
+        ExecutorService clients = Executors.newFixedThreadPool(requests);
+        try {
+            List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                String password = "wrong-" + i;
+                responses.add(clients.submit(() -> callProtectedApi("saeed", password).andReturn().getResponse()));
+            }
+            int overloaded = 0;
+            for (Future<MockHttpServletResponse> response : responses) {
+                if (response.get().getStatus() == 503) {
+                    overloaded++;
+                } else {
+                    assertEquals(401, response.get().getStatus());
+                }
+            }
+            assertTrue(overloaded > 0);
+        } finally {
+            clients.shutdownNow();
+        }
+
+        // The verifier is not overloaded anymore.
+        callProtectedApi("saeed", "secret").andExpect(status().isOk());
+    }
+
+    @Test
+    public void testOverloadResponse() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try {
+            // Occupy the verifier thread and its queue.
+            Future<?> first = clients.submit(() -> callProtectedApi("saeed", "first"));
+            Future<?> second = clients.submit(() -> callProtectedApi("saeed", "second"));
+            Thread.sleep(VERIFICATION_MILLIS / 2);
+            callProtectedApi("saeed", "third")
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(jsonPath("$.error_code").value(SecurityErrorCode.AUTHENTICATION_OVERLOADED.name()))
+                    .andExpect(jsonPath("$.tracking_id").exists());
+            // Let the verifier get idle for the other tests.
+            first.get();
+            second.get();
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    private ResultActions callProtectedApi(String user, String password) throws Exception {
+        return mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of(user, password)));
+    }
+
+    /**
+     * A password encoder which counts the verifications and makes them as slow as real password hashes.
+     */
+    private static class SlowPasswordEncoder implements PasswordEncoder {
+
+        private final PasswordEncoder delegate = new BCryptPasswordEncoder(4);
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            return delegate.encode(rawPassword);
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            verifications.incrementAndGet();
+            try {
+                Thread.sleep(VERIFICATION_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return delegate.matches(rawPassword, encodedPassword);
+        }
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableApiErrorMapping
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class RestServiceSetup {
+
+        @Bean
+        public Authenticator authenticator() {
+            PasswordEncoder passwordEncoder = new SlowPasswordEncoder();
+            InMemoryUserDetailsManager users = new InMemoryUserDetailsManager(User.withUsername("saeed")
+                    .password(passwordEncoder.encode("secret"))
+                    .authorities("sample.permission")
+                    .build());
+            return new HashedPasswordAuthenticator(users, passwordEncoder, 1, 1, 100, 60);
+        }
+    }
+}
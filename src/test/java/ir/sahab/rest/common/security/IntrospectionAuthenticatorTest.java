@@ -0,0 +1,147 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ir.sahab.rest.common.security.IntrospectionAuthenticatorTest.RestServiceSetup;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class IntrospectionAuthenticatorTest {
+
+    private static final int READ_TIMEOUT_MILLIS = 500;
+
+    private static final AtomicInteger introspectionCalls = new AtomicInteger();
+    private static final HttpServer identityProvider = startIdentityProvider();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        introspectionCalls.set(0);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        identityProvider.stop(0);
+    }
+
+    @Test
+    public void testActiveToken() throws Exception {
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(AUTHORIZATION_HEADER, "Bearer active-token"))
+                .andExpect(status().isOk());
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(AUTHORIZATION_HEADER, "Bearer active-token"))
+                .andExpect(status().isOk());
+        // The second request is authenticated by the cached result.
+        assertEquals(1, introspectionCalls.get());
+    }
+
+    @Test
+    public void testInactiveToken() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                    .header(AUTHORIZATION_HEADER, "Bearer invalid-token"))
+                    .andExpect(status().isUnauthorized());
+        }
+        // The invalid token is introspected just once.
+        assertEquals(1, introspectionCalls.get());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        long start = System.nanoTime();
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer slow-token"))
+                .andExpect(status().isUnauthorized());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5 * READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Starts a stub introspection endpoint which knows "active-token" as an active token with the sample.permission
+     * scope, does not respond to "slow-token" in time, and knows all the other tokens as inactive tokens.
+     */
+    private static HttpServer startIdentityProvider() {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/introspect", IntrospectionAuthenticatorTest::introspect);
+            // The slow responses must not block the other ones.
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new AssertionError("Unable to start the stub identity provider.", e);
+        }
+    }
+
+    private static void introspect(HttpExchange exchange) throws IOException {
+        introspectionCalls.incrementAndGet();
+        String body = new Scanner(exchange.getRequestBody(), StandardCharsets.UTF_8.name()).useDelimiter("\\A").next();
+        String response;
+        if (body.contains("token=active-token")) {
+            long expiration = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60;
+            response = "{\"active\":true,\"sub\":\"saeed\",\"scope\":\"sample.permission\",\"exp\":" + expiration + "}";
+        } else if (body.contains("token=slow-token")) {
+            try {
+                Thread.sleep(4 * READ_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response = "{\"active\":false}";
+        } else {
+            response = "{\"active\":false}";
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class RestServiceSetup {
+
+        @Bean
+        public Authenticator authenticator() {
+            String url = "http://localhost:" + identityProvider.getAddress().getPort() + "/introspect";
+            return new IntrospectionAuthenticator(url, "client", "secret", READ_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS,
+                    100, 60, 60);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.security.JwtAuthenticatorTest.RestServiceSetup;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class JwtAuthenticatorTest {
+
+    private static final String KEY_ID = "test-key";
+    private static final String ISSUER = "https://idp.example.com";
+    private static final String AUDIENCE = "orders-service";
+    private static final KeyPair keyPair = generateKeyPair();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtAuthenticator authenticator;
+
+    @Test
+    public void testJwtAuthentication() throws Exception {
+        long expiration = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60;
+
+        // Token with the required permission
+        String token = createToken(KEY_ID, "saeed", expiration, "[\"sample.permission\"]");
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(AUTHORIZATION_HEADER, "Bearer " + token))
+                .andExpect(status().isOk());
+
+        // Token without the required permission
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(AUTHORIZATION_HEADER, "Bearer " + createToken(KEY_ID, "ali", expiration, "[]")))
+                .andExpect(status().isForbidden());
+
+        // Expired token
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + createToken(KEY_ID, "saeed", expiration - 120, "[]")))
+                .andExpect(status().isUnauthorized());
+
+        // Token signed by an unknown key
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + createToken("other-key", "saeed", expiration, "[]")))
+                .andExpect(status().isUnauthorized());
+
+        // Tampered token
+        String[] parts = token.split("\\.");
+        String tamperedClaims = encode("{\"sub\":\"admin\",\"exp\":" + expiration + "}");
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + parts[0] + "." + tamperedClaims + "." + parts[2]))
+                .andExpect(status().isUnauthorized());
+
+        // No token
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    public void testVerifiedTokensAreCached() throws Exception {
+        long expiration = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60;
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(AUTHORIZATION_HEADER,
+                "Bearer " + createToken(KEY_ID, "saeed", expiration, "\"orders.read orders.write\""));
+
+        Authentication authentication = authenticator.authenticate(request);
+        assertEquals("saeed", authentication.getName());
+        assertEquals(2, authentication.getAuthorities().size());
+        assertSame(authentication, authenticator.authenticate(request));
+    }
+
+    @Test
+    public void testIssuerAndAudience() throws Exception {
+        long expiration = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60;
+        String claims = ",\"sub\":\"saeed\",\"exp\":" + expiration + "}";
+
+        // The audience can be a single string too
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + signToken(KEY_ID,
+                        "{\"iss\":\"" + ISSUER + "\",\"aud\":\"" + AUDIENCE + "\"" + claims)))
+                .andExpect(status().isOk());
+
+        // Token of another issuer
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + signToken(KEY_ID,
+                        "{\"iss\":\"https://other.example.com\",\"aud\":\"" + AUDIENCE + "\"" + claims)))
+                .andExpect(status().isUnauthorized());
+
+        // Token without issuer
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + signToken(KEY_ID,
+                        "{\"aud\":\"" + AUDIENCE + "\"" + claims)))
+                .andExpect(status().isUnauthorized());
+
+        // Token of another audience
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + signToken(KEY_ID,
+                        "{\"iss\":\"" + ISSUER + "\",\"aud\":[\"billing-service\",\"users-service\"]" + claims)))
+                .andExpect(status().isUnauthorized());
+
+        // Token without audience
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(AUTHORIZATION_HEADER, "Bearer " + signToken(KEY_ID,
+                        "{\"iss\":\"" + ISSUER + "\"" + claims)))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private static String createToken(String keyId, String subject, long expiration, String authorities)
+            throws GeneralSecurityException {
+        return signToken(keyId, "{\"iss\":\"" + ISSUER + "\",\"aud\":[\"" + AUDIENCE + "\"],\"sub\":\"" + subject
+                + "\",\"exp\":" + expiration + ",\"authorities\":" + authorities + "}");
+    }
+
+    private static String signToken(String keyId, String claimsJson) throws GeneralSecurityException {
+        String header = encode("{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"" + keyId + "\"}");
+        String claims = encode(claimsJson);
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update((header + "." + claims).getBytes(StandardCharsets.US_ASCII));
+        return header + "." + claims + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature.sign());
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String encode(BigInteger number) {
+        byte[] bytes = number.toByteArray();
+        int offset = bytes[0] == 0 ? 1 : 0;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                Arrays.copyOfRange(bytes, offset, bytes.length));
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new AssertionError("Unable to generate RSA key pair.", e);
+        }
+    }
+
+    private static File writeKeySet() throws IOException {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        File file = File.createTempFile("jwks", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), ("{\"keys\":[{\"kty\":\"RSA\",\"use\":\"sig\",\"kid\":\"" + KEY_ID + "\","
+                + "\"n\":\"" + encode(publicKey.getModulus()) + "\",\"e\":\""
+                + encode(publicKey.getPublicExponent()) + "\"}]}").getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class RestServiceSetup {
+
+        @Bean
+        public JwtAuthenticator authenticator() throws IOException {
+            return new JwtAuthenticator("file:" + writeKeySet().getAbsolutePath(), ISSUER, AUDIENCE);
+        }
+    }
+}
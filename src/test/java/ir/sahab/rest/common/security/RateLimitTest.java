@@ -0,0 +1,75 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.apierror.EnableApiErrorMapping;
+import ir.sahab.rest.common.security.RateLimitTest.RestServiceSetup;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class RateLimitTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testRateLimit() throws Exception {
+        // Each principal can call the limited API twice a minute.
+        callProtectedApi("ali").andExpect(status().isOk());
+        callProtectedApi("ali").andExpect(status().isOk());
+        callProtectedApi("ali")
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER))
+                .andExpect(jsonPath("$.status").value("429"))
+                .andExpect(jsonPath("$.error_code").value(SecurityErrorCode.TOO_MANY_REQUESTS.name()))
+                .andExpect(jsonPath("$.user").value("ali"))
+                .andExpect(jsonPath("$.api_path").value(REST_BASE_PATH + "/protected-api"))
+                .andExpect(jsonPath("$.tracking_id").exists());
+
+        // Other principals have their own buckets.
+        callProtectedApi("saeed").andExpect(status().isOk());
+
+        // Other APIs are not limited.
+        mockMvc.perform(get(REST_BASE_PATH + "/current-principal/has-any-authority")
+                .param("authorities", "admin")
+                .header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of("ali", "pass")))
+                .andExpect(status().isOk());
+    }
+
+    private ResultActions callProtectedApi(String user) throws Exception {
+        return mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(AUTHORIZATION_HEADER, HttpBasicAuthentication.of(user, "pass")));
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableApiErrorMapping
+    @EnableCustomSecurity(
+            applicationBasePathPattern = "/api/**",
+            rateLimits = @RateLimit(pathPattern = REST_BASE_PATH + "/protected-api", requests = 2, periodSeconds = 60))
+    public static class RestServiceSetup {
+    }
+}
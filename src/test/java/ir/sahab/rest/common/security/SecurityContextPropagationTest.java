@@ -0,0 +1,143 @@
+package ir.sahab.rest.common.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import ir.sahab.rest.common.security.SecurityContextPropagationTest.RestServiceSetup;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+public class SecurityContextPropagationTest {
+
+    @Autowired
+    private ExecutorService singleThreadExecutor;
+
+    @Autowired
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @Autowired
+    private BatchExecutor batchExecutor;
+
+    @After
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testExecutorService() throws Exception {
+        // The single worker thread of the pool is created while a principal is authenticated in the submitting thread.
+        authenticate("saeed");
+        assertEquals("saeed", singleThreadExecutor.submit(CurrentPrincipal::getName).get());
+        assertEquals("saeed", CompletableFuture.supplyAsync(CurrentPrincipal::getName, singleThreadExecutor).get());
+
+        // The next tasks run on the same pooled thread, but the previous principal must not leak to them.
+        authenticate("ali");
+        assertEquals("ali", singleThreadExecutor.submit(CurrentPrincipal::getName).get());
+        assertEquals("ali", singleThreadExecutor.invokeAll(
+                Collections.singletonList(CurrentPrincipal::getName)).get(0).get());
+
+        SecurityContextHolder.clearContext();
+        assertEquals("", singleThreadExecutor.submit(CurrentPrincipal::getName).get());
+        assertEquals("", CompletableFuture.supplyAsync(CurrentPrincipal::getName, singleThreadExecutor).get());
+    }
+
+    @Test
+    public void testTaskScheduler() throws Exception {
+        authenticate("saeed");
+        CompletableFuture<String> principal = new CompletableFuture<>();
+        taskScheduler.schedule(() -> principal.complete(CurrentPrincipal.getName()), new Date());
+        assertEquals("saeed", principal.get(10, TimeUnit.SECONDS));
+
+        SecurityContextHolder.clearContext();
+        CompletableFuture<String> anonymousPrincipal = new CompletableFuture<>();
+        taskScheduler.schedule(() -> anonymousPrincipal.complete(CurrentPrincipal.getName()), new Date());
+        assertEquals("", anonymousPrincipal.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOtherMethods() {
+        authenticate("saeed");
+        // The methods which just have the names of the submission methods get their original arguments.
+        Runnable task = () -> { };
+        List<Object> batch = Arrays.asList(task, "item");
+        assertSame(task, batchExecutor.schedule(task));
+        assertSame(batch, batchExecutor.invokeAll(batch));
+
+        CompletableFuture<String> principal = new CompletableFuture<>();
+        batchExecutor.execute(() -> principal.complete(CurrentPrincipal.getName()));
+        assertEquals("saeed", principal.join());
+    }
+
+    private static void authenticate(String username) {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(username, "password", Collections.emptySet()));
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class RestServiceSetup {
+
+        @Bean(destroyMethod = "shutdown")
+        public ExecutorService singleThreadExecutor() {
+            return Executors.newSingleThreadExecutor();
+        }
+
+        @Bean
+        public ThreadPoolTaskScheduler taskScheduler() {
+            ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+            taskScheduler.setPoolSize(1);
+            return taskScheduler;
+        }
+
+        @Bean
+        public BatchExecutor batchExecutor() {
+            return new BatchExecutor();
+        }
+    }
+
+    /**
+     * An executor which has other methods with the names of the task submission methods.
+     */
+    public static class BatchExecutor implements Executor {
+
+        @Override
+        public void execute(Runnable command) {
+            new Thread(command).start();
+        }
+
+        public Object schedule(Object item) {
+            return item;
+        }
+
+        public Collection<?> invokeAll(Collection<?> items) {
+            return items;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ir.sahab.rest.common.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.security.authentication.BadCredentialsException;
+
+public class SecurityExceptionsTest {
+
+    @After
+    public void tearDown() {
+        CustomSecurityMetadata.getInstance().fillFrom(AnnotationMetadata.introspect(DefaultSetup.class));
+    }
+
+    @Test
+    public void testStackTraces() {
+        CustomSecurityMetadata.getInstance().fillFrom(AnnotationMetadata.introspect(DefaultSetup.class));
+        assertTrue(SecurityExceptions.badCredentials("Invalid!").getStackTrace().length > 0);
+        assertTrue(new AuthenticationOverloadException("Overloaded!").getStackTrace().length > 0);
+
+        CustomSecurityMetadata.getInstance().fillFrom(AnnotationMetadata.introspect(StacklessSetup.class));
+        IllegalStateException cause = new IllegalStateException();
+        BadCredentialsException exception = SecurityExceptions.badCredentials("Invalid!", cause);
+        assertEquals(0, exception.getStackTrace().length);
+        assertEquals("Invalid!", exception.getMessage());
+        assertSame(cause, exception.getCause());
+        assertEquals(0, SecurityExceptions.credentialsExpired("Expired!").getStackTrace().length);
+        assertEquals(0, new AuthenticationOverloadException("Overloaded!").getStackTrace().length);
+    }
+
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    private static class DefaultSetup {
+    }
+
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**", stacklessExceptions = true)
+    private static class StacklessSetup {
+    }
+}
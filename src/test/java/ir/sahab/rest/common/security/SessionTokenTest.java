@@ -0,0 +1,127 @@
+package ir.sahab.rest.common.security;
+
+import static ir.sahab.rest.common.testapp.TestOrderController.REST_BASE_PATH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import ir.sahab.rest.common.security.SessionTokenTest.RestServiceSetup;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = {RestServiceSetup.class})
+@AutoConfigureMockMvc
+public class SessionTokenTest {
+
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final String USERNAME_HEADER = "username";
+
+    private static final AtomicInteger authenticatorCalls = new AtomicInteger();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testSessionToken() throws Exception {
+        String token = mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(USERNAME_HEADER, "saeed"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(SessionTokenService.HEADER))
+                .andReturn().getResponse().getHeader(SessionTokenService.HEADER);
+        assertEquals(1, authenticatorCalls.get());
+
+        // The token is enough for the next requests, and it holds the authorities of the principal.
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-with-permission")
+                .header(SessionTokenService.HEADER, token))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(SessionTokenService.HEADER));
+        assertEquals(1, authenticatorCalls.get());
+
+        // A forged token is ignored, so the request is authenticated by its other credentials.
+        String forgedToken = token.substring(0, token.indexOf('.')) + ".AAAA";
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(SessionTokenService.HEADER, forgedToken))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get(REST_BASE_PATH + "/protected-api")
+                .header(SessionTokenService.HEADER, forgedToken)
+                .header(USERNAME_HEADER, "ali"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(SessionTokenService.HEADER));
+        assertEquals(3, authenticatorCalls.get());
+    }
+
+    @Test
+    public void testVerification() throws Exception {
+        SessionTokenService service = new SessionTokenService(KEY, 1, TimeUnit.MINUTES);
+        Authentication authentication = new UsernamePasswordAuthenticationToken("saeed", null,
+                Collections.singleton(new SimpleGrantedAuthority("orders.read")));
+        String token = service.issue(authentication);
+
+        Authentication verified = new SessionTokenService(KEY, 1, TimeUnit.MINUTES).verify(token);
+        assertNotNull(verified);
+        assertEquals("saeed", verified.getName());
+        assertEquals(authentication.getAuthorities(), verified.getAuthorities());
+
+        // Another key
+        byte[] otherKey = KEY.clone();
+        otherKey[0]++;
+        assertNull(new SessionTokenService(otherKey, 1, TimeUnit.MINUTES).verify(token));
+        // Malformed tokens
+        assertNull(service.verify("abc"));
+        assertNull(service.verify("ab*c.def"));
+        assertNull(service.verify(null));
+
+        // Expired token
+        SessionTokenService shortLivedService = new SessionTokenService(KEY, 1, TimeUnit.MILLISECONDS);
+        token = shortLivedService.issue(authentication);
+        Thread.sleep(10);
+        assertNull(shortLivedService.verify(token));
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class RestServiceSetup {
+
+        @Bean
+        public Authenticator authenticator() {
+            return request -> {
+                authenticatorCalls.incrementAndGet();
+                String username = request.getHeader(USERNAME_HEADER);
+                if (username == null) {
+                    throw SecurityExceptions.badCredentials("No username is provided!");
+                }
+                return new UsernamePasswordAuthenticationToken(username, null,
+                        Collections.singleton(new SimpleGrantedAuthority("sample.permission")));
+            };
+        }
+
+        @Bean
+        public SessionTokenService sessionTokenService() {
+            return new SessionTokenService(KEY, 5, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ir.sahab.rest.common.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SlidingWindowSketchTest {
+
+    private static final long WINDOW_MILLIS = 6000;
+
+    @Test
+    public void testSlidingWindow() {
+        SlidingWindowSketch sketch = new SlidingWindowSketch(1024, 6, WINDOW_MILLIS);
+        long now = 60_000;
+        assertEquals(1, sketch.add("10.0.0.1", now));
+        assertEquals(2, sketch.add("10.0.0.1", now + 1500));
+        assertEquals(1, sketch.add("10.0.0.2", now + 1500));
+        assertEquals(0, sketch.estimate("10.0.0.3", now + 1500));
+
+        // The first failure leaves the window after a whole window.
+        assertEquals(2, sketch.estimate("10.0.0.1", now + WINDOW_MILLIS - 1));
+        assertEquals(1, sketch.estimate("10.0.0.1", now + WINDOW_MILLIS));
+        assertEquals(1, sketch.add("10.0.0.1", now + WINDOW_MILLIS + 1500));
+        assertEquals(0, sketch.estimate("10.0.0.1", now + 3 * WINDOW_MILLIS));
+        assertEquals(500, sketch.getMillisToNextSlice(now + 500));
+    }
+
+    @Test
+    public void testManyKeys() {
+        // A hundred thousand distinct sources share the same counters, but the repeating source is still counted
+        // accurately and the others are overestimated by a few failures at most.
+        SlidingWindowSketch sketch = new SlidingWindowSketch(16_384, 6, WINDOW_MILLIS);
+        long now = 60_000;
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add("source-" + i, now);
+            if (i % 1000 == 0) {
+                sketch.add("attacker", now);
+            }
+        }
+        int attackerCount = sketch.estimate("attacker", now);
+        assertTrue(attackerCount >= 100 && attackerCount <= 105);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sketch.estimate("source-" + i, now) <= 6);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ir.sahab.rest.common.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testBurst() {
+        TokenBucket bucket = new TokenBucket(3, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryTake());
+        }
+        // The next token is refilled in 20 minutes.
+        long waitNanos = bucket.tryTake();
+        assertTrue(waitNanos > TimeUnit.MINUTES.toNanos(19) && waitNanos <= TimeUnit.MINUTES.toNanos(20));
+    }
+
+    @Test
+    public void testHighRate() {
+        // A token per nanosecond is the highest rate of a bucket.
+        TokenBucket bucket = new TokenBucket(TimeUnit.SECONDS.toNanos(1), 1, TimeUnit.SECONDS);
+        assertEquals(0, bucket.tryTake());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooHighRate() {
+        // The refill time of each token would be rounded down to zero, so the bucket would never be empty.
+        new TokenBucket(TimeUnit.SECONDS.toNanos(1) + 1, 1, TimeUnit.SECONDS);
+    }
+}
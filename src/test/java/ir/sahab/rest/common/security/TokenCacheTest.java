@@ -0,0 +1,87 @@
+package ir.sahab.rest.common.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+public class TokenCacheTest {
+
+    @Test
+    public void testConcurrentMissesAreVerifiedOnce() throws Exception {
+        TokenCache<String> cache = new TokenCache<>(10, 1, TimeUnit.MINUTES);
+        AtomicInteger verifications = new AtomicInteger();
+        CountDownLatch verifying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TokenCache.Verifier<String> verifier = token -> {
+            verifications.incrementAndGet();
+            verifying.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new TokenCache.Entry<>("verified " + token, System.currentTimeMillis() + 60_000);
+        };
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> cache.get("token", verifier)));
+            }
+            // Let the other threads reach the cache while the first verification is blocked.
+            verifying.await();
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("verified token", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, verifications.get());
+        assertEquals("verified token", cache.get("token"));
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        TokenCache<String> cache = new TokenCache<>(10, 1, TimeUnit.MINUTES);
+        AtomicInteger verifications = new AtomicInteger();
+        TokenCache.Verifier<String> verifier = token -> {
+            verifications.incrementAndGet();
+            throw new BadCredentialsException("Invalid token!");
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("token", verifier);
+                fail("The failure of the verifier is not thrown.");
+            } catch (BadCredentialsException e) {
+                assertEquals("Invalid token!", e.getMessage());
+            }
+        }
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testExpiredResultsAreVerifiedAgain() throws InterruptedException {
+        TokenCache<String> cache = new TokenCache<>(10, 1, TimeUnit.MINUTES);
+        AtomicInteger verifications = new AtomicInteger();
+        TokenCache.Verifier<String> verifier = token -> new TokenCache.Entry<>(
+                "verified " + verifications.incrementAndGet(), System.currentTimeMillis() + 500);
+        assertEquals("verified 1", cache.get("token", verifier));
+        assertEquals("verified 1", cache.get("token", verifier));
+        Thread.sleep(600);
+        assertEquals("verified 2", cache.get("token", verifier));
+    }
+}
@@ -11,7 +11,9 @@ public enum OrderErrorCode implements ApiErrorCode {
     // Common error codes
     NOT_AVAILABLE_IN_STORE(Status.BAD_REQUEST,
             "There is not enough quantity of the requested product in the store: product = %s",
-            "به مقدار کافی از محصول مورد نظر در انبار موجود نیست: محصول = %s");
+            "به مقدار کافی از محصول مورد نظر در انبار موجود نیست: محصول = %s"),
+    NOT_ENOUGH_CREDIT(Status.BAD_REQUEST, "You have not enough credit to buy the product!",
+            "شما اعتبار کافی برای خرید محصول مورد نظر را ندارید");
 
     private final Status status;
     private final String enMessage;
@@ -0,0 +1,21 @@
+package ir.sahab.rest.common.testapp;
+
+import java.util.List;
+import javax.validation.Valid;
+
+/**
+ * A batch of orders which are validated together, e.g., to check the problems of the bulk requests.
+ */
+public class TestOrderBatch {
+
+    @Valid
+    private List<TestOrderEntity> orders;
+
+    public List<TestOrderEntity> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(List<TestOrderEntity> orders) {
+        this.orders = orders;
+    }
+}
@@ -1,11 +1,17 @@
 package ir.sahab.rest.common.testapp;
 
 import ir.sahab.rest.common.apierror.ApiException;
+import ir.sahab.rest.common.security.CurrentPrincipal;
 import java.io.IOException;
 import java.util.List;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.Size;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -20,6 +26,7 @@ import org.springframework.web.bind.annotation.RestController;
  * REST controller that provides methods for testing each aspects of rest-common module.
  */
 @RestController
+@Validated
 @RequestMapping(TestOrderController.REST_BASE_PATH)
 public class TestOrderController {
 
@@ -42,6 +49,23 @@ public class TestOrderController {
         return testOrderService.update(order);
     }
 
+    /**
+     * A fake API just to simulate the validation errors of a bulk request.
+     */
+    @PostMapping("/batch")
+    public int addOrders(@Valid @RequestBody TestOrderBatch batch) {
+        return batch.getOrders().size();
+    }
+
+    /**
+     * A fake API just to simulate the constraint violations of the validated method parameters.
+     */
+    @GetMapping("/page")
+    public int getPage(@RequestParam @Min(1) int page, @RequestParam @Min(1) @Max(100) int size,
+            @RequestParam @Size(min = 2) String name) {
+        return page;
+    }
+
     @DeleteMapping("/{id}")
     public void deleteOrder(@PathVariable Long id) {
         testOrderService.delete(id);
@@ -65,6 +89,14 @@ public class TestOrderController {
         throw new IOException("Connection refused (Connection refused)");
     }
 
+    /**
+     * A fake API just to simulate an API error without parameters.
+     */
+    @PostMapping("/buy")
+    public void buy() throws ApiException {
+        throw new ApiException(OrderErrorCode.NOT_ENOUGH_CREDIT);
+    }
+
     @PostMapping("/echo")
     public String echo(@RequestBody String body) {
         return body;
@@ -112,4 +144,38 @@ public class TestOrderController {
     @PreAuthorize("hasRole('sample.permission')")
     public void protectedWithPermission() {
     }
+
+    /**
+     * A fake API just to simulate a blocking call (e.g., a call to a remote service) which takes the given duration.
+     * It returns the name of current principal.
+     */
+    @GetMapping("/blocking-call")
+    public String blockingCall(@RequestParam long durationMillis) throws InterruptedException {
+        Thread.sleep(durationMillis);
+        return CurrentPrincipal.getName();
+    }
+
+    /**
+     * A fake API just to check the authorities of current principal.
+     */
+    @GetMapping("/current-principal/has-any-authority")
+    public boolean currentPrincipalHasAnyAuthority(@RequestParam String[] authorities) {
+        return CurrentPrincipal.hasAnyAuthority(authorities);
+    }
+
+    /**
+     * A fake API just to check the authorities of current principal.
+     */
+    @GetMapping("/current-principal/has-all-authorities")
+    public boolean currentPrincipalHasAllAuthorities(@RequestParam String[] authorities) {
+        return CurrentPrincipal.hasAllAuthorities(authorities);
+    }
+
+    /**
+     * A fake API just to check the type of the authentication which the application gets.
+     */
+    @GetMapping("/current-principal/authentication-type")
+    public String currentPrincipalAuthenticationType() {
+        return SecurityContextHolder.getContext().getAuthentication().getClass().getSimpleName();
+    }
 }
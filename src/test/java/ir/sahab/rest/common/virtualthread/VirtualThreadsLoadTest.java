@@ -0,0 +1,127 @@
+package ir.sahab.rest.common.virtualthread;
+
+import static ir.sahab.rest.common.security.HttpBasicAuthentication.AUTHORIZATION_HEADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import ir.sahab.rest.common.security.EnableCustomSecurity;
+import ir.sahab.rest.common.security.HttpBasicAuthentication;
+import ir.sahab.rest.common.testapp.TestOrderController;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * A load test which sends lots of concurrent requests to an API that blocks for a while. The same application is run
+ * once with the default Tomcat pool of platform threads and once with {@link EnableVirtualThreads}. It only runs on
+ * JDK 21 or later.
+ */
+public class VirtualThreadsLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadsLoadTest.class);
+
+    private static final int CONCURRENT_REQUESTS = 400;
+    private static final int MAX_PLATFORM_THREADS = 50;
+    // Long enough that the time of the blocking calls dominates the CPU time of handling the requests, even on small
+    // machines.
+    private static final long BLOCKING_CALL_MILLIS = 1000;
+
+    @Test
+    public void testPlatformVersusVirtualThreads() throws Exception {
+        assumeTrue("Virtual threads require JDK 21 or later.", VirtualThreads.isSupported());
+
+        long platformThreadsMillis = runLoad(PlatformThreadsSetup.class);
+        long virtualThreadsMillis = runLoad(VirtualThreadsSetup.class);
+        logger.info("Handled {} concurrent blocking requests in {} ms on platform threads (max {}) and in {} ms on "
+                        + "virtual threads.", CONCURRENT_REQUESTS, platformThreadsMillis, MAX_PLATFORM_THREADS,
+                virtualThreadsMillis);
+
+        // With platform threads, the requests have to wait for a free thread of the pool. But with virtual threads
+        // all of them are blocked concurrently.
+        assertTrue(virtualThreadsMillis < platformThreadsMillis);
+    }
+
+    /**
+     * Runs the given application and returns the time it takes to respond to all the concurrent requests. Each request
+     * is sent by a different user and it is checked that the API sees the right principal.
+     */
+    private static long runLoad(Class<?> setup) throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(setup)
+                .properties("server.port=0", "server.tomcat.threads.max=" + MAX_PLATFORM_THREADS,
+                        "server.tomcat.accept-count=" + CONCURRENT_REQUESTS)
+                .run();
+        // The clients also run on virtual threads, so on machines with few CPUs they do not take the CPU time from the
+        // few carrier threads of the server.
+        ExecutorService clients = VirtualThreads.newVirtualThreadPerTaskExecutor("client-");
+        try {
+            String url = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                    + TestOrderController.REST_BASE_PATH + "/blocking-call?durationMillis=" + BLOCKING_CALL_MILLIS;
+            // Warm up the application before measuring.
+            sendConcurrentRequests(clients, url, MAX_PLATFORM_THREADS);
+
+            long start = System.nanoTime();
+            sendConcurrentRequests(clients, url, CONCURRENT_REQUESTS);
+            return (System.nanoTime() - start) / 1_000_000;
+        } finally {
+            clients.shutdownNow();
+            context.close();
+        }
+    }
+
+    private static void sendConcurrentRequests(ExecutorService clients, String url, int count) throws Exception {
+        List<Future<?>> responses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String user = "user-" + i;
+            responses.add(clients.submit(() -> {
+                assertEquals(user, get(url, user));
+                return null;
+            }));
+        }
+        for (Future<?> response : responses) {
+            response.get();
+        }
+    }
+
+    private static String get(String url, String user) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty(AUTHORIZATION_HEADER, HttpBasicAuthentication.of(user, "pass"));
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream body = connection.getInputStream();
+                Scanner scanner = new Scanner(body, StandardCharsets.UTF_8.name())) {
+            return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+        }
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    public static class PlatformThreadsSetup {
+    }
+
+    @SpringBootApplication(scanBasePackages = "ir.sahab.rest.common.testapp")
+    @PropertySource("classpath:rest-commons-test.properties")
+    @EnableJpaRepositories(basePackages = "ir.sahab.rest.common.testapp")
+    @EntityScan(basePackages = "ir.sahab.rest.common.testapp")
+    @EnableCustomSecurity(applicationBasePathPattern = "/api/**")
+    @EnableVirtualThreads
+    public static class VirtualThreadsSetup {
+    }
+}